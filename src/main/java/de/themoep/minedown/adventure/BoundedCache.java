@@ -0,0 +1,92 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A simple thread safe cache which evicts the least recently used entries once it reaches its maximum size
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+class BoundedCache<K, V> {
+
+    private final Map<K, V> entries;
+
+    /**
+     * Create a new cache
+     * @param maxSize The maximum amount of entries to keep
+     */
+    BoundedCache(int maxSize) {
+        Util.validate(maxSize > 0, "The maximum size has to be positive");
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the cached value of a key or compute and cache it if it isn't cached yet.
+     * The value is computed outside of the lock so it might get computed more than once when used concurrently.
+     * @param key      The key
+     * @param function The function to compute the value with
+     * @return The cached or computed value
+     */
+    V get(K key, Function<? super K, ? extends V> function) {
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value == null) {
+            value = function.apply(key);
+            synchronized (entries) {
+                entries.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get the amount of cached entries
+     * @return The amount of entries
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Remove all entries from the cache
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+}
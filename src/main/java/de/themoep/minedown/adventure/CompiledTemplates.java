@@ -0,0 +1,750 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import net.kyori.adventure.key.Key;
+import net.kyori.adventure.nbt.api.BinaryTagHolder;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.KeybindComponent;
+import net.kyori.adventure.text.ObjectComponent;
+import net.kyori.adventure.text.TranslatableComponent;
+import net.kyori.adventure.text.TranslationArgument;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.ShadowColor;
+import net.kyori.adventure.text.format.Style;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+import net.kyori.adventure.text.object.ObjectContents;
+import net.kyori.adventure.text.object.PlayerHeadObjectContents;
+import net.kyori.adventure.text.object.SpriteObjectContents;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A binary file of compiled messages which can be loaded without parsing them again. Each message is stored as
+ * its {@link StyleRuns} with the keys of the placeholders that it contains. Hover texts, entity names and translation
+ * arguments are stored as runs too. Strings, styles and runs are interned so messages which are the same in several
+ * locales only get stored once.
+ * <p>
+ * {@link #load(Path)} maps the file into memory and only reads the index of the keys, messages are converted to
+ * components the first time that they are requested. The placeholders of the message can then be replaced with
+ * a {@link Replacer} like with any other component. Create files with a {@link Writer}. Instances are thread safe.
+ */
+public final class CompiledTemplates {
+
+    private static final int MAGIC = 0x4D445450;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 64;
+
+    private static final int STYLE_COLOR = 1;
+    private static final int STYLE_SHADOW = 1 << 1;
+    private static final int STYLE_FONT = 1 << 2;
+    private static final int STYLE_INSERTION = 1 << 3;
+    private static final int STYLE_CLICK = 1 << 4;
+    private static final int STYLE_HOVER = 1 << 5;
+
+    private static final byte PAYLOAD_TEXT = 0;
+    private static final byte PAYLOAD_INT = 1;
+    private static final byte PAYLOAD_CUSTOM = 2;
+
+    private static final byte COMPONENT_TRANSLATABLE = 0;
+    private static final byte COMPONENT_KEYBIND = 1;
+    private static final byte COMPONENT_SPRITE = 2;
+    private static final byte COMPONENT_PLAYER_HEAD = 3;
+
+    private final ByteBuffer buffer;
+    private final Table strings;
+    private final Table styles;
+    private final Table blocks;
+    private final Table components;
+    private final Table entries;
+    private final int indexSize;
+    private final int indexOffset;
+
+    private final String[] stringCache;
+    private final Style[] styleCache;
+    private final Component[] blockCache;
+
+    private CompiledTemplates(ByteBuffer buffer) {
+        Util.validate(buffer.limit() >= HEADER_LENGTH && buffer.getInt(0) == MAGIC, "Not a compiled template file!");
+        Util.validate(buffer.getInt(4) == VERSION, "Unsupported compiled template file version " + buffer.getInt(4) + "!");
+        this.buffer = buffer;
+        this.strings = new Table(buffer, 8);
+        this.styles = new Table(buffer, 16);
+        this.blocks = new Table(buffer, 24);
+        this.components = new Table(buffer, 32);
+        this.entries = new Table(buffer, 40);
+        this.indexSize = buffer.getInt(48);
+        this.indexOffset = buffer.getInt(52);
+        this.stringCache = new String[strings.count];
+        this.styleCache = new Style[styles.count];
+        this.blockCache = new Component[blocks.count];
+    }
+
+    /**
+     * Load a compiled template file by mapping it into memory. The file must not be changed while it is in use.
+     * @param path The path of the file
+     * @return The loaded templates
+     * @throws IOException              Thrown when the file can't be read
+     * @throws IllegalArgumentException Thrown when the file isn't a compiled template file
+     */
+    public static CompiledTemplates load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new CompiledTemplates(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Load compiled templates from a buffer, e.g. one that contains the output of a {@link Writer}
+     * @param buffer The buffer, its content must not be changed while it is in use
+     * @return The loaded templates
+     * @throws IllegalArgumentException Thrown when the buffer doesn't contain compiled templates
+     */
+    public static CompiledTemplates load(ByteBuffer buffer) {
+        return new CompiledTemplates(buffer.duplicate());
+    }
+
+    /**
+     * Get the amount of messages
+     * @return The amount of messages
+     */
+    public int size() {
+        return entries.count;
+    }
+
+    /**
+     * Check whether there is a message with a certain key
+     * @param key The key of the message
+     * @return <code>true</code> if there is a message with that key
+     */
+    public boolean contains(String key) {
+        return entry(key) != -1;
+    }
+
+    /**
+     * Get the keys of all messages. This reads all keys of the file.
+     * @return The keys in the order that they were written in
+     */
+    public Set<String> keys() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < entries.count; i++) {
+            keys.add(string(buffer.getInt(entries.offset(i))));
+        }
+        return keys;
+    }
+
+    /**
+     * Get the component of a message. The message is converted the first time that it is requested,
+     * later calls return the same component.
+     * @param key The key of the message
+     * @return The component like {@link StyleRuns#toComponent()} of the written message or <code>null</code> if there is none
+     */
+    public @Nullable Component component(String key) {
+        int entry = entry(key);
+        return entry != -1 ? block(buffer.getInt(entries.offset(entry) + 4)) : null;
+    }
+
+    /**
+     * Get the component of a message with its placeholders replaced
+     * @param key      The key of the message
+     * @param replacer The replacer to use on the component
+     * @return The component with the replacements or <code>null</code> if there is no message with that key
+     */
+    public @Nullable Component component(String key, Replacer replacer) {
+        Component component = component(key);
+        return component != null ? replacer.replaceIn(component) : null;
+    }
+
+    /**
+     * Get the keys of the placeholders that a message contains without converting it
+     * @param key The key of the message
+     * @return The unmodifiable set of placeholder keys, without prefix and suffix, or <code>null</code> if there is no message with that key
+     */
+    public @Nullable Set<String> placeholders(String key) {
+        int entry = entry(key);
+        if (entry == -1) {
+            return null;
+        }
+        int offset = entries.offset(entry) + 8;
+        int count = buffer.getInt(offset);
+        if (count == 0) {
+            return Collections.emptySet();
+        }
+        Set<String> placeholders = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            placeholders.add(string(buffer.getInt(offset + 4 + i * 4)));
+        }
+        return Collections.unmodifiableSet(placeholders);
+    }
+
+    /**
+     * Get the size of the data that the templates are read from
+     * @return The size in bytes
+     */
+    public int byteSize() {
+        return buffer.limit();
+    }
+
+    private int entry(String key) {
+        if (indexSize == 0) {
+            return -1;
+        }
+        int hash = key.hashCode();
+        for (int slot = hash & (indexSize - 1); ; slot = (slot + 1) & (indexSize - 1)) {
+            int slotOffset = indexOffset + slot * 8;
+            int entry = buffer.getInt(slotOffset + 4) - 1;
+            if (entry == -1) {
+                return -1;
+            }
+            if (buffer.getInt(slotOffset) == hash && key.equals(string(buffer.getInt(entries.offset(entry))))) {
+                return entry;
+            }
+        }
+    }
+
+    private @Nullable String string(int id) {
+        if (id == -1) {
+            return null;
+        }
+        String string = stringCache[id];
+        if (string == null) {
+            int offset = strings.offset(id);
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 4);
+            view.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            stringCache[id] = string;
+        }
+        return string;
+    }
+
+    private @Nullable Key key(int id) {
+        String key = string(id);
+        return key != null ? Key.key(key) : null;
+    }
+
+    private Component block(int id) {
+        Component component = blockCache[id];
+        if (component == null) {
+            int offset = blocks.offset(id);
+            String text = string(buffer.getInt(offset));
+            int runs = buffer.getInt(offset + 4);
+            List<Component> children = new ArrayList<>(runs);
+            int start = 0;
+            for (int i = 0; i < runs; i++) {
+                int runOffset = offset + 8 + i * 12;
+                int end = buffer.getInt(runOffset);
+                Style style = style(buffer.getInt(runOffset + 4));
+                int componentId = buffer.getInt(runOffset + 8);
+                if (componentId != -1) {
+                    children.add(component(componentId).style(style));
+                } else {
+                    children.add(Component.text(text.substring(start, end), style));
+                }
+                start = end;
+            }
+            component = children.size() == 1 ? children.get(0) : Component.text().append(children).build();
+            blockCache[id] = component;
+        }
+        return component;
+    }
+
+    private Style style(int id) {
+        Style style = styleCache[id];
+        if (style == null) {
+            int offset = styles.offset(id);
+            int flags = buffer.getInt(offset);
+            int decorations = buffer.getInt(offset + 4);
+            offset += 8;
+            Style.Builder builder = Style.style();
+            TextDecoration[] values = TextDecoration.values();
+            for (int i = 0; i < values.length; i++) {
+                int state = (decorations >> (i * 2)) & 3;
+                if (state != 0) {
+                    builder.decoration(values[i], state == 1 ? TextDecoration.State.TRUE : TextDecoration.State.FALSE);
+                }
+            }
+            if ((flags & STYLE_COLOR) != 0) {
+                builder.color(TextColor.color(buffer.getInt(offset)));
+                offset += 4;
+            }
+            if ((flags & STYLE_SHADOW) != 0) {
+                builder.shadowColor(ShadowColor.shadowColor(buffer.getInt(offset)));
+                offset += 4;
+            }
+            if ((flags & STYLE_FONT) != 0) {
+                builder.font(key(buffer.getInt(offset)));
+                offset += 4;
+            }
+            if ((flags & STYLE_INSERTION) != 0) {
+                builder.insertion(string(buffer.getInt(offset)));
+                offset += 4;
+            }
+            if ((flags & STYLE_CLICK) != 0) {
+                ClickEvent.Action action = ClickEvent.Action.NAMES.value(string(buffer.getInt(offset)));
+                byte payloadType = buffer.get(offset + 4);
+                ClickEvent.Payload payload;
+                if (payloadType == PAYLOAD_INT) {
+                    payload = ClickEvent.Payload.integer(buffer.getInt(offset + 5));
+                    offset += 9;
+                } else if (payloadType == PAYLOAD_CUSTOM) {
+                    payload = ClickEvent.Payload.custom(key(buffer.getInt(offset + 5)),
+                            BinaryTagHolder.binaryTagHolder(string(buffer.getInt(offset + 9))));
+                    offset += 13;
+                } else {
+                    payload = ClickEvent.Payload.string(string(buffer.getInt(offset + 5)));
+                    offset += 9;
+                }
+                builder.clickEvent(ClickEvent.clickEvent(action, payload));
+            }
+            if ((flags & STYLE_HOVER) != 0) {
+                HoverEvent.Action<?> action = HoverEvent.Action.NAMES.value(string(buffer.getInt(offset)));
+                if (action == HoverEvent.Action.SHOW_TEXT) {
+                    builder.hoverEvent(HoverEvent.showText(block(buffer.getInt(offset + 4))));
+                } else if (action == HoverEvent.Action.SHOW_ITEM) {
+                    builder.hoverEvent(HoverEvent.showItem(key(buffer.getInt(offset + 4)), buffer.getInt(offset + 8)));
+                } else if (action == HoverEvent.Action.SHOW_ENTITY) {
+                    int name = buffer.getInt(offset + 24);
+                    builder.hoverEvent(HoverEvent.showEntity(key(buffer.getInt(offset + 4)),
+                            new UUID(buffer.getLong(offset + 8), buffer.getLong(offset + 16)),
+                            name != -1 ? block(name) : null));
+                }
+            }
+            style = builder.build();
+            styleCache[id] = style;
+        }
+        return style;
+    }
+
+    private Component component(int id) {
+        int offset = components.offset(id);
+        byte type = buffer.get(offset);
+        offset++;
+        switch (type) {
+            case COMPONENT_TRANSLATABLE:
+                String translationKey = string(buffer.getInt(offset));
+                String fallback = string(buffer.getInt(offset + 4));
+                int count = buffer.getInt(offset + 8);
+                List<Component> arguments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    arguments.add(block(buffer.getInt(offset + 12 + i * 4)));
+                }
+                return Component.translatable(translationKey, fallback, arguments);
+            case COMPONENT_KEYBIND:
+                return Component.keybind(string(buffer.getInt(offset)));
+            case COMPONENT_SPRITE:
+                return Component.object(ObjectContents.sprite(key(buffer.getInt(offset)), key(buffer.getInt(offset + 4))));
+            case COMPONENT_PLAYER_HEAD:
+                PlayerHeadObjectContents.Builder playerHead = ObjectContents.playerHead()
+                        .name(string(buffer.getInt(offset)))
+                        .texture(key(buffer.getInt(offset + 4)))
+                        .hat(buffer.get(offset + 8) != 0);
+                if (buffer.get(offset + 9) != 0) {
+                    playerHead.id(new UUID(buffer.getLong(offset + 10), buffer.getLong(offset + 18)));
+                }
+                int properties = buffer.getInt(offset + 26);
+                for (int i = 0; i < properties; i++) {
+                    int propertyOffset = offset + 30 + i * 12;
+                    String signature = string(buffer.getInt(propertyOffset + 8));
+                    playerHead.profileProperty(signature != null
+                            ? PlayerHeadObjectContents.property(string(buffer.getInt(propertyOffset)), string(buffer.getInt(propertyOffset + 4)), signature)
+                            : PlayerHeadObjectContents.property(string(buffer.getInt(propertyOffset)), string(buffer.getInt(propertyOffset + 4))));
+                }
+                return Component.object(playerHead.build());
+        }
+        throw new IllegalArgumentException("Unknown component type " + type + " in compiled template file!");
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledTemplates{size=" + size() + ", bytes=" + byteSize() + "}";
+    }
+
+    /**
+     * The position of a table of records: the amount and the offset of the record offsets
+     */
+    private static class Table {
+        private final ByteBuffer buffer;
+        private final int count;
+        private final int offset;
+
+        private Table(ByteBuffer buffer, int headerOffset) {
+            this.buffer = buffer;
+            this.count = buffer.getInt(headerOffset);
+            this.offset = buffer.getInt(headerOffset + 4);
+        }
+
+        private int offset(int id) {
+            return buffer.getInt(offset + id * 4);
+        }
+    }
+
+    /**
+     * Writes messages into the compiled template format. Writers are not thread safe.
+     */
+    public static class Writer {
+        private final Map<String, Integer> entryIds = new LinkedHashMap<>();
+        private final List<byte[]> entries = new ArrayList<>();
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private final Map<Style, Integer> styleIds = new HashMap<>();
+        private final List<byte[]> styles = new ArrayList<>();
+        private final Map<StyleRuns, Integer> blockIds = new HashMap<>();
+        private final List<byte[]> blocks = new ArrayList<>();
+        private final List<byte[]> components = new ArrayList<>();
+
+        /**
+         * Add a message, it gets parsed with its settings. Replacements are applied, placeholders without
+         * a replacement are kept so that they can be replaced after loading.
+         * @param key      The key of the message
+         * @param mineDown The message
+         * @return The Writer instance
+         * @throws IllegalArgumentException Thrown when the message contains components that can't be written
+         */
+        public Writer add(String key, MineDown mineDown) {
+            return add(key, mineDown.toStyleRuns(), mineDown.placeholders());
+        }
+
+        /**
+         * Add a message that gets parsed with the default settings
+         * @param key     The key of the message
+         * @param message The MineDown message
+         * @return The Writer instance
+         * @throws IllegalArgumentException Thrown when the message contains components that can't be written
+         */
+        public Writer add(String key, String message) {
+            return add(key, new MineDown(message));
+        }
+
+        /**
+         * Add a message from its style runs
+         * @param key          The key of the message
+         * @param runs         The style runs of the message
+         * @param placeholders The keys of the placeholders that the message contains
+         * @return The Writer instance
+         * @throws IllegalArgumentException Thrown when the message contains components that can't be written
+         */
+        public Writer add(String key, StyleRuns runs, Set<String> placeholders) {
+            Util.validate(!entryIds.containsKey(key), "There already is a message with the key " + key + "!");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + placeholders.size() * 4);
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeInt(string(key));
+                out.writeInt(block(runs));
+                out.writeInt(placeholders.size());
+                for (String placeholder : placeholders) {
+                    out.writeInt(string(placeholder));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            entryIds.put(key, entries.size());
+            entries.add(bytes.toByteArray());
+            return this;
+        }
+
+        /**
+         * Get the amount of messages that were added
+         * @return The amount of messages
+         */
+        public int size() {
+            return entries.size();
+        }
+
+        /**
+         * Write all added messages to a file
+         * @param path The path of the file, an existing file gets replaced
+         * @throws IOException Thrown when the file can't be written
+         */
+        public void write(Path path) throws IOException {
+            try (OutputStream out = Files.newOutputStream(path)) {
+                write(out);
+            }
+        }
+
+        /**
+         * Write all added messages to a stream
+         * @param out The stream to write to, it doesn't get closed
+         * @throws IOException Thrown when the stream can't be written
+         */
+        public void write(OutputStream out) throws IOException {
+            out.write(toByteArray());
+        }
+
+        /**
+         * Get all added messages in the compiled template format
+         * @return The bytes of the compiled templates
+         */
+        public byte[] toByteArray() {
+            int indexSize = 0;
+            if (!entries.isEmpty()) {
+                indexSize = Integer.highestOneBit(entries.size() * 2 - 1) << 1;
+            }
+            int[] index = new int[indexSize * 2];
+            for (Map.Entry<String, Integer> entry : entryIds.entrySet()) {
+                int hash = entry.getKey().hashCode();
+                int slot = hash & (indexSize - 1);
+                while (index[slot * 2 + 1] != 0) {
+                    slot = (slot + 1) & (indexSize - 1);
+                }
+                index[slot * 2] = hash;
+                index[slot * 2 + 1] = entry.getValue() + 1;
+            }
+
+            int size = HEADER_LENGTH;
+            int[] tableOffsets = new int[5];
+            List<List<byte[]>> tables = new ArrayList<>();
+            Collections.addAll(tables, strings, styles, blocks, components, entries);
+            for (int i = 0; i < tables.size(); i++) {
+                tableOffsets[i] = size;
+                size += tables.get(i).size() * 4;
+                for (byte[] record : tables.get(i)) {
+                    size += record.length;
+                }
+            }
+            int indexOffset = size;
+            size += index.length * 4;
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            for (int i = 0; i < tables.size(); i++) {
+                buffer.putInt(tables.get(i).size()).putInt(tableOffsets[i]);
+            }
+            buffer.putInt(indexSize).putInt(indexOffset);
+            for (int i = 0; i < tables.size(); i++) {
+                buffer.position(tableOffsets[i]);
+                int recordOffset = tableOffsets[i] + tables.get(i).size() * 4;
+                for (byte[] record : tables.get(i)) {
+                    buffer.putInt(recordOffset);
+                    recordOffset += record.length;
+                }
+                for (byte[] record : tables.get(i)) {
+                    buffer.put(record);
+                }
+            }
+            buffer.position(indexOffset);
+            for (int value : index) {
+                buffer.putInt(value);
+            }
+            return buffer.array();
+        }
+
+        private int string(@Nullable String string) {
+            if (string == null) {
+                return -1;
+            }
+            Integer id = stringIds.get(string);
+            if (id == null) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                byte[] record = new byte[4 + bytes.length];
+                ByteBuffer.wrap(record).putInt(bytes.length).put(bytes);
+                id = strings.size();
+                strings.add(record);
+                stringIds.put(string, id);
+            }
+            return id;
+        }
+
+        private int key(@Nullable Key key) {
+            return key != null ? string(key.asString()) : -1;
+        }
+
+        private int block(StyleRuns runs) throws IOException {
+            Integer id = blockIds.get(runs);
+            if (id == null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + runs.size() * 12);
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(string(runs.text()));
+                out.writeInt(runs.size());
+                for (int i = 0; i < runs.size(); i++) {
+                    out.writeInt(runs.end(i));
+                    out.writeInt(style(runs.style(i)));
+                    out.writeInt(runs.component(i) != null ? component(runs.component(i)) : -1);
+                }
+                id = blocks.size();
+                blocks.add(bytes.toByteArray());
+                blockIds.put(runs, id);
+            }
+            return id;
+        }
+
+        private int block(Component component) throws IOException {
+            return block(StyleRuns.of(component));
+        }
+
+        private int style(Style style) throws IOException {
+            Integer id = styleIds.get(style);
+            if (id == null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+                DataOutputStream out = new DataOutputStream(bytes);
+                int flags = 0;
+                flags |= style.color() != null ? STYLE_COLOR : 0;
+                flags |= style.shadowColor() != null ? STYLE_SHADOW : 0;
+                flags |= style.font() != null ? STYLE_FONT : 0;
+                flags |= style.insertion() != null ? STYLE_INSERTION : 0;
+                flags |= style.clickEvent() != null ? STYLE_CLICK : 0;
+                flags |= style.hoverEvent() != null ? STYLE_HOVER : 0;
+                out.writeInt(flags);
+                int decorations = 0;
+                TextDecoration[] values = TextDecoration.values();
+                for (int i = 0; i < values.length; i++) {
+                    TextDecoration.State state = style.decoration(values[i]);
+                    if (state != TextDecoration.State.NOT_SET) {
+                        decorations |= (state == TextDecoration.State.TRUE ? 1 : 2) << (i * 2);
+                    }
+                }
+                out.writeInt(decorations);
+                if (style.color() != null) {
+                    out.writeInt(style.color().value());
+                }
+                if (style.shadowColor() != null) {
+                    out.writeInt(style.shadowColor().value());
+                }
+                if (style.font() != null) {
+                    out.writeInt(key(style.font()));
+                }
+                if (style.insertion() != null) {
+                    out.writeInt(string(style.insertion()));
+                }
+                if (style.clickEvent() != null) {
+                    writeClickEvent(out, style.clickEvent());
+                }
+                if (style.hoverEvent() != null) {
+                    writeHoverEvent(out, style.hoverEvent());
+                }
+                id = styles.size();
+                styles.add(bytes.toByteArray());
+                styleIds.put(style, id);
+            }
+            return id;
+        }
+
+        private void writeClickEvent(DataOutputStream out, ClickEvent clickEvent) throws IOException {
+            out.writeInt(string(ClickEvent.Action.NAMES.key(clickEvent.action())));
+            ClickEvent.Payload payload = clickEvent.payload();
+            if (payload instanceof ClickEvent.Payload.Text) {
+                out.writeByte(PAYLOAD_TEXT);
+                out.writeInt(string(((ClickEvent.Payload.Text) payload).value()));
+            } else if (payload instanceof ClickEvent.Payload.Int) {
+                out.writeByte(PAYLOAD_INT);
+                out.writeInt(((ClickEvent.Payload.Int) payload).integer());
+            } else if (payload instanceof ClickEvent.Payload.Custom) {
+                out.writeByte(PAYLOAD_CUSTOM);
+                out.writeInt(key(((ClickEvent.Payload.Custom) payload).key()));
+                out.writeInt(string(((ClickEvent.Payload.Custom) payload).nbt().string()));
+            } else {
+                throw new IllegalArgumentException("Don't know how to write " + clickEvent + " to a compiled template");
+            }
+        }
+
+        private void writeHoverEvent(DataOutputStream out, HoverEvent<?> hoverEvent) throws IOException {
+            out.writeInt(string(HoverEvent.Action.NAMES.key(hoverEvent.action())));
+            if (hoverEvent.action() == HoverEvent.Action.SHOW_TEXT) {
+                out.writeInt(block((Component) hoverEvent.value()));
+            } else if (hoverEvent.action() == HoverEvent.Action.SHOW_ITEM) {
+                HoverEvent.ShowItem item = (HoverEvent.ShowItem) hoverEvent.value();
+                // items with data components or legacy nbt don't equal the plain item
+                if (!item.equals(HoverEvent.ShowItem.showItem(item.item(), item.count()))) {
+                    throw new IllegalArgumentException("Don't know how to write the data of " + item + " to a compiled template");
+                }
+                out.writeInt(key(item.item()));
+                out.writeInt(item.count());
+            } else if (hoverEvent.action() == HoverEvent.Action.SHOW_ENTITY) {
+                HoverEvent.ShowEntity entity = (HoverEvent.ShowEntity) hoverEvent.value();
+                out.writeInt(key(entity.type()));
+                out.writeLong(entity.id().getMostSignificantBits());
+                out.writeLong(entity.id().getLeastSignificantBits());
+                out.writeInt(entity.name() != null ? block(entity.name()) : -1);
+            } else {
+                throw new IllegalArgumentException("Don't know how to write " + hoverEvent + " to a compiled template");
+            }
+        }
+
+        private int component(Component component) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (component instanceof TranslatableComponent) {
+                TranslatableComponent translatable = (TranslatableComponent) component;
+                out.writeByte(COMPONENT_TRANSLATABLE);
+                out.writeInt(string(translatable.key()));
+                out.writeInt(string(translatable.fallback()));
+                out.writeInt(translatable.arguments().size());
+                for (TranslationArgument argument : translatable.arguments()) {
+                    if (!(argument.value() instanceof Component)) {
+                        throw new IllegalArgumentException("Don't know how to write the argument " + argument + " to a compiled template");
+                    }
+                    out.writeInt(block((Component) argument.value()));
+                }
+            } else if (component instanceof KeybindComponent) {
+                out.writeByte(COMPONENT_KEYBIND);
+                out.writeInt(string(((KeybindComponent) component).keybind()));
+            } else if (component instanceof ObjectComponent && ((ObjectComponent) component).contents() instanceof SpriteObjectContents) {
+                SpriteObjectContents sprite = (SpriteObjectContents) ((ObjectComponent) component).contents();
+                out.writeByte(COMPONENT_SPRITE);
+                out.writeInt(key(sprite.atlas()));
+                out.writeInt(key(sprite.sprite()));
+            } else if (component instanceof ObjectComponent && ((ObjectComponent) component).contents() instanceof PlayerHeadObjectContents) {
+                PlayerHeadObjectContents playerHead = (PlayerHeadObjectContents) ((ObjectComponent) component).contents();
+                out.writeByte(COMPONENT_PLAYER_HEAD);
+                out.writeInt(string(playerHead.name()));
+                out.writeInt(key(playerHead.texture()));
+                out.writeBoolean(playerHead.hat());
+                out.writeBoolean(playerHead.id() != null);
+                out.writeLong(playerHead.id() != null ? playerHead.id().getMostSignificantBits() : 0);
+                out.writeLong(playerHead.id() != null ? playerHead.id().getLeastSignificantBits() : 0);
+                out.writeInt(playerHead.profileProperties().size());
+                for (PlayerHeadObjectContents.ProfileProperty property : playerHead.profileProperties()) {
+                    out.writeInt(string(property.name()));
+                    out.writeInt(string(property.value()));
+                    out.writeInt(string(property.signature()));
+                }
+            } else {
+                throw new IllegalArgumentException("Don't know how to write " + component + " to a compiled template");
+            }
+            components.add(bytes.toByteArray());
+            return components.size() - 1;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import net.kyori.adventure.key.Key;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.KeybindComponent;
+import net.kyori.adventure.text.ObjectComponent;
+import net.kyori.adventure.text.ScoreComponent;
+import net.kyori.adventure.text.SelectorComponent;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.TranslatableComponent;
+import net.kyori.adventure.text.TranslationArgument;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.Style;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+import net.kyori.adventure.text.object.PlayerHeadObjectContents;
+import net.kyori.adventure.text.object.SpriteObjectContents;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes components and {@link StyleRuns} as Minecraft chat JSON without any JSON library.
+ * The output is the same as the one of the default <code>GsonComponentSerializer</code> but doesn't need to
+ * build an intermediate JSON tree for every style and can write straight into an existing buffer.
+ * <p>
+ * Text, translatable, keybind, score, selector and object components are supported.
+ */
+public final class ComponentJsonWriter {
+
+    private static final TextDecoration[] DECORATIONS = {
+            TextDecoration.BOLD, TextDecoration.ITALIC, TextDecoration.UNDERLINED, TextDecoration.STRIKETHROUGH, TextDecoration.OBFUSCATED
+    };
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ComponentJsonWriter() {}
+
+    /**
+     * Write a component as JSON
+     * @param component The component
+     * @return The JSON string
+     * @throws IllegalArgumentException If the component contains parts that can't be written
+     */
+    public static String toJson(Component component) {
+        return write(component, new StringBuilder()).toString();
+    }
+
+    /**
+     * Write style runs as JSON, this is the same as writing the component of {@link StyleRuns#toComponent()}
+     * @param runs The style runs
+     * @return The JSON string
+     * @throws IllegalArgumentException If the runs contain parts that can't be written
+     */
+    public static String toJson(StyleRuns runs) {
+        return write(runs, new StringBuilder()).toString();
+    }
+
+    /**
+     * Write a component as JSON into a builder
+     * @param component The component
+     * @param sb        The builder to append to
+     * @return The builder
+     * @throws IllegalArgumentException If the component contains parts that can't be written
+     */
+    public static StringBuilder write(Component component, StringBuilder sb) {
+        if (component instanceof TextComponent && component.children().isEmpty() && !component.hasStyling()) {
+            appendString(sb, ((TextComponent) component).content());
+            return sb;
+        }
+        int start = sb.length();
+        sb.append('{');
+        appendStyle(sb, start, component.style());
+        if (!component.children().isEmpty()) {
+            name(sb, start, "extra").append('[');
+            List<Component> children = component.children();
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                write(children.get(i), sb);
+            }
+            sb.append(']');
+        }
+        appendContent(sb, start, component);
+        return sb.append('}');
+    }
+
+    /**
+     * Write style runs as JSON into a builder, this is the same as writing the component of {@link StyleRuns#toComponent()}
+     * without building it
+     * @param runs The style runs
+     * @param sb   The builder to append to
+     * @return The builder
+     * @throws IllegalArgumentException If the runs contain parts that can't be written
+     */
+    public static StringBuilder write(StyleRuns runs, StringBuilder sb) {
+        if (runs.size() == 1) {
+            appendRun(sb, runs, 0);
+        } else if (runs.size() == 0) {
+            sb.append("\"\"");
+        } else {
+            sb.append("{\"extra\":[");
+            for (int i = 0; i < runs.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendRun(sb, runs, i);
+            }
+            sb.append("],\"text\":\"\"}");
+        }
+        return sb;
+    }
+
+    /**
+     * Write a component as JSON into an appendable
+     * @param component The component
+     * @param appendable The appendable to write to
+     * @param <A>        The type of the appendable
+     * @return The appendable
+     * @throws IOException If the appendable throws one
+     * @throws IllegalArgumentException If the component contains parts that can't be written
+     */
+    public static <A extends Appendable> A write(Component component, A appendable) throws IOException {
+        if (appendable instanceof StringBuilder) {
+            write(component, (StringBuilder) appendable);
+        } else {
+            appendable.append(write(component, new StringBuilder()));
+        }
+        return appendable;
+    }
+
+    /**
+     * Write a component as UTF-8 encoded JSON into a byte buffer
+     * @param component The component
+     * @param buffer    The buffer to write to, starting at its position
+     * @return The buffer with its position after the written JSON
+     * @throws BufferOverflowException If there isn't enough space left in the buffer
+     * @throws IllegalArgumentException If the component contains parts that can't be written
+     */
+    public static ByteBuffer write(Component component, ByteBuffer buffer) {
+        StringBuilder sb = write(component, new StringBuilder());
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        CoderResult result = encoder.encode(CharBuffer.wrap(sb), buffer, true);
+        if (!result.isUnderflow()) {
+            if (result.isOverflow()) {
+                throw new BufferOverflowException();
+            }
+            throw new IllegalArgumentException("Unable to encode " + component + " as UTF-8!");
+        }
+        encoder.flush(buffer);
+        return buffer;
+    }
+
+    private static void appendRun(StringBuilder sb, StyleRuns runs, int run) {
+        Component component = runs.component(run);
+        if (component != null) {
+            write(component.style(runs.style(run)), sb);
+            return;
+        }
+        Style style = runs.style(run);
+        if (style.isEmpty()) {
+            appendString(sb, runs.text(run));
+            return;
+        }
+        int start = sb.length();
+        sb.append('{');
+        appendStyle(sb, start, style);
+        name(sb, start, "text");
+        appendString(sb, runs.text(run));
+        sb.append('}');
+    }
+
+    private static void appendContent(StringBuilder sb, int start, Component component) {
+        if (component instanceof TextComponent) {
+            name(sb, start, "text");
+            appendString(sb, ((TextComponent) component).content());
+        } else if (component instanceof TranslatableComponent) {
+            TranslatableComponent translatable = (TranslatableComponent) component;
+            name(sb, start, "translate");
+            appendString(sb, translatable.key());
+            if (translatable.fallback() != null) {
+                name(sb, start, "fallback");
+                appendString(sb, translatable.fallback());
+            }
+            if (!translatable.arguments().isEmpty()) {
+                name(sb, start, "with").append('[');
+                for (int i = 0; i < translatable.arguments().size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    TranslationArgument argument = translatable.arguments().get(i);
+                    if (argument.value() instanceof Component) {
+                        write((Component) argument.value(), sb);
+                    } else {
+                        sb.append(argument.value());
+                    }
+                }
+                sb.append(']');
+            }
+        } else if (component instanceof KeybindComponent) {
+            name(sb, start, "keybind");
+            appendString(sb, ((KeybindComponent) component).keybind());
+        } else if (component instanceof ScoreComponent) {
+            ScoreComponent score = (ScoreComponent) component;
+            name(sb, start, "score").append("{\"name\":");
+            appendString(sb, score.name());
+            sb.append(",\"objective\":");
+            appendString(sb, score.objective());
+            String value = scoreValue(score);
+            if (value != null) {
+                sb.append(",\"value\":");
+                appendString(sb, value);
+            }
+            sb.append('}');
+        } else if (component instanceof SelectorComponent) {
+            SelectorComponent selector = (SelectorComponent) component;
+            name(sb, start, "selector");
+            appendString(sb, selector.pattern());
+            if (selector.separator() != null) {
+                name(sb, start, "separator");
+                write(selector.separator(), sb);
+            }
+        } else if (component instanceof ObjectComponent && ((ObjectComponent) component).contents() instanceof SpriteObjectContents) {
+            SpriteObjectContents sprite = (SpriteObjectContents) ((ObjectComponent) component).contents();
+            if (!sprite.atlas().equals(SpriteObjectContents.DEFAULT_ATLAS)) {
+                name(sb, start, "atlas");
+                appendString(sb, sprite.atlas().asString());
+            }
+            name(sb, start, "sprite");
+            appendString(sb, sprite.sprite().asString());
+        } else if (component instanceof ObjectComponent && ((ObjectComponent) component).contents() instanceof PlayerHeadObjectContents) {
+            appendPlayerHead(sb, start, (PlayerHeadObjectContents) ((ObjectComponent) component).contents());
+        } else {
+            throw new IllegalArgumentException("Don't know how to write " + component + " as JSON");
+        }
+    }
+
+    /**
+     * Get the value of a score component. It is deprecated in Adventure but the Gson serializer still writes it,
+     * so the JSON needs it to stay the same.
+     */
+    @SuppressWarnings("deprecation")
+    private static String scoreValue(ScoreComponent score) {
+        return score.value();
+    }
+
+    private static void appendPlayerHead(StringBuilder sb, int start, PlayerHeadObjectContents playerHead) {
+        name(sb, start, "hat").append(playerHead.hat());
+        name(sb, start, "player");
+        if (playerHead.name() != null && playerHead.id() == null && playerHead.profileProperties().isEmpty() && playerHead.texture() == null) {
+            appendString(sb, playerHead.name());
+            return;
+        }
+        int playerStart = sb.length();
+        sb.append('{');
+        if (playerHead.name() != null) {
+            name(sb, playerStart, "name");
+            appendString(sb, playerHead.name());
+        }
+        if (playerHead.id() != null) {
+            name(sb, playerStart, "id");
+            appendUuid(sb, playerHead.id());
+        }
+        if (!playerHead.profileProperties().isEmpty()) {
+            name(sb, playerStart, "properties").append('[');
+            boolean first = true;
+            for (PlayerHeadObjectContents.ProfileProperty property : playerHead.profileProperties()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append("{\"name\":");
+                appendString(sb, property.name());
+                sb.append(",\"value\":");
+                appendString(sb, property.value());
+                if (property.signature() != null) {
+                    sb.append(",\"signature\":");
+                    appendString(sb, property.signature());
+                }
+                sb.append('}');
+            }
+            sb.append(']');
+        }
+        if (playerHead.texture() != null) {
+            name(sb, playerStart, "texture");
+            appendString(sb, playerHead.texture().asString());
+        }
+        sb.append('}');
+    }
+
+    private static void appendStyle(StringBuilder sb, int start, Style style) {
+        for (TextDecoration decoration : DECORATIONS) {
+            TextDecoration.State state = style.decoration(decoration);
+            if (state != TextDecoration.State.NOT_SET) {
+                name(sb, start, TextDecoration.NAMES.key(decoration)).append(state == TextDecoration.State.TRUE);
+            }
+        }
+        if (style.color() != null) {
+            name(sb, start, "color");
+            appendColor(sb, style.color());
+        }
+        if (style.shadowColor() != null) {
+            name(sb, start, "shadow_color").append(style.shadowColor().value());
+        }
+        if (style.insertion() != null) {
+            name(sb, start, "insertion");
+            appendString(sb, style.insertion());
+        }
+        if (style.clickEvent() != null) {
+            appendClickEvent(sb, start, style.clickEvent());
+        }
+        if (style.hoverEvent() != null) {
+            appendHoverEvent(sb, start, style.hoverEvent());
+        }
+        if (style.font() != null) {
+            name(sb, start, "font");
+            appendString(sb, style.font().asString());
+        }
+    }
+
+    private static void appendColor(StringBuilder sb, TextColor color) {
+        NamedTextColor named = NamedTextColor.namedColor(color.value());
+        appendString(sb, named != null ? named.toString() : color.asHexString());
+    }
+
+    private static void appendClickEvent(StringBuilder sb, int start, ClickEvent clickEvent) {
+        int eventStart = name(sb, start, "click_event").length();
+        sb.append("{\"action\":");
+        appendString(sb, clickEvent.action().toString());
+        ClickEvent.Payload payload = clickEvent.payload();
+        if (clickEvent.action().readable()) {
+            if (payload instanceof ClickEvent.Payload.Text) {
+                String value = ((ClickEvent.Payload.Text) payload).value();
+                switch (clickEvent.action()) {
+                    case OPEN_URL:
+                        name(sb, eventStart, "url");
+                        if (!value.startsWith("http://") && !value.startsWith("https://")) {
+                            value = "https://" + value;
+                        }
+                        break;
+                    case RUN_COMMAND:
+                    case SUGGEST_COMMAND:
+                        name(sb, eventStart, "command");
+                        break;
+                    default:
+                        name(sb, eventStart, "value");
+                }
+                appendString(sb, value);
+            } else if (payload instanceof ClickEvent.Payload.Custom) {
+                name(sb, eventStart, "id");
+                appendString(sb, ((ClickEvent.Payload.Custom) payload).key().asString());
+                name(sb, eventStart, "payload");
+                appendString(sb, ((ClickEvent.Payload.Custom) payload).nbt().string());
+            } else if (payload instanceof ClickEvent.Payload.Int) {
+                name(sb, eventStart, "page").append(((ClickEvent.Payload.Int) payload).integer());
+            }
+        }
+        sb.append('}');
+    }
+
+    private static void appendHoverEvent(StringBuilder sb, int start, HoverEvent<?> hoverEvent) {
+        int eventStart = name(sb, start, "hover_event").length();
+        sb.append("{\"action\":");
+        appendString(sb, hoverEvent.action().toString());
+        if (hoverEvent.action() == HoverEvent.Action.SHOW_TEXT) {
+            name(sb, eventStart, "value");
+            write((Component) hoverEvent.value(), sb);
+        } else if (hoverEvent.action() == HoverEvent.Action.SHOW_ENTITY) {
+            HoverEvent.ShowEntity entity = (HoverEvent.ShowEntity) hoverEvent.value();
+            name(sb, eventStart, "id");
+            appendString(sb, entity.type().asString());
+            name(sb, eventStart, "uuid");
+            appendUuid(sb, entity.id());
+            if (entity.name() != null) {
+                name(sb, eventStart, "name");
+                write(entity.name(), sb);
+            }
+        } else if (hoverEvent.action() == HoverEvent.Action.SHOW_ITEM) {
+            HoverEvent.ShowItem item = (HoverEvent.ShowItem) hoverEvent.value();
+            if (!item.dataComponents().isEmpty()) {
+                throw new IllegalArgumentException("Don't know how to write the data components of " + item + " as JSON");
+            }
+            name(sb, eventStart, "id");
+            appendString(sb, item.item().asString());
+            name(sb, eventStart, "count").append(item.count());
+        } else {
+            throw new IllegalArgumentException("Don't know how to write " + hoverEvent + " as JSON");
+        }
+        sb.append('}');
+    }
+
+    private static void appendUuid(StringBuilder sb, UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        sb.append('[').append((int) (most >> 32)).append(',').append((int) most)
+                .append(',').append((int) (least >> 32)).append(',').append((int) least).append(']');
+    }
+
+    /**
+     * Append the name of a field, preceded by a comma if it isn't the first field of the object
+     */
+    private static StringBuilder name(StringBuilder sb, int objectStart, String name) {
+        if (sb.length() > objectStart + 1) {
+            sb.append(',');
+        }
+        return sb.append('"').append(name).append("\":");
+    }
+
+    /**
+     * Append a quoted and escaped string like Gson does without HTML escaping
+     */
+    private static void appendString(StringBuilder sb, String string) {
+        sb.append('"');
+        int last = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c >= 0x20 && c != '\u2028' && c != '\u2029') {
+                continue;
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\b') {
+                replacement = "\\b";
+            } else if (c == '\f') {
+                replacement = "\\f";
+            } else {
+                replacement = null;
+            }
+            sb.append(string, last, i);
+            if (replacement != null) {
+                sb.append(replacement);
+            } else {
+                sb.append("\\u").append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xF]).append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+            }
+            last = i + 1;
+        }
+        sb.append(string, last, string.length()).append('"');
+    }
+}
@@ -0,0 +1,109 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.Style;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces the size of component trees without changing how they look. Unstyled wrapper components are replaced
+ * by their children, the style of empty components with a single child is moved to that child, empty components
+ * are dropped and adjacent text components with the same style are merged.
+ * <p>
+ * This makes messages cheaper to serialize and results in smaller packets, especially for the deeply nested trees
+ * which the {@link MineDownParser} builds. Hover texts are optimized too.
+ */
+public final class ComponentOptimizer {
+
+    private ComponentOptimizer() {}
+
+    /**
+     * Optimize a component tree
+     * @param component The component to optimize
+     * @return The optimized component which displays exactly the same as the input
+     */
+    public static Component optimize(Component component) {
+        Component optimized = optimize(component, new IdentityHashMap<>());
+        while (isEmptyText(optimized) && !optimized.hasStyling() && optimized.children().size() == 1) {
+            optimized = optimized.children().get(0);
+        }
+        return optimized;
+    }
+
+    private static Component optimize(Component component, Map<HoverEvent<?>, HoverEvent<?>> hoverEvents) {
+        List<Component> children = new ArrayList<>(component.children().size());
+        for (Component child : component.children()) {
+            addChild(children, optimize(child, hoverEvents));
+        }
+        HoverEvent<?> hoverEvent = component.hoverEvent();
+        if (hoverEvent != null && hoverEvent.action() == HoverEvent.Action.SHOW_TEXT) {
+            // the same event is often used by multiple siblings, keep that so that it is still only written once
+            HoverEvent<?> optimizedHover = hoverEvents.get(hoverEvent);
+            if (optimizedHover == null) {
+                optimizedHover = HoverEvent.showText(optimize((Component) hoverEvent.value()));
+                hoverEvents.put(hoverEvent, optimizedHover);
+            }
+            component = component.hoverEvent(optimizedHover);
+        }
+        return component.children(children);
+    }
+
+    private static void addChild(List<Component> children, Component child) {
+        if (isEmptyText(child)) {
+            if (child.children().isEmpty()) {
+                return;
+            } else if (!child.hasStyling()) {
+                for (Component grandChild : child.children()) {
+                    addChild(children, grandChild);
+                }
+                return;
+            } else if (child.children().size() == 1) {
+                Component grandChild = child.children().get(0);
+                addChild(children, grandChild.style(grandChild.style().merge(child.style(), Style.Merge.Strategy.IF_ABSENT_ON_TARGET)));
+                return;
+            }
+        }
+        if (!children.isEmpty() && child instanceof TextComponent) {
+            Component last = children.get(children.size() - 1);
+            if (last instanceof TextComponent && last.children().isEmpty() && last.style().equals(child.style())) {
+                // the text of the last component is directly followed by the child's so they can share one component
+                TextComponent text = (TextComponent) child;
+                children.set(children.size() - 1, text.content(((TextComponent) last).content() + text.content()));
+                return;
+            }
+        }
+        children.add(child);
+    }
+
+    private static boolean isEmptyText(Component component) {
+        return component instanceof TextComponent && ((TextComponent) component).content().isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.ComponentLike;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An immutable MineDown message which can be shared between threads, e.g. stored in configs
+ * and sent to audiences from async tasks. The message is parsed lazily the first time its component
+ * is requested and only once, all following calls return the same component.
+ * <p>
+ * Create one with {@link MineDown#toImmutable()}. Changes to the original MineDown don't affect it.
+ */
+public final class ImmutableMineDown implements ComponentLike {
+
+    private final String message;
+    private final MineDown mineDown;
+    private volatile Component component = null;
+
+    ImmutableMineDown(MineDown mineDown) {
+        this.message = mineDown.message();
+        this.mineDown = mineDown;
+    }
+
+    /**
+     * Get the parsed component. The first call parses the message, later calls return the same component.
+     * @return The parsed component
+     */
+    @Override
+    public @NotNull Component asComponent() {
+        Component component = this.component;
+        if (component == null) {
+            synchronized (mineDown) {
+                component = this.component;
+                if (component == null) {
+                    component = mineDown.toComponent();
+                    this.component = component;
+                }
+            }
+        }
+        return component;
+    }
+
+    /**
+     * Get the raw message
+     * @return The message that gets parsed
+     */
+    public String message() {
+        return message;
+    }
+
+    /**
+     * Whether the message was already parsed
+     * @return <code>true</code> if the component is available without parsing
+     */
+    public boolean isParsed() {
+        return component != null;
+    }
+
+    /**
+     * Create a new mutable MineDown with the message and all settings of this one
+     * @return A new MineDown instance
+     */
+    public MineDown toMineDown() {
+        synchronized (mineDown) {
+            return mineDown.copy();
+        }
+    }
+}
@@ -0,0 +1,833 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.themoep.minedown.adventure.MineDownParser.Option;
+import net.kyori.adventure.key.InvalidKeyException;
+import net.kyori.adventure.key.Key;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.stream.Collectors;
+
+import static de.themoep.minedown.adventure.MineDown.ATLAS_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.COLOR_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.FONT_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.FORMAT_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.HAT_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.HOVER_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.INSERTION_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.PAYLOAD_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.PLAYER_HEAD_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.PROFILE_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.SHADOW_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.SPRITE_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.TEXTURE_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.TRANSLATE_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.WITH_PREFIX;
+
+/**
+ * Transcodes {@link MineDown} messages directly into strings with legacy § color codes in one pass,
+ * without creating any components. The text looks the same as if the message was parsed and serialized
+ * with the legacy section serializer: RGB colors, gradients and rainbows use the nearest legacy color
+ * and all events, insertions, fonts and shadows are dropped. Translatable texts show their fallback text,
+ * sprites and player heads have no legacy representation and are left out.
+ * <p>
+ * It can also just extract the visible text of a message or count its length.
+ */
+public class LegacyTranscoder {
+
+    private static final TextDecoration[] DECORATIONS = TextDecoration.values();
+
+    private final MineDownParser settings;
+
+    /**
+     * Create a transcoder with the default parser settings
+     */
+    public LegacyTranscoder() {
+        this(new MineDownParser());
+    }
+
+    /**
+     * Create a transcoder that uses the settings of a parser like the color char, the enabled and filtered options,
+     * lenient parsing and url detection. Only the settings are used, the parser's state is not touched.
+     * @param settings The parser to take the settings from
+     */
+    public LegacyTranscoder(MineDownParser settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Transcode a {@link MineDown} message to a string with legacy § color codes
+     * @param message The message to transcode
+     * @return The legacy string
+     * @throws IllegalArgumentException Thrown when a parsing error occurs and lenient is set to false
+     */
+    public String transcode(String message) throws IllegalArgumentException {
+        return transcode(message, new StringBuilder()).toString();
+    }
+
+    /**
+     * Transcode a {@link MineDown} message to a string with legacy § color codes
+     * @param message The message to transcode
+     * @param sb      The builder to append the legacy string to
+     * @return The builder
+     * @throws IllegalArgumentException Thrown when a parsing error occurs and lenient is set to false
+     */
+    public StringBuilder transcode(String message, StringBuilder sb) throws IllegalArgumentException {
+        transcode(message, new LegacyOutput(sb));
+        return sb;
+    }
+
+    /**
+     * Get the visible text of a {@link MineDown} message without any formatting.
+     * This is the same text that the plain serialization of the parsed message contains, minus sprites and player heads.
+     * @param message The message to get the text of
+     * @return The visible text
+     * @throws IllegalArgumentException Thrown when a parsing error occurs and lenient is set to false
+     */
+    public String plainText(String message) throws IllegalArgumentException {
+        PlainOutput out = new PlainOutput(new StringBuilder(message.length()));
+        transcode(message, out);
+        return out.sb.toString();
+    }
+
+    /**
+     * Get the number of visible characters of a {@link MineDown} message without creating its text
+     * @param message The message to measure
+     * @return The length of the {@link #plainText(String)} in code points
+     * @throws IllegalArgumentException Thrown when a parsing error occurs and lenient is set to false
+     */
+    public int visibleLength(String message) throws IllegalArgumentException {
+        return visibleLength(message, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Get the number of visible characters of a {@link MineDown} message but stop reading it once there are more than
+     * a certain amount. Use this to check a message against a length limit without scanning all of it.
+     * @param message The message to measure
+     * @param limit   The amount of characters after which to stop counting
+     * @return The length of the {@link #plainText(String)} in code points or a number larger than the limit if it is longer
+     * @throws IllegalArgumentException Thrown when a parsing error occurs and lenient is set to false
+     */
+    public int visibleLength(String message, int limit) throws IllegalArgumentException {
+        Util.validate(limit >= 0 && limit < Integer.MAX_VALUE, "The limit needs to be between 0 and " + (Integer.MAX_VALUE - 1) + "!");
+        CountingOutput out = new CountingOutput(limit);
+        transcode(message, out);
+        return out.length;
+    }
+
+    private void transcode(String message, Output out) {
+        Level level = new Level(Look.NONE, settings.urlDetection());
+        level.format = new HashMap<>();
+        parse(out, level, message);
+    }
+
+    private void parse(Output out, Level level, String message) {
+        StringBuilder value = new StringBuilder();
+        Matcher urlMatcher = level.urlDetection ? MineDownParser.URL_PATTERN.matcher(message) : null;
+        boolean escaped = false;
+        int pending = 0;
+        for (int i = 0; i < message.length(); i++) {
+            if (out.full(0)) {
+                return;
+            }
+            char c = message.charAt(i);
+
+            boolean isEscape = c == '\\' && i + 1 < message.length();
+            boolean isColorCode = settings.isEnabled(Option.LEGACY_COLORS)
+                    && i + 1 < message.length() && (c == '§' || c == settings.colorChar());
+            int eventEndIndex = -1;
+            String eventDefinition = null;
+            if (!escaped && settings.isEnabled(Option.ADVANCED_FORMATTING) && c == '[') {
+                eventEndIndex = Util.getUnescapedEndIndex(message, '[', ']', i);
+                if (eventEndIndex != -1 && message.length() > eventEndIndex + 1 && message.charAt(eventEndIndex + 1) == '(') {
+                    int definitionClose = Util.getUnescapedEndIndex(message, '(', ')', eventEndIndex + 1);
+                    if (definitionClose != -1) {
+                        eventDefinition = message.substring(eventEndIndex + 2, definitionClose);
+                    }
+                }
+            }
+            boolean isFormatting = settings.isEnabled(Option.SIMPLE_FORMATTING)
+                    && (c == '_' || c == '*' || c == '~' || c == '?' || c == '#') && Util.isDouble(message, i)
+                    && message.indexOf(String.valueOf(c) + String.valueOf(c), i + 2) != -1;
+
+            if (escaped) {
+                escaped = false;
+
+            } else if (isEscape) {
+                escaped = true;
+                continue;
+
+            } else if (isColorCode) {
+                i = parseColorCode(out, level, value, message, i);
+                continue;
+
+            } else if (eventEndIndex != -1 && eventDefinition != null) {
+                appendValue(out, level, value);
+                Level child;
+                if (!settings.isFiltered(Option.ADVANCED_FORMATTING) && !eventDefinition.isEmpty()) {
+                    child = parseEvent(level, eventDefinition);
+                } else {
+                    child = level.copy(level.base());
+                }
+                parse(out, child, message.substring(i + 1, eventEndIndex));
+                level.append();
+                i = eventEndIndex + 2 + eventDefinition.length();
+                continue;
+
+            } else if (isFormatting) {
+                int endIndex = message.indexOf(String.valueOf(c) + String.valueOf(c), i + 2);
+                Map<TextDecoration, Boolean> formats = new HashMap<>(level.format);
+                if (!settings.isFiltered(Option.SIMPLE_FORMATTING)) {
+                    formats.put(MineDown.getFormatFromChar(c), true);
+                }
+                level.formattingIsLegacy = false;
+                appendValue(out, level, value);
+                Level child = level.copy(level.base());
+                child.format = formats;
+                parse(out, child, message.substring(i + 2, endIndex));
+                level.append();
+                i = endIndex + 1;
+                continue;
+            }
+
+            if (urlMatcher != null) {
+                int urlEnd = message.indexOf(' ', i);
+                if (urlEnd == -1) {
+                    urlEnd = message.length();
+                }
+                if (urlMatcher.region(i, urlEnd).find()) {
+                    // urls are their own component in the tree so they need to be appended separately
+                    appendValue(out, level, value);
+                    value.append(message, i, urlEnd);
+                    appendValue(out, level, value);
+                    i = urlEnd - 1;
+                    continue;
+                }
+            }
+
+            if (value.length() == 0) {
+                pending = 0;
+            }
+            value.append(c);
+            if (!Character.isLowSurrogate(c) && !level.object && out.full(++pending)) {
+                appendValue(out, level, value);
+                return;
+            }
+        }
+        if (escaped) {
+            value.append('\\');
+        }
+        appendValue(out, level, value);
+    }
+
+    private int parseColorCode(Output out, Level level, StringBuilder value, String message, int i) {
+        char c = message.charAt(i);
+        i++;
+        char code = message.charAt(i);
+        if (code >= 'A' && code <= 'Z') {
+            code += 32;
+        }
+        Integer rainbowPhase = null;
+        List<Map.Entry<Object, Boolean>> encoded = null;
+        Option filterOption = null;
+        StringBuilder colorString = new StringBuilder();
+        for (int j = i; j < message.length(); j++) {
+            char c1 = message.charAt(j);
+            if (c1 == c && colorString.length() > 1) {
+                String colorStr = colorString.toString();
+                rainbowPhase = MineDownParser.parseRainbow(colorStr, "", settings.lenient());
+                if (rainbowPhase == null && !colorStr.contains("=")) {
+                    encoded = MineDownParser.parseFormat(colorStr, "", true);
+                    if (encoded.isEmpty()) {
+                        encoded = null;
+                    } else {
+                        filterOption = Option.SIMPLE_FORMATTING;
+                        i = j;
+                    }
+                } else {
+                    filterOption = Option.SIMPLE_FORMATTING;
+                    i = j;
+                }
+                break;
+            }
+            if (c1 != '_' && c1 != '#' && c1 != '-' && c1 != ',' && c1 != ':' &&
+                    (c1 < 'A' || c1 > 'Z') && (c1 < 'a' || c1 > 'z') && (c1 < '0' || c1 > '9')) {
+                break;
+            }
+            colorString.append(c1);
+        }
+        if (rainbowPhase == null && encoded == null) {
+            Object format = Util.getFormatFromLegacy(code);
+            if (format != null) {
+                filterOption = Option.LEGACY_COLORS;
+                encoded = new ArrayList<>();
+                encoded.add(new AbstractMap.SimpleEntry<>(format, true));
+            }
+        }
+
+        if (rainbowPhase == null && encoded == null) {
+            value.append(c).append(code);
+        } else if (!settings.isFiltered(filterOption)) {
+            if (encoded != null && encoded.size() == 1) {
+                Map.Entry<Object, Boolean> single = encoded.iterator().next();
+                if (single.getKey() == Util.TextControl.RESET) {
+                    if (!level.hasRoot && (!level.format.isEmpty() || (level.colors != null && !level.colors.isEmpty()))) {
+                        level.append();
+                    }
+                    appendValue(out, level, value);
+                    level.colors = new ArrayList<>();
+                    level.rainbowPhase = null;
+                    level.format = new HashMap<>();
+                } else if (single.getKey() instanceof TextColor) {
+                    if (value.length() > 0) {
+                        if (!level.hasRoot && !level.format.isEmpty()) {
+                            level.append();
+                        }
+                        appendValue(out, level, value);
+                    }
+                    level.colors = new ArrayList<>();
+                    level.colors.add(new AbstractMap.SimpleImmutableEntry<>((TextColor) single.getKey(), single.getValue()));
+                    level.rainbowPhase = null;
+                    if (level.formattingIsLegacy) {
+                        level.format = new HashMap<>();
+                    }
+                } else if (single.getKey() instanceof TextDecoration) {
+                    if (value.length() > 0) {
+                        appendValue(out, level, value);
+                    }
+                    level.formattingIsLegacy = true;
+                    level.format.put((TextDecoration) single.getKey(), single.getValue());
+                }
+            } else {
+                if (value.length() > 0) {
+                    appendValue(out, level, value);
+                }
+                level.rainbowPhase = rainbowPhase;
+                if (encoded != null) {
+                    List<Map.Entry<TextColor, Boolean>> colors = new ArrayList<>();
+                    for (Map.Entry<Object, Boolean> e : encoded) {
+                        if (e.getKey() instanceof TextColor) {
+                            colors.add(new AbstractMap.SimpleImmutableEntry<>((TextColor) e.getKey(), e.getValue()));
+                        }
+                    }
+                    level.colors = colors;
+                } else {
+                    level.colors = null;
+                }
+                if (level.formattingIsLegacy) {
+                    level.format = new HashMap<>();
+                }
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Read the parts of an event definition that change how the text looks and skip all others
+     * the same way as {@link MineDownParser#parseEvent(String, String)} does
+     */
+    private Level parseEvent(Level parent, String definitions) {
+        List<String> defParts = new ArrayList<>();
+        if (definitions.startsWith(" ")) {
+            defParts.add("");
+        }
+        Collections.addAll(defParts, definitions.split(" "));
+        if (definitions.endsWith(" ")) {
+            defParts.add("");
+        }
+        Level level = new Level(parent.base(), false);
+        level.format = new HashMap<>();
+        boolean lenient = settings.lenient();
+        int formatEnd = -1;
+
+        for (AtomicInteger i = new AtomicInteger(); i.get() < defParts.size(); i.incrementAndGet()) {
+            String definition = defParts.get(i.get());
+            String defLowerCase = definition.toLowerCase(Locale.ROOT);
+            Integer parsedRainbowPhase = MineDownParser.parseRainbow(definition, "", lenient);
+            if (parsedRainbowPhase != null) {
+                level.rainbowPhase = parsedRainbowPhase;
+                continue;
+            } else if (!definition.contains("=")) {
+                List<Map.Entry<Object, Boolean>> parsed = MineDownParser.parseFormat(definition, "", true);
+                if (!parsed.isEmpty()) {
+                    for (Map.Entry<Object, Boolean> e : parsed) {
+                        if (e.getKey() instanceof TextColor) {
+                            if (level.colors == null) {
+                                level.colors = new ArrayList<>();
+                            }
+                            level.colors.add(new AbstractMap.SimpleImmutableEntry<>((TextColor) e.getKey(), e.getValue()));
+                        } else if (e.getKey() instanceof TextDecoration) {
+                            level.format.put((TextDecoration) e.getKey(), e.getValue());
+                        }
+                    }
+                    formatEnd = i.get();
+                    continue;
+                }
+            }
+
+            if (defLowerCase.startsWith(TRANSLATE_PREFIX)) {
+                level.object = true;
+                level.translatable = true;
+                continue;
+            }
+
+            if (defLowerCase.startsWith(WITH_PREFIX) || defLowerCase.startsWith(INSERTION_PREFIX) || defLowerCase.startsWith(PAYLOAD_PREFIX)) {
+                MineDownParser.getValue(i, definition.substring(definition.indexOf('=') + 1), defParts, true);
+                continue;
+            }
+
+            if (defLowerCase.startsWith(FONT_PREFIX)) {
+                continue;
+            }
+
+            if (defLowerCase.startsWith(SPRITE_PREFIX) || defLowerCase.startsWith(ATLAS_PREFIX)) {
+                try {
+                    Key.key(definition.substring(definition.indexOf('=') + 1));
+                    level.object |= defLowerCase.startsWith(SPRITE_PREFIX);
+                } catch (InvalidKeyException e) {
+                    if (!lenient) {
+                        throw new IllegalArgumentException("Invalid key " + definition.substring(definition.indexOf('=') + 1) + "!", e);
+                    }
+                }
+                continue;
+            }
+
+            if (defLowerCase.startsWith(PLAYER_HEAD_PREFIX) || defLowerCase.startsWith(TEXTURE_PREFIX) || defLowerCase.startsWith(HAT_PREFIX)) {
+                level.object = true;
+                continue;
+            }
+
+            if (defLowerCase.startsWith(PROFILE_PREFIX) && level.object) {
+                continue;
+            }
+
+            if (defLowerCase.startsWith(COLOR_PREFIX)) {
+                Integer colorRainbowPhase = MineDownParser.parseRainbow(definition, COLOR_PREFIX, lenient);
+                if (colorRainbowPhase == null) {
+                    List<Map.Entry<Object, Boolean>> parsed = MineDownParser.parseFormat(definition, COLOR_PREFIX, lenient);
+                    level.colors = new ArrayList<>();
+                    for (Map.Entry<Object, Boolean> e : parsed) {
+                        if (e.getKey() instanceof TextColor) {
+                            level.colors.add(new AbstractMap.SimpleImmutableEntry<>((TextColor) e.getKey(), e.getValue()));
+                        } else if (!lenient) {
+                            throw new IllegalArgumentException(e + "  is a format and not a color!");
+                        }
+                    }
+                } else {
+                    level.rainbowPhase = colorRainbowPhase;
+                }
+                formatEnd = i.get();
+                continue;
+            }
+
+            if (defLowerCase.startsWith(SHADOW_PREFIX)) {
+                if (MineDownParser.parseShadow(definition, SHADOW_PREFIX, lenient) == null && !lenient) {
+                    throw new IllegalArgumentException("Invalid shadow definition: " + definition);
+                }
+                formatEnd = i.get();
+                continue;
+            }
+
+            if (defLowerCase.startsWith(FORMAT_PREFIX)) {
+                List<Map.Entry<Object, Boolean>> parsed = MineDownParser.parseFormat(definition, FORMAT_PREFIX, lenient);
+                for (Map.Entry<Object, Boolean> e : parsed) {
+                    if (e.getKey() instanceof TextDecoration) {
+                        level.format.put((TextDecoration) e.getKey(), e.getValue());
+                    } else if (!lenient) {
+                        throw new IllegalArgumentException(e + " is a color and not a format!");
+                    }
+                }
+                formatEnd = i.get();
+                continue;
+            }
+
+            if (i.get() == formatEnd + 1 && MineDownParser.URL_PATTERN.matcher(definition).matches()) {
+                continue;
+            }
+
+            // skip the value of the event, it is read the same way as in the parser
+            ClickEvent.Action clickAction = definition.startsWith("/") ? ClickEvent.Action.NAMES.value("run_command") : null;
+            HoverEvent.Action<?> hoverAction = null;
+            if (defLowerCase.startsWith(HOVER_PREFIX)) {
+                hoverAction = HoverEvent.Action.SHOW_TEXT;
+            }
+            String[] parts = definition.split("=", 2);
+            if (hoverAction == null) {
+                hoverAction = HoverEvent.Action.NAMES.value(parts[0].toLowerCase(Locale.ROOT));
+            }
+            try {
+                clickAction = ClickEvent.Action.NAMES.value(parts[0].toLowerCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+            }
+            MineDownParser.getValue(i, parts.length > 1 ? parts[1] : "", defParts, clickAction != null || hoverAction != null);
+        }
+        return level;
+    }
+
+    private void appendValue(Output out, Level level, StringBuilder value) {
+        if (value.length() == 0 && !level.object) {
+            return;
+        }
+        if (!out.styled()) {
+            appendText(out, level, value);
+            return;
+        }
+        long valueCodepointLength = value.length();
+        List<TextColor> applicableColors;
+        if (level.rainbowPhase != null) {
+            valueCodepointLength = value.codePoints().count();
+            applicableColors = Util.createRainbow(valueCodepointLength, level.rainbowPhase);
+        } else if (level.colors != null) {
+            if (level.colors.size() > 1) {
+                valueCodepointLength = value.codePoints().count();
+                applicableColors = Util.createGradient(
+                        valueCodepointLength,
+                        level.colors.stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).collect(Collectors.toList())
+                );
+            } else {
+                applicableColors = level.colors.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+            }
+        } else {
+            applicableColors = Collections.emptyList();
+        }
+
+        int set = 0;
+        int on = 0;
+        for (Map.Entry<TextDecoration, Boolean> e : level.format.entrySet()) {
+            set |= 1 << e.getKey().ordinal();
+            if (e.getValue()) {
+                on |= 1 << e.getKey().ordinal();
+            }
+        }
+
+        Look look;
+        if (level.object) {
+            // objects can only have one color
+            look = level.base().merge(applicableColors.isEmpty() ? null : applicableColors.get(0), set, on);
+            if (level.translatable) {
+                out.write(value, 0, value.length(), look);
+            }
+        } else {
+            look = level.base().merge(applicableColors.size() == 1 ? applicableColors.get(0) : null, set, on);
+            if (applicableColors.size() < 2) {
+                out.write(value, 0, value.length(), look);
+            }
+        }
+        level.append(look);
+
+        if (applicableColors.size() > 1) {
+            // every character is its own child with the color of the gradient or rainbow
+            int stepLength = (int) Math.round((double) valueCodepointLength / applicableColors.size());
+            int colorIndex = 0;
+            int steps = 0;
+            int start = 0;
+            for (int i = 0; i < value.length(); i = value.offsetByCodePoints(i, 1)) {
+                if (++steps == stepLength) {
+                    steps = 0;
+                    int end = value.offsetByCodePoints(i, 1);
+                    out.write(value, start, end, look.merge(applicableColors.get(colorIndex++), 0, 0));
+                    start = end;
+                }
+            }
+        }
+        value.setLength(0);
+    }
+
+    /**
+     * Write the text of a value without calculating any colors, the same text as {@link #appendValue} writes
+     */
+    private void appendText(Output out, Level level, StringBuilder value) {
+        boolean perCharacter = false;
+        if (value.length() > 1) {
+            // gradients and rainbows only have more than one color if there is more than one code point
+            if (level.rainbowPhase != null) {
+                perCharacter = true;
+            } else if (level.colors != null && level.colors.size() > 1) {
+                int stops = 0;
+                for (Map.Entry<TextColor, Boolean> color : level.colors) {
+                    if (color.getValue()) {
+                        stops++;
+                    }
+                }
+                perCharacter = stops > 1;
+            }
+            perCharacter &= value.codePointCount(0, value.length()) > 1;
+        }
+        if (!level.object) {
+            if (perCharacter) {
+                out.write(value, 0, value.length(), null);
+            } else {
+                writeContent(out, value);
+            }
+        } else if (level.translatable) {
+            out.write(value, 0, value.length(), null);
+        }
+        if (perCharacter && level.object) {
+            // the parser adds the colored characters as children of objects too
+            out.write(value, 0, value.length(), null);
+        }
+        value.setLength(0);
+    }
+
+    /**
+     * Write the content of a single text component. {@link MineDown} turns legacy codes in text contents
+     * into formatting when replacing placeholders so they are not visible and are left out like in
+     * {@link Util#parseLegacy(String, char)}.
+     */
+    private static void writeContent(Output out, CharSequence text) {
+        int sectionIndex = indexOf(text, '§');
+        if (sectionIndex < 0 || sectionIndex + 1 >= text.length()
+                || Util.getFormatFromLegacy(Character.toLowerCase(text.charAt(sectionIndex + 1))) == null) {
+            out.write(text, 0, text.length(), null);
+            return;
+        }
+        String string = text.toString();
+        int start = 0;
+        for (int i = sectionIndex; i + 1 < string.length(); i++) {
+            if (string.charAt(i) != '§') {
+                continue;
+            }
+            char code = Character.toLowerCase(string.charAt(i + 1));
+            Object format = code == 'x' ? Util.parseLegacyHex(string, i, '§') : Util.getFormatFromLegacy(code);
+            if (format != null) {
+                out.write(string, start, i, null);
+                i += code == 'x' ? 13 : 1;
+                start = i + 1;
+            }
+        }
+        out.write(string, start, string.length(), null);
+    }
+
+    private static int indexOf(CharSequence text, char c) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The effective color and decorations of a component in the tree that the parser would build
+     */
+    private static class Look {
+        private static final Look NONE = new Look(null, 0, 0);
+
+        private final TextColor color;
+        private final int set;
+        private final int on;
+
+        private Look(TextColor color, int set, int on) {
+            this.color = color;
+            this.set = set;
+            this.on = on;
+        }
+
+        private Look merge(TextColor color, int set, int on) {
+            if (color == null && set == 0) {
+                return this;
+            }
+            return new Look(color != null ? color : this.color, this.set | set, (this.on & ~set) | on);
+        }
+    }
+
+    /**
+     * The state of one parse call, the first component it appends is the parent of all later ones
+     */
+    private static class Level {
+        private final Look inherited;
+        private final boolean urlDetection;
+        private Look root = null;
+        private boolean hasRoot = false;
+        private Map<TextDecoration, Boolean> format;
+        private boolean formattingIsLegacy = false;
+        private Integer rainbowPhase = null;
+        private List<Map.Entry<TextColor, Boolean>> colors = null;
+        private boolean object = false;
+        private boolean translatable = false;
+
+        private Level(Look inherited, boolean urlDetection) {
+            this.inherited = inherited;
+            this.urlDetection = urlDetection;
+        }
+
+        private Level copy(Look inherited) {
+            Level level = new Level(inherited, urlDetection);
+            level.format = format;
+            level.formattingIsLegacy = formattingIsLegacy;
+            level.rainbowPhase = rainbowPhase;
+            level.colors = colors;
+            return level;
+        }
+
+        private Look base() {
+            return hasRoot ? root : inherited;
+        }
+
+        /**
+         * Append an unstyled component or the one of a nested parse call
+         */
+        private void append() {
+            append(inherited);
+        }
+
+        private void append(Look look) {
+            if (!hasRoot) {
+                hasRoot = true;
+                root = look;
+            }
+        }
+    }
+
+    /**
+     * Receives the visible text in the order that it is shown in
+     */
+    private interface Output {
+
+        /**
+         * Whether the look of the text needs to be calculated
+         */
+        boolean styled();
+
+        /**
+         * Whether the output doesn't need any more text
+         * @param pending The amount of code points that are read but not written yet
+         */
+        boolean full(int pending);
+
+        void write(CharSequence text, int start, int end, Look look);
+    }
+
+    private static class PlainOutput implements Output {
+        private final StringBuilder sb;
+
+        private PlainOutput(StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        @Override
+        public boolean styled() {
+            return false;
+        }
+
+        @Override
+        public boolean full(int pending) {
+            return false;
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end, Look look) {
+            sb.append(text, start, end);
+        }
+    }
+
+    private static class CountingOutput implements Output {
+        private final int limit;
+        private int length = 0;
+
+        private CountingOutput(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean full(int pending) {
+            return length + pending > limit;
+        }
+
+        @Override
+        public boolean styled() {
+            return false;
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end, Look look) {
+            length += Character.codePointCount(text, start, end);
+        }
+    }
+
+    /**
+     * Writes text with the least amount of legacy codes needed for its look
+     */
+    private static class LegacyOutput implements Output {
+        private final StringBuilder sb;
+        private NamedTextColor color = null;
+        private int decorations = 0;
+        private boolean unknown = false;
+
+        private LegacyOutput(StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        @Override
+        public boolean styled() {
+            return true;
+        }
+
+        @Override
+        public boolean full(int pending) {
+            return false;
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end, Look look) {
+            if (start == end) {
+                return;
+            }
+            NamedTextColor color = look.color != null ? NamedTextColor.nearestTo(look.color) : null;
+            int decorations = look.on;
+            if (unknown || color != this.color || (this.decorations & ~decorations) != 0) {
+                // colors reset the decorations so we have to write them again
+                sb.append('§').append(color != null ? Util.getLegacyFormatChar(color) : 'r');
+                this.color = color;
+                this.decorations = 0;
+                unknown = false;
+            }
+            for (TextDecoration decoration : DECORATIONS) {
+                int bit = 1 << decoration.ordinal();
+                if ((decorations & bit) != 0 && (this.decorations & bit) == 0) {
+                    sb.append('§').append(Util.getLegacyFormatChar(decoration));
+                }
+            }
+            this.decorations = decorations;
+            sb.append(text, start, end);
+            // unparsed codes in the text change the look too, write the next one again in full
+            for (int i = start; i < end && !unknown; i++) {
+                unknown = text.charAt(i) == '§';
+            }
+        }
+    }
+}
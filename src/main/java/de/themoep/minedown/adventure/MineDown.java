@@ -25,7 +25,14 @@ package de.themoep.minedown.adventure;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.TextDecoration;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * <h2>MineDown-adventure</h2>
@@ -53,11 +60,30 @@ public class MineDown {
 
     static final int SHADOW_ALPHA = 100;
 
+    /**
+     * The MineDown instance that each thread reuses for {@link #parse(String, String...)}
+     */
+    private static final ThreadLocal<MineDown> PARSE_CONTEXT = ThreadLocal.withInitial(() -> new MineDown(""));
+
+    /**
+     * Parsed components of messages that had their placeholders replaced first,
+     * keyed by the substituted message and the parser settings
+     */
+    private static final BoundedCache<List<Object>, Component> REPLACE_FIRST_CACHE = new BoundedCache<>(512);
+
+    /**
+     * Transcoder with the default settings for {@link #plainText(String)} and {@link #visibleLength(String)}, it only reads them
+     */
+    private static final LegacyTranscoder DEFAULT_TRANSCODER = new LegacyTranscoder();
+
     private String message;
     private final Replacer replacer = new Replacer();
     private final MineDownParser parser = new MineDownParser();
     private Component components = null;
+    private StyleRuns styleRuns = null;
+    private Set<String> placeholders = null;
     private boolean replaceFirst = Boolean.getBoolean("de.themoep.minedown.adventure.replacefirst");
+    private boolean parsing = false;
     
     /**
      * Create a new MineDown builder with a certain message
@@ -74,7 +100,20 @@ public class MineDown {
      * @return              The parsed components
      */
     public static Component parse(String message, String... replacements) {
-        return new MineDown(message).replace(replacements).toComponent();
+        MineDown context = PARSE_CONTEXT.get();
+        if (context.parsing) {
+            // Called while this thread is already parsing, don't touch the state of the running parse
+            return new MineDown(message).replace(replacements).toComponent();
+        }
+        context.parsing = true;
+        try {
+            return context.message(message).replace(replacements).toComponent();
+        } finally {
+            context.replacer().clear();
+            context.parser().reset();
+            context.message("");
+            context.parsing = false;
+        }
     }
     
     /**
@@ -85,6 +124,26 @@ public class MineDown {
     public static String stringify(Component component) {
         return new MineDownStringifier().stringify(component);
     }
+
+    /**
+     * Get the visible text of a MineDown message in one pass without parsing it to components
+     * @param message The message to get the text of
+     * @return The text without any formatting or events
+     * @throws IllegalArgumentException Thrown when a parsing error occurs
+     */
+    public static String plainText(String message) {
+        return DEFAULT_TRANSCODER.plainText(message);
+    }
+
+    /**
+     * Get the number of visible characters of a MineDown message without parsing it to components
+     * @param message The message to measure
+     * @return The length of the {@link #plainText(String)} in code points
+     * @throws IllegalArgumentException Thrown when a parsing error occurs
+     */
+    public static int visibleLength(String message) {
+        return DEFAULT_TRANSCODER.visibleLength(message);
+    }
     
     /**
      * Parse and convert the message to the component
@@ -92,20 +151,126 @@ public class MineDown {
      */
     public Component toComponent() {
         if (components() == null) {
-            String message = message();
-            if (replaceFirst()) {
-                message = replacer().replaceStrings(message);
+            replacer().startRender();
+            try {
+                replacer().resolvePlaceholders(this::placeholders);
+                Component parsed;
+                boolean cutAfterReplacing = false;
+                if (replaceFirst() && parser().parseLimits() != null) {
+                    // Parses with limits aren't cached so every parse counts towards the limits that it reaches
+                    parsed = parser().reset().parse(replacer().replaceStrings(message())).build();
+                } else if (replaceFirst()) {
+                    // The result only depends on the substituted string, cache it as the same values are often used again
+                    parsed = REPLACE_FIRST_CACHE.get(parser().cacheKey(replacer().replaceStrings(message())),
+                            key -> parser().reset().parse((String) key.get(0)).build());
+                } else if (parser().maxLength() >= 0 && !placeholders().isEmpty()) {
+                    // The replaced values change the length of the text so it can only be cut afterwards
+                    int maxLength = parser().maxLength();
+                    cutAfterReplacing = true;
+                    try {
+                        parsed = parser().reset().maxLength(-1).parse(message()).build();
+                    } finally {
+                        parser().maxLength(maxLength);
+                    }
+                } else {
+                    parsed = parser().reset().parse(message()).build();
+                }
+                components = replacer().replaceIn(parsed);
+                if (cutAfterReplacing) {
+                    components = parser().truncate(components);
+                }
+                if (parser().optimize()) {
+                    // the replacer wraps each component so this has to happen afterwards
+                    components = ComponentOptimizer.optimize(components);
+                }
+                if (parser().packetBudget() != null) {
+                    components = parser().packetBudget().apply(components);
+                }
+            } finally {
+                replacer().finishRender();
             }
-            components = replacer().replaceIn(parser().parse(message).build());
         }
         return components();
     }
+
+    /**
+     * Parse and convert the message to flat style runs, this uses the replacements and placeholders like {@link #toComponent()}
+     * @return The style runs of the parsed message, cached until the message or settings change
+     */
+    public StyleRuns toStyleRuns() {
+        if (styleRuns == null || components() == null) {
+            styleRuns = StyleRuns.of(toComponent());
+        }
+        return styleRuns;
+    }
+
+    /**
+     * Parse and convert the message to Minecraft chat JSON, this uses the replacements and placeholders like {@link #toComponent()}
+     * @return The JSON string of the parsed message
+     * @see ComponentJsonWriter
+     */
+    public String toJson() {
+        return ComponentJsonWriter.toJson(toComponent());
+    }
+
+    /**
+     * Convert the message directly to a string with legacy § color codes without creating components.
+     * RGB colors are replaced with the nearest legacy color and events are dropped.
+     * The replacements are applied on the message before converting it if {@link #replaceFirst()} is set,
+     * otherwise on the converted string, component replacements use their legacy representation.
+     * @return The legacy string of the message
+     * @see LegacyTranscoder
+     */
+    public String toLegacy() {
+        LegacyTranscoder transcoder = new LegacyTranscoder(parser());
+        if (replaceFirst()) {
+            return transcoder.transcode(replacer().replaceIn(message()));
+        }
+        return replacer().replaceIn(transcoder.transcode(message()));
+    }
     
+    /**
+     * Get the keys of all placeholders that the message uses with the current placeholder prefix and suffix.
+     * This is only computed once for each message.
+     * @return The unmodifiable set of placeholder keys, without prefix and suffix
+     */
+    public Set<String> placeholders() {
+        if (placeholders == null) {
+            placeholders = Collections.unmodifiableSet(replacer().placeholders(message()));
+        }
+        return placeholders;
+    }
+
+    /**
+     * Set the resolver that is queried once per conversion to a component for the values
+     * of all placeholders in the message which don't have a replacement.
+     * @param placeholderResolver   The placeholder resolver or <code>null</code> to not resolve placeholders
+     * @return                      The MineDown instance
+     */
+    public MineDown placeholderResolver(PlaceholderResolver placeholderResolver) {
+        reset();
+        replacer().placeholderResolver(placeholderResolver);
+        return this;
+    }
+
+    /**
+     * Use an immutable set of replacements which can be shared between messages and threads.
+     * Its values are applied after the ones added directly to this MineDown.
+     * @param replacementSet    The replacement set or <code>null</code> to not use one
+     * @return                  The MineDown instance
+     */
+    public MineDown replace(ReplacementSet replacementSet) {
+        reset();
+        replacer().replace(replacementSet);
+        return this;
+    }
+
     /**
      * Remove a cached component and re-parse the next time {@link #toComponent} is called
      */
     private void reset() {
         components = null;
+        styleRuns = null;
     }
 
     /**
@@ -153,6 +318,19 @@ public class MineDown {
         return this;
     }
 
+    /**
+     * Add a placeholder with a value of any type, use this when the value can be <code>null</code>
+     * as <code>replace(placeholder, null)</code> is ambiguous between the typed replace methods
+     * @param placeholder   The placeholder to replace
+     * @param replacement   The replacement value, <code>null</code> is replaced with the string "null"
+     * @return              The MineDown instance
+     */
+    public MineDown replaceValue(String placeholder, Object replacement) {
+        reset();
+        replacer().replaceValue(placeholder, replacement);
+        return this;
+    }
+
     /**
      * Add a placeholder to component mapping that should get replaced in the message
      * @param placeholder   The placeholder to replace
@@ -165,6 +343,91 @@ public class MineDown {
         return this;
     }
     
+    /**
+     * Add a placeholder with a whole number value which is written by the placeholder formatter
+     * @param placeholder   The placeholder to replace
+     * @param replacement   The replacement value
+     * @return              The MineDown instance
+     */
+    public MineDown replace(String placeholder, long replacement) {
+        reset();
+        replacer().replace(placeholder, replacement);
+        return this;
+    }
+
+    /**
+     * Add a placeholder with a decimal value which is written by the placeholder formatter
+     * @param placeholder   The placeholder to replace
+     * @param replacement   The replacement value
+     * @return              The MineDown instance
+     */
+    public MineDown replace(String placeholder, double replacement) {
+        reset();
+        replacer().replace(placeholder, replacement);
+        return this;
+    }
+
+    /**
+     * Add a placeholder with a duration value which is written by the placeholder formatter
+     * @param placeholder   The placeholder to replace
+     * @param replacement   The replacement value
+     * @return              The MineDown instance
+     */
+    public MineDown replace(String placeholder, Duration replacement) {
+        reset();
+        replacer().replace(placeholder, replacement);
+        return this;
+    }
+
+    /**
+     * Add a placeholder with an instant value which is written by the placeholder formatter
+     * @param placeholder   The placeholder to replace
+     * @param replacement   The replacement value
+     * @return              The MineDown instance
+     */
+    public MineDown replace(String placeholder, Instant replacement) {
+        reset();
+        replacer().replace(placeholder, replacement);
+        return this;
+    }
+
+    /**
+     * Set the formatter that writes typed placeholder values like numbers, durations and instants
+     * @param placeholderFormatter  The placeholder formatter, e.g. {@link PlaceholderFormatter#of(java.util.Locale)}
+     * @return                      The MineDown instance
+     */
+    public MineDown placeholderFormatter(PlaceholderFormatter placeholderFormatter) {
+        reset();
+        replacer().placeholderFormatter(placeholderFormatter);
+        return this;
+    }
+
+    /**
+     * Add a placeholder whose value is only supplied when the placeholder is actually used in the message.
+     * The supplier is called at most once each time the message is converted to a component.
+     * @param placeholder   The placeholder to replace
+     * @param replacement   The supplier of the replacement value
+     * @return              The MineDown instance
+     */
+    public MineDown replace(String placeholder, Supplier<?> replacement) {
+        reset();
+        replacer().replace(placeholder, replacement);
+        return this;
+    }
+
+    /**
+     * Add a placeholder whose value is only computed when the placeholder is actually used in the message.
+     * The function gets the placeholder passed and is called at most once each time the message is converted.
+     * @param placeholder   The placeholder to replace
+     * @param replacement   The function computing the replacement value
+     * @return              The MineDown instance
+     */
+    public MineDown replace(String placeholder, Function<String, ?> replacement) {
+        reset();
+        replacer().replace(placeholder, replacement);
+        return this;
+    }
+
     /**
      * Set the placeholder indicator for both prefix and suffix
      * @param placeholderIndicator  The character to use as a placeholder indicator
@@ -183,6 +446,7 @@ public class MineDown {
      */
     public MineDown placeholderPrefix(String placeholderPrefix) {
         reset();
+        placeholders = null;
         replacer().placeholderPrefix(placeholderPrefix);
         return this;
     }
@@ -202,6 +466,7 @@ public class MineDown {
      */
     public MineDown placeholderSuffix(String placeholderSuffix) {
         reset();
+        placeholders = null;
         replacer().placeholderSuffix(placeholderSuffix);
         return this;
     }
@@ -268,6 +533,18 @@ public class MineDown {
         return this;
     }
 
+    /**
+     * Optimize the component tree after parsing? (Default: false)
+     * This removes redundant wrappers and merges parts with the same style, the result looks exactly the same.
+     * @param enabled   Whether or not to optimize the parsed components with the {@link ComponentOptimizer}
+     * @return          The MineDown instance
+     */
+    public MineDown optimize(boolean enabled) {
+        reset();
+        parser().optimize(enabled);
+        return this;
+    }
+
     /**
      * The text to display when hovering over an URL
      * @param text  The text to display when hovering over an URL
@@ -292,6 +569,58 @@ public class MineDown {
         return this;
     }
 
+    /**
+     * Limit the amount of visible characters of the parsed message. Longer messages are cut off and the parser
+     * stops reading them once the limit is reached, the remaining text keeps its styles and events.
+     * The length includes the replaced values of placeholders. If they aren't replaced first, messages with
+     * placeholders are read completely and cut after the replacement so that no placeholder is cut in half.
+     * @param maxLength The maximum length in code points, including the ellipsis, or -1 for no limit (Default: -1)
+     * @param ellipsis  The text to end cut off messages with, e.g. "…"
+     * @return          The MineDown instance
+     */
+    public MineDown maxLength(int maxLength, String ellipsis) {
+        reset();
+        parser().maxLength(maxLength).ellipsis(ellipsis);
+        return this;
+    }
+
+    /**
+     * Limit the amount of visible characters of the parsed message without adding an ellipsis
+     * @param maxLength The maximum length in code points or -1 for no limit (Default: -1)
+     * @return          The MineDown instance
+     * @see #maxLength(int, String)
+     */
+    public MineDown maxLength(int maxLength) {
+        return maxLength(maxLength, "");
+    }
+
+    /**
+     * Limit the size of the JSON that the message gets serialized to. The message gets degraded in the order of the
+     * budget's degradations if it is too large and {@link #toComponent()} throws a {@link PacketBudget.ExceededException}
+     * if that isn't enough. The parser already rejects messages whose text alone is too large.
+     * @param packetBudget The packet budget or null for no limit (Default: null)
+     * @return             The MineDown instance
+     */
+    public MineDown packetBudget(PacketBudget packetBudget) {
+        reset();
+        parser().packetBudget(packetBudget);
+        return this;
+    }
+
+    /**
+     * Limit the complexity of the message, e.g. when it was written by a player. Depending on the limits' action
+     * {@link #toComponent()} throws a {@link ParseLimits.ExceededException} or returns the message as plain text
+     * when one of them is reached.
+     * @param parseLimits The limits or null for no limits (Default: null)
+     * @return            The MineDown instance
+     * @see ParseLimits#untrusted()
+     */
+    public MineDown parseLimits(ParseLimits parseLimits) {
+        reset();
+        parser().parseLimits(parseLimits);
+        return this;
+    }
+
     /**
      * Enable an option. Unfilter it if you filtered it before.
      * @param option    The option to enable
@@ -365,6 +694,7 @@ public class MineDown {
      */
     public MineDown message(String message) {
         this.message = message;
+        placeholders = null;
         reset();
         return this;
     }
@@ -403,11 +733,22 @@ public class MineDown {
      * @return      This MineDown instance
      */
     public MineDown copy(MineDown from) {
+        reset();
+        placeholders = null;
         replacer().copy(from.replacer());
         parser().copy(from.parser());
+        replaceFirst = from.replaceFirst();
         return this;
     }
 
+    /**
+     * Create an immutable, thread safe copy of this MineDown which parses its message only once
+     * @return  A new ImmutableMineDown with the message and all settings of this MineDown
+     */
+    public ImmutableMineDown toImmutable() {
+        return new ImmutableMineDown(copy());
+    }
+
     /**
      * Get the string that represents the format in MineDown
      * @param format    The format
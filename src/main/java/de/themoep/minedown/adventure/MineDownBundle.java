@@ -0,0 +1,688 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.HoverEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of localized MineDown messages. Messages are read from <code>.properties</code> or YAML files,
+ * or added directly, and served as {@link ImmutableMineDown} templates by their key and {@link Locale}.
+ * <p>
+ * All templates are created with the settings of one MineDown instance and identical messages share one template,
+ * also across locales, so they only get parsed once. Templates are parsed lazily on first use, or in parallel when
+ * they get loaded if {@link #compileOnLoad(boolean)} is enabled. Loading is synchronized, getting templates is
+ * thread safe and doesn't lock.
+ * <p>
+ * Lookups fall back from the requested locale to its language, then to the {@link #defaultLocale()} and finally
+ * to the messages of {@link Locale#ROOT}.
+ */
+public final class MineDownBundle {
+
+    private final MineDown settings;
+    private final Map<Locale, Map<String, ImmutableMineDown>> messages = new ConcurrentHashMap<>();
+    private final Map<String, ImmutableMineDown> templates = new ConcurrentHashMap<>();
+    private final Map<ImmutableMineDown, Integer> references = new IdentityHashMap<>();
+    private volatile Locale defaultLocale = null;
+    private volatile boolean compileOnLoad = false;
+
+    /**
+     * Create a bundle whose templates use the default MineDown settings
+     */
+    public MineDownBundle() {
+        this(new MineDown(""));
+    }
+
+    /**
+     * Create a bundle whose templates use the settings of a MineDown instance, e.g. its parser options,
+     * placeholder indicators or replacement set. The settings get copied for each template when it is added.
+     * @param settings The MineDown to copy the settings from
+     */
+    public MineDownBundle(MineDown settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Add a message
+     * @param locale  The locale of the message
+     * @param key     The key of the message
+     * @param message The MineDown message
+     * @return The MineDownBundle instance
+     */
+    public MineDownBundle put(Locale locale, String key, String message) {
+        return load(locale, Collections.singletonMap(key, message));
+    }
+
+    /**
+     * Add several messages of a locale, existing messages with the same keys get replaced
+     * @param locale   The locale of the messages
+     * @param messages The messages by their key
+     * @return The MineDownBundle instance
+     */
+    public synchronized MineDownBundle load(Locale locale, Map<String, String> messages) {
+        Util.validate(locale != null, "The locale can't be null!");
+        Map<String, ImmutableMineDown> localeMessages = this.messages.computeIfAbsent(locale, l -> new ConcurrentHashMap<>());
+        List<ImmutableMineDown> added = new ArrayList<>();
+        for (Map.Entry<String, String> entry : messages.entrySet()) {
+            ImmutableMineDown template = templates.get(entry.getValue());
+            if (template == null) {
+                template = new ImmutableMineDown(new MineDown(entry.getValue()).copy(settings));
+                templates.put(entry.getValue(), template);
+                added.add(template);
+            }
+            references.merge(template, 1, Integer::sum);
+            ImmutableMineDown previous = localeMessages.put(entry.getKey(), template);
+            if (previous != null) {
+                release(previous);
+            }
+        }
+        if (compileOnLoad()) {
+            compile(added);
+        }
+        return this;
+    }
+
+    /**
+     * Remove all messages of a locale
+     * @param locale The locale to remove the messages of
+     * @return The MineDownBundle instance
+     */
+    public synchronized MineDownBundle unload(Locale locale) {
+        Map<String, ImmutableMineDown> localeMessages = messages.remove(locale);
+        if (localeMessages != null) {
+            for (ImmutableMineDown template : localeMessages.values()) {
+                release(template);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Remove all messages of all locales, e.g. before loading them again
+     * @return The MineDownBundle instance
+     */
+    public synchronized MineDownBundle clear() {
+        messages.clear();
+        templates.clear();
+        references.clear();
+        return this;
+    }
+
+    /**
+     * Stop sharing a template with a message that was removed or replaced, it gets removed when no message uses it anymore
+     */
+    private void release(ImmutableMineDown template) {
+        if (references.merge(template, -1, Integer::sum) <= 0) {
+            references.remove(template);
+            templates.remove(template.message(), template);
+        }
+    }
+
+    /**
+     * Load the messages of a locale from a <code>.properties</code> file
+     * @param locale The locale of the messages
+     * @param reader The reader of the file, it doesn't get closed
+     * @return The MineDownBundle instance
+     * @throws IOException Thrown when the file can't be read
+     */
+    public MineDownBundle loadProperties(Locale locale, Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        Map<String, String> messages = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            messages.put(key, properties.getProperty(key));
+        }
+        return load(locale, messages);
+    }
+
+    /**
+     * Load the messages of a locale from a YAML file. Nested keys are joined with dots and lists of strings
+     * are joined with line breaks. Only mappings, lists and scalars in block style are supported. Messages that
+     * start with characters that YAML reserves, like <code>&amp;</code> for legacy colors, <code>*</code>,
+     * <code>[</code> or <code>{</code>, need to be quoted.
+     * @param locale The locale of the messages
+     * @param reader The reader of the file, it doesn't get closed
+     * @return The MineDownBundle instance
+     * @throws IOException              Thrown when the file can't be read
+     * @throws IllegalArgumentException Thrown when the file contains unsupported or invalid YAML
+     */
+    public MineDownBundle loadYaml(Locale locale, Reader reader) throws IOException {
+        return load(locale, YamlReader.read(reader));
+    }
+
+    /**
+     * Load the messages of a locale from a <code>.properties</code>, <code>.yml</code> or <code>.yaml</code> file
+     * @param locale The locale of the messages
+     * @param file   The file, it's read as UTF-8
+     * @return The MineDownBundle instance
+     * @throws IOException              Thrown when the file can't be read
+     * @throws IllegalArgumentException Thrown when the file type isn't supported
+     */
+    public MineDownBundle load(Locale locale, Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (name.endsWith(".properties")) {
+                return loadProperties(locale, reader);
+            } else if (name.endsWith(".yml") || name.endsWith(".yaml")) {
+                return loadYaml(locale, reader);
+            }
+        }
+        throw new IllegalArgumentException("Unsupported message file " + file + "!");
+    }
+
+    /**
+     * Load all message files of a bundle from a directory. The files are named like <code>messages_de_DE.yml</code>
+     * where <code>messages</code> is the base name, the messages of a file without a locale
+     * (e.g. <code>messages.properties</code>) are used for {@link Locale#ROOT}.
+     * @param directory The directory to load the files from
+     * @param baseName  The base name of the files
+     * @return The MineDownBundle instance
+     * @throws IOException Thrown when a file can't be read
+     */
+    public MineDownBundle loadDirectory(Path directory, String baseName) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int extension = name.lastIndexOf('.');
+                if (extension == -1 || !name.startsWith(baseName) || !Files.isRegularFile(file)) {
+                    continue;
+                }
+                String type = name.substring(extension + 1).toLowerCase(Locale.ROOT);
+                if (!type.equals("properties") && !type.equals("yml") && !type.equals("yaml")) {
+                    continue;
+                }
+                String localePart = name.substring(baseName.length(), extension);
+                if (localePart.isEmpty()) {
+                    load(Locale.ROOT, file);
+                } else if (localePart.charAt(0) == '_' && localePart.length() > 1) {
+                    String[] parts = localePart.substring(1).split("_", 3);
+                    load(new Locale(parts[0], parts.length > 1 ? parts[1] : "", parts.length > 2 ? parts[2] : ""), file);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Parse all templates that weren't parsed yet, in parallel
+     * @return The MineDownBundle instance
+     */
+    public MineDownBundle compile() {
+        compile(templates.values());
+        return this;
+    }
+
+    private static void compile(Collection<ImmutableMineDown> templates) {
+        templates.parallelStream().filter(template -> !template.isParsed()).forEach(ImmutableMineDown::asComponent);
+    }
+
+    /**
+     * Get the template of a message
+     * @param key    The key of the message
+     * @param locale The locale to get the message in
+     * @return The template or <code>null</code> if neither the locale nor one of its fallbacks has that message
+     */
+    public @Nullable ImmutableMineDown get(String key, Locale locale) {
+        for (Locale candidate : candidates(locale)) {
+            Map<String, ImmutableMineDown> localeMessages = messages.get(candidate);
+            if (localeMessages != null) {
+                ImmutableMineDown template = localeMessages.get(key);
+                if (template != null) {
+                    return template;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the parsed component of a message
+     * @param key    The key of the message
+     * @param locale The locale to get the message in
+     * @return The component or <code>null</code> if neither the locale nor one of its fallbacks has that message
+     */
+    public @Nullable Component component(String key, Locale locale) {
+        ImmutableMineDown template = get(key, locale);
+        return template != null ? template.asComponent() : null;
+    }
+
+    private List<Locale> candidates(Locale locale) {
+        List<Locale> candidates = new ArrayList<>(5);
+        addCandidates(candidates, locale);
+        if (defaultLocale != null) {
+            addCandidates(candidates, defaultLocale);
+        }
+        candidates.add(Locale.ROOT);
+        return candidates;
+    }
+
+    private static void addCandidates(List<Locale> candidates, Locale locale) {
+        if (!locale.getVariant().isEmpty()) {
+            candidates.add(locale);
+            candidates.add(new Locale(locale.getLanguage(), locale.getCountry()));
+        } else if (!locale.getCountry().isEmpty()) {
+            candidates.add(locale);
+        }
+        if (!locale.getLanguage().isEmpty()) {
+            candidates.add(new Locale(locale.getLanguage()));
+        }
+    }
+
+    /**
+     * Get the locales that have messages
+     * @return The unmodifiable set of locales
+     */
+    public Set<Locale> locales() {
+        return Collections.unmodifiableSet(messages.keySet());
+    }
+
+    /**
+     * Get the keys of the messages of a locale, without its fallbacks
+     * @param locale The locale
+     * @return The unmodifiable set of keys
+     */
+    public Set<String> keys(Locale locale) {
+        Map<String, ImmutableMineDown> localeMessages = messages.get(locale);
+        return localeMessages != null ? Collections.unmodifiableSet(localeMessages.keySet()) : Collections.emptySet();
+    }
+
+    /**
+     * Get the amount of messages in all locales
+     * @return The amount of messages
+     */
+    public int size() {
+        int size = 0;
+        for (Map<String, ImmutableMineDown> localeMessages : messages.values()) {
+            size += localeMessages.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the amount of different templates, messages which are the same in several locales or under several keys
+     * share one template
+     * @return The amount of templates
+     */
+    public int templateCount() {
+        return templates.size();
+    }
+
+    /**
+     * Get the amount of templates which were already parsed
+     * @return The amount of parsed templates
+     */
+    public int compiledCount() {
+        int count = 0;
+        for (ImmutableMineDown template : templates.values()) {
+            if (template.isParsed()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Estimate the memory that the bundle uses for its keys, messages and parsed components.
+     * This is a rough estimate based on typical object sizes and not an exact measurement.
+     * @return The estimated memory in bytes
+     */
+    public long estimatedMemory() {
+        long memory = 0;
+        for (Map<String, ImmutableMineDown> localeMessages : messages.values()) {
+            for (String key : localeMessages.keySet()) {
+                // map entry and key string
+                memory += 32 + 40 + key.length() * 2L;
+            }
+        }
+        for (ImmutableMineDown template : templates.values()) {
+            // template, its MineDown with parser and replacer and the message string
+            memory += 32 + 48 + 200 + 200 + 40 + template.message().length() * 2L;
+            if (template.isParsed()) {
+                memory += estimatedMemory(template.asComponent());
+            }
+        }
+        return memory;
+    }
+
+    private static long estimatedMemory(Component component) {
+        long memory = 40;
+        if (component instanceof TextComponent) {
+            memory += 40 + ((TextComponent) component).content().length() * 2L;
+        }
+        if (!component.style().isEmpty()) {
+            memory += 64;
+            HoverEvent<?> hoverEvent = component.hoverEvent();
+            if (hoverEvent != null && hoverEvent.value() instanceof Component) {
+                memory += estimatedMemory((Component) hoverEvent.value());
+            }
+        }
+        if (!component.children().isEmpty()) {
+            memory += 16 + component.children().size() * 4L;
+            for (Component child : component.children()) {
+                memory += estimatedMemory(child);
+            }
+        }
+        return memory;
+    }
+
+    /**
+     * Get the locale whose messages are used when a message doesn't exist in the requested locale
+     * @return The default locale or <code>null</code> if only {@link Locale#ROOT} is used (Default: null)
+     */
+    public @Nullable Locale defaultLocale() {
+        return defaultLocale;
+    }
+
+    /**
+     * Set the locale whose messages are used when a message doesn't exist in the requested locale
+     * @param defaultLocale The default locale or <code>null</code> to only use {@link Locale#ROOT} (Default: null)
+     * @return The MineDownBundle instance
+     */
+    public MineDownBundle defaultLocale(@Nullable Locale defaultLocale) {
+        this.defaultLocale = defaultLocale;
+        return this;
+    }
+
+    /**
+     * Get whether templates are parsed in parallel when they get loaded instead of on first use
+     * @return Whether to parse templates when loading them (Default: false)
+     */
+    public boolean compileOnLoad() {
+        return compileOnLoad;
+    }
+
+    /**
+     * Set whether templates are parsed in parallel when they get loaded instead of on first use
+     * @param compileOnLoad Whether to parse templates when loading them (Default: false)
+     * @return The MineDownBundle instance
+     */
+    public MineDownBundle compileOnLoad(boolean compileOnLoad) {
+        this.compileOnLoad = compileOnLoad;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "MineDownBundle{locales=" + messages.keySet() + ", size=" + size() + ", templates=" + templateCount() + "}";
+    }
+
+    /**
+     * Reads the subset of YAML which message files use: nested mappings with string keys whose values are scalars
+     * or lists of scalars, in block style.
+     */
+    private static class YamlReader {
+        private final List<String> lines = new ArrayList<>();
+        private final Map<String, String> messages = new LinkedHashMap<>();
+        private int line = 0;
+
+        private static Map<String, String> read(Reader reader) throws IOException {
+            YamlReader yaml = new YamlReader();
+            BufferedReader bufferedReader = new BufferedReader(reader);
+            for (String l = bufferedReader.readLine(); l != null; l = bufferedReader.readLine()) {
+                yaml.lines.add(l);
+            }
+            yaml.readMapping(-1, "");
+            return yaml.messages;
+        }
+
+        private void readMapping(int parentIndent, String prefix) {
+            int indent = -1;
+            while (skipEmpty()) {
+                String l = lines.get(line);
+                int lineIndent = indent(l);
+                if (lineIndent <= parentIndent) {
+                    return;
+                }
+                if (indent == -1) {
+                    indent = lineIndent;
+                } else if (lineIndent != indent) {
+                    throw error("Unexpected indentation");
+                }
+                String content = l.substring(lineIndent);
+                if (content.startsWith("---") && parentIndent == -1) {
+                    line++;
+                    continue;
+                }
+                int colon = findColon(content);
+                if (colon == -1) {
+                    throw error("Expected a key");
+                }
+                String key = prefix + unquoteKey(content.substring(0, colon).trim());
+                String value = content.substring(colon + 1).trim();
+                if (!value.isEmpty() && !value.startsWith("#") && !value.startsWith("|") && !value.startsWith(">")) {
+                    messages.put(key, scalar(value));
+                    line++;
+                    continue;
+                }
+                line++;
+                if (value.isEmpty() || value.startsWith("#")) {
+                    if (skipEmpty() && indent(lines.get(line)) >= indent && lines.get(line).trim().startsWith("- ")) {
+                        readList(indent(lines.get(line)), key);
+                    } else {
+                        readMapping(indent, key + ".");
+                    }
+                } else {
+                    messages.put(key, readBlock(indent, value));
+                }
+            }
+        }
+
+        private void readList(int indent, String key) {
+            StringBuilder sb = new StringBuilder();
+            while (skipEmpty() && indent(lines.get(line)) == indent && lines.get(line).trim().startsWith("-")) {
+                String value = lines.get(line).trim().substring(1).trim();
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                if (value.startsWith("|") || value.startsWith(">")) {
+                    line++;
+                    sb.append(readBlock(indent, value));
+                } else {
+                    if (!value.isEmpty()) {
+                        sb.append(scalar(value));
+                    }
+                    line++;
+                }
+            }
+            messages.put(key, sb.toString());
+        }
+
+        private String readBlock(int parentIndent, String header) {
+            boolean folded = header.charAt(0) == '>';
+            String chomping = header.length() > 1 ? header.substring(1).trim() : "";
+            List<String> blockLines = new ArrayList<>();
+            int indent = -1;
+            while (line < lines.size()) {
+                String l = lines.get(line);
+                if (l.trim().isEmpty()) {
+                    blockLines.add("");
+                    line++;
+                    continue;
+                }
+                int lineIndent = indent(l);
+                if (lineIndent <= parentIndent || (indent != -1 && lineIndent < indent)) {
+                    break;
+                }
+                if (indent == -1) {
+                    indent = lineIndent;
+                }
+                blockLines.add(l.substring(indent));
+                line++;
+            }
+            int end = blockLines.size();
+            while (end > 0 && blockLines.get(end - 1).isEmpty()) {
+                end--;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < end; i++) {
+                if (i > 0) {
+                    sb.append(folded && !blockLines.get(i - 1).isEmpty() && !blockLines.get(i).isEmpty() ? " " : "\n");
+                }
+                sb.append(blockLines.get(i));
+            }
+            if (chomping.startsWith("+")) {
+                for (int i = end; i < blockLines.size(); i++) {
+                    sb.append('\n');
+                }
+                sb.append('\n');
+            } else if (!chomping.startsWith("-") && end > 0) {
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+
+        private String scalar(String value) {
+            char first = value.charAt(0);
+            if (first == '"') {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 1; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '"') {
+                        checkRest(value, i + 1);
+                        return sb.toString();
+                    } else if (c == '\\' && i + 1 < value.length()) {
+                        char escaped = value.charAt(++i);
+                        switch (escaped) {
+                            case 'n':
+                                sb.append('\n');
+                                break;
+                            case 't':
+                                sb.append('\t');
+                                break;
+                            case 'u':
+                                if (i + 4 >= value.length()) {
+                                    throw error("Invalid unicode escape");
+                                }
+                                sb.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                                i += 4;
+                                break;
+                            default:
+                                sb.append(escaped);
+                        }
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                throw error("Unterminated double quoted string");
+            } else if (first == '\'') {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 1; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '\'') {
+                        if (i + 1 < value.length() && value.charAt(i + 1) == '\'') {
+                            sb.append('\'');
+                            i++;
+                        } else {
+                            checkRest(value, i + 1);
+                            return sb.toString();
+                        }
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                throw error("Unterminated single quoted string");
+            } else if (first == '[' || first == '{' || first == '&' || first == '*' || first == '!' || first == '@' || first == '`') {
+                throw error("Unquoted value " + value + " starts with the reserved character '" + first + "', quote it");
+            }
+            int comment = value.indexOf(" #");
+            return (comment != -1 ? value.substring(0, comment) : value).trim();
+        }
+
+        private void checkRest(String value, int index) {
+            String rest = value.substring(index).trim();
+            if (!rest.isEmpty() && !rest.startsWith("#")) {
+                throw error("Unexpected " + rest + " after quoted string");
+            }
+        }
+
+        private static String unquoteKey(String key) {
+            if (key.length() > 1 && (key.charAt(0) == '"' || key.charAt(0) == '\'') && key.charAt(key.length() - 1) == key.charAt(0)) {
+                return key.substring(1, key.length() - 1);
+            }
+            return key;
+        }
+
+        private static int findColon(String content) {
+            char quote = 0;
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (i == 0 && (c == '"' || c == '\'')) {
+                    quote = c;
+                } else if (c == ':' && (i + 1 == content.length() || content.charAt(i + 1) == ' ')) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean skipEmpty() {
+            while (line < lines.size()) {
+                String trimmed = lines.get(line).trim();
+                if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                    return true;
+                }
+                line++;
+            }
+            return false;
+        }
+
+        private static int indent(String l) {
+            int i = 0;
+            while (i < l.length() && l.charAt(i) == ' ') {
+                i++;
+            }
+            return i;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " in line " + (line + 1) + " of the YAML file!");
+        }
+    }
+}
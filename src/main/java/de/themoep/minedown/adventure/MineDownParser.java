@@ -27,6 +27,7 @@ import net.kyori.adventure.key.Key;
 import net.kyori.adventure.nbt.api.BinaryTagHolder;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.ComponentBuilder;
+import net.kyori.adventure.text.TextComponent;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.event.HoverEvent;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -38,6 +39,7 @@ import net.kyori.adventure.text.object.ObjectContents;
 import net.kyori.adventure.text.object.PlayerHeadObjectContents;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -114,6 +116,12 @@ public class MineDownParser {
      */
     private boolean autoAddUrlPrefix = true;
 
+    /**
+     * Whether or not {@link MineDown} optimizes the component tree with the {@link ComponentOptimizer}
+     * after parsing and replacing placeholders (Default: false)
+     */
+    private boolean optimize = false;
+
     /**
      * The max width the hover text should have.
      * Minecraft itself will wrap after 60 characters.
@@ -121,6 +129,27 @@ public class MineDownParser {
      */
     private int hoverTextWidth = 60;
 
+    /**
+     * The maximum amount of visible characters that the parsed message should have or -1 for no limit.
+     * Longer messages get cut off and end with the {@link #ellipsis}.
+     */
+    private int maxLength = -1;
+
+    /**
+     * The text to end messages with that got cut off because they were longer than the {@link #maxLength}
+     */
+    private String ellipsis = "";
+
+    /**
+     * The limit for the size of the serialized message or null if there is none
+     */
+    private PacketBudget packetBudget = null;
+
+    /**
+     * The limits for the complexity of the message or null if there are none
+     */
+    private ParseLimits parseLimits = null;
+
     public static final Pattern URL_PATTERN = Pattern.compile("^(?:(https?)://)?([-\\w_\\.]+\\.[a-z]{2,18})(/\\S*)?$");
 
     private ComponentBuilder<?, ?> builder;
@@ -139,6 +168,9 @@ public class MineDownParser {
     private boolean formattingIsLegacy = false;
     private ClickEvent clickEvent;
     private HoverEvent hoverEvent;
+    private Budget budget;
+    private PacketBudget.Tracker tracker;
+    private ParseLimits.Counter counter;
 
     public MineDownParser() {
         reset();
@@ -151,17 +183,48 @@ public class MineDownParser {
      * @throws IllegalArgumentException Thrown when a parsing error occurs and lenient is set to false
      */
     public ComponentBuilder parse(String message) throws IllegalArgumentException {
+        if ((budget() == null && maxLength() >= 0) || (tracker() == null && packetBudget() != null)
+                || (counter() == null && parseLimits() != null)) {
+            return parseLimited(message);
+        }
+        if (counter() != null) {
+            counter().enter();
+        }
         Matcher urlMatcher = urlDetection() ? URL_PATTERN.matcher(message) : null;
+        // the options can't change while parsing so only look them up once
+        boolean legacyColors = isEnabled(Option.LEGACY_COLORS);
+        boolean advancedFormatting = isEnabled(Option.ADVANCED_FORMATTING);
+        boolean simpleFormatting = isEnabled(Option.SIMPLE_FORMATTING);
+        // without a budget, text between the chars that start syntax can be appended at once
+        boolean skipText = budget() == null;
+        int wordEnd = -1;
         boolean escaped = false;
         for (int i = 0; i < message.length(); i++) {
+            if (budget() != null && budget().remaining <= 0) {
+                break;
+            }
+            if (skipText && !escaped && i >= wordEnd) {
+                int textEnd = textEnd(message, i, legacyColors, advancedFormatting, simpleFormatting, urlMatcher != null);
+                if (textEnd > i) {
+                    value().append(message, i, textEnd);
+                    i = textEnd - 1;
+                    continue;
+                } else if (urlMatcher != null && message.charAt(i) != ' ') {
+                    // an url could start anywhere in this word, check every char of it
+                    wordEnd = message.indexOf(' ', i);
+                    if (wordEnd == -1) {
+                        wordEnd = message.length();
+                    }
+                }
+            }
             char c = message.charAt(i);
 
             boolean isEscape = c == '\\' && i + 1 < message.length();
-            boolean isColorCode = isEnabled(Option.LEGACY_COLORS)
+            boolean isColorCode = legacyColors
                     && i + 1 < message.length() && (c == '§' || c == colorChar());
             int eventEndIndex = -1;
             String eventDefinition = null;
-            if (!escaped && isEnabled(Option.ADVANCED_FORMATTING) && c == '[') {
+            if (!escaped && advancedFormatting && c == '[') {
                 eventEndIndex = Util.getUnescapedEndIndex(message, '[', ']', i);
                 if (eventEndIndex != -1 && message.length() > eventEndIndex + 1 && message.charAt(eventEndIndex + 1) == '(') {
                     int definitionClose = Util.getUnescapedEndIndex(message, '(', ')', eventEndIndex + 1);
@@ -170,12 +233,16 @@ public class MineDownParser {
                     }
                 }
             }
-            boolean isFormatting = isEnabled(Option.SIMPLE_FORMATTING)
+            boolean isFormatting = simpleFormatting
                     && (c == '_' || c == '*' || c == '~' || c == '?' || c == '#') && Util.isDouble(message, i)
                     && message.indexOf(String.valueOf(c) + String.valueOf(c), i + 2) != -1;
 
             if (escaped) {
                 escaped = false;
+                if (c == '.' && urlMatcher != null) {
+                    // an escaped dot is never part of a detected url, end the text in front of it
+                    appendValue();
+                }
 
                 // Escaping
             } else if (isEscape) {
@@ -327,6 +394,11 @@ public class MineDownParser {
 
             // It's normal text, just append the character
             value().append(message.charAt(i));
+            if (budget() != null && !Character.isHighSurrogate(c) && value().length() >= budget().remaining
+                    && value().codePointCount(0, value().length()) >= budget().remaining) {
+                // no need to read further than the limit
+                appendValue();
+            }
         }
         if (escaped) {
             value().append('\\');
@@ -335,9 +407,175 @@ public class MineDownParser {
         if (builder() == null) {
             builder(Component.text());
         }
+        if (counter() != null) {
+            counter().exit();
+        }
         return builder();
     }
 
+    /**
+     * Find the end of the plain text that starts at an index, only the chars that can start the syntax of the
+     * enabled options end it. Urls need a dot so only words with dots end it if urls are detected.
+     * @param message            The message
+     * @param start              The index to start at
+     * @param legacyColors       Whether legacy colors are enabled
+     * @param advancedFormatting Whether advanced formatting is enabled
+     * @param simpleFormatting   Whether simple formatting is enabled
+     * @param urls               Whether urls are detected
+     * @return The index of the first char that might start syntax or the length of the message
+     */
+    private int textEnd(String message, int start, boolean legacyColors, boolean advancedFormatting, boolean simpleFormatting, boolean urls) {
+        char colorChar = colorChar();
+        int wordStart = start;
+        for (int i = start; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '\\'
+                    || (legacyColors && (c == '§' || c == colorChar))
+                    || (advancedFormatting && c == '[')
+                    || (simpleFormatting && (c == '_' || c == '*' || c == '~' || c == '?' || c == '#'))) {
+                if (urls && wordStart < i) {
+                    int dot = message.indexOf('.', i);
+                    int space = message.indexOf(' ', i);
+                    if (dot != -1 && (space == -1 || dot < space)) {
+                        return wordStart;
+                    }
+                }
+                return i;
+            }
+            if (urls) {
+                if (c == ' ') {
+                    wordStart = i + 1;
+                } else if (c == '.') {
+                    return wordStart;
+                }
+            }
+        }
+        return message.length();
+    }
+
+    /**
+     * Parse a message with the limits of this parser, they are shared with all nested parse calls
+     */
+    private ComponentBuilder parseLimited(String message) {
+        if (packetBudget() != null) {
+            tracker(packetBudget().tracker());
+        }
+        if (parseLimits() != null) {
+            counter(parseLimits().counter());
+        }
+        try {
+            if (counter() != null) {
+                counter().input(message.length());
+            }
+            if (maxLength() >= 0) {
+                if (new LegacyTranscoder(this).visibleLength(message, maxLength()) > maxLength()) {
+                    // only parse as much as fits, the check stops reading the message after the limit too
+                    budget(lengthBudget());
+                } else {
+                    budget(new Budget(Integer.MAX_VALUE, ""));
+                }
+            }
+            parse(message);
+            if (budget() != null && !budget().ellipsis.isEmpty()) {
+                append(Component.text().content(budget().ellipsis));
+            }
+            return builder();
+        } catch (ParseLimits.ExceededException e) {
+            if (parseLimits().action() != ParseLimits.Action.PLAIN_TEXT) {
+                throw e;
+            }
+            // show the message as it was written, the length and size limits still apply to it
+            int inputLength = parseLimits().max(ParseLimits.Limit.INPUT_LENGTH);
+            if (inputLength >= 0 && message.length() > inputLength) {
+                message = message.substring(0, Character.isLowSurrogate(message.charAt(inputLength)) ? inputLength - 1 : inputLength);
+            }
+            if (maxLength() >= 0 && message.codePointCount(0, message.length()) > maxLength()) {
+                Budget budget = lengthBudget();
+                message = message.substring(0, message.offsetByCodePoints(0, budget.remaining)) + budget.ellipsis;
+            }
+            reset();
+            TextComponent.Builder plain = Component.text().content(message);
+            if (packetBudget() != null) {
+                packetBudget().tracker().add(message);
+            }
+            builder(plain);
+            return plain;
+        } finally {
+            budget(null);
+            tracker(null);
+            counter(null);
+        }
+    }
+
+    /**
+     * Get the budget for the visible text of a message that is longer than the max length
+     */
+    private Budget lengthBudget() {
+        String ellipsis = ellipsis();
+        int ellipsisLength = ellipsis.codePointCount(0, ellipsis.length());
+        if (ellipsisLength > maxLength()) {
+            ellipsis = ellipsis.substring(0, ellipsis.offsetByCodePoints(0, maxLength()));
+            ellipsisLength = maxLength();
+        }
+        return new Budget(maxLength() - ellipsisLength, ellipsis);
+    }
+
+    /**
+     * Cut a finished message to the max length like the parser does, e.g. after the placeholders in it were replaced.
+     * The ellipsis gets the style of the text that it follows and hover texts don't count.
+     * @param component The message
+     * @return The message or a cut copy of it if its visible text is longer than the max length
+     */
+    Component truncate(Component component) {
+        if (maxLength() < 0 || visibleLength(component) <= maxLength()) {
+            return component;
+        }
+        Budget budget = lengthBudget();
+        component = truncate(component, budget);
+        if (!budget.ellipsis.isEmpty()) {
+            component = component.append(Component.text(budget.ellipsis));
+        }
+        return component;
+    }
+
+    private static Component truncate(Component component, Budget budget) {
+        if (component instanceof TextComponent) {
+            String content = ((TextComponent) component).content();
+            int length = content.codePointCount(0, content.length());
+            if (length > 0 && length >= budget.remaining) {
+                content = content.substring(0, content.offsetByCodePoints(0, budget.remaining)) + budget.ellipsis;
+                budget.remaining = 0;
+                budget.ellipsis = "";
+                return ((TextComponent) component).content(content).children(Collections.emptyList());
+            }
+            budget.remaining -= length;
+        }
+        List<Component> children = new ArrayList<>();
+        boolean changed = false;
+        for (Component child : component.children()) {
+            if (budget.remaining <= 0) {
+                changed = true;
+                break;
+            }
+            Component truncated = truncate(child, budget);
+            changed |= truncated != child;
+            children.add(truncated);
+        }
+        return changed ? component.children(children) : component;
+    }
+
+    private static int visibleLength(Component component) {
+        int length = 0;
+        if (component instanceof TextComponent) {
+            String content = ((TextComponent) component).content();
+            length = content.codePointCount(0, content.length());
+        }
+        for (Component child : component.children()) {
+            length += visibleLength(child);
+        }
+        return length;
+    }
+
     private void append(ComponentBuilder<?, ?> builder) {
         if (builder() == null) {
             builder(Component.text().append(builder));
@@ -354,13 +592,37 @@ public class MineDownParser {
         if (valueCodepointLength == 0 && translationKey() == null && sprite() == null && playerHead() == null) {
             return;
         }
+        if (budget() != null) {
+            if (budget().remaining <= 0) {
+                value().setLength(0);
+                return;
+            }
+            if (translationKey() != null || (sprite() == null && playerHead() == null)) {
+                int length = value().codePointCount(0, value().length());
+                if (length >= budget().remaining) {
+                    value().setLength(value().offsetByCodePoints(0, budget().remaining));
+                    value().append(budget().ellipsis);
+                    budget().remaining = 0;
+                    budget().ellipsis = "";
+                    valueCodepointLength = value().length();
+                } else {
+                    budget().remaining -= length;
+                }
+            }
+        }
         if (rainbowPhase() != null) {
             // Rainbow colors
             valueCodepointLength = value().codePoints().count();
+            if (counter() != null) {
+                counter().gradient(valueCodepointLength);
+            }
             applicableColors = Util.createRainbow(valueCodepointLength, rainbowPhase());
         } else if (colors() != null) {
             if (colors().size() > 1) {
                 valueCodepointLength = value().codePoints().count();
+                if (counter() != null) {
+                    counter().gradient(valueCodepointLength);
+                }
                 applicableColors = Util.createGradient(
                         valueCodepointLength,
                         colors.stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).collect(Collectors.toList())
@@ -371,6 +633,10 @@ public class MineDownParser {
         } else {
             applicableColors = new ArrayList<>();
         }
+        if (counter() != null) {
+            // gradients have a component for each step
+            counter().components(applicableColors.size() > 1 ? 1 + applicableColors.size() : 1);
+        }
 
         if (applicableColors.size() > 1 && translationKey() == null && sprite() == null && playerHead() == null) {
             // Colors need to have a gradient/rainbow applied
@@ -453,17 +719,20 @@ public class MineDownParser {
                 if (++steps == stepLength) {
                     steps = 0;
                     component.append(Component.text(sb.toString()).color(applicableColors.get(colorIndex++)));
-                    sb = new StringBuilder();
+                    sb.setLength(0);
                 }
             }
             builder.append(component);
         }
+        if (tracker() != null && builder instanceof TextComponent.Builder) {
+            tracker().add(value());
+        }
         if (builder() == null) {
             builder(builder);
         } else {
             builder().append(builder);
         }
-        value(new StringBuilder());
+        value().setLength(0);
     }
 
     /**
@@ -473,6 +742,9 @@ public class MineDownParser {
      * @return The parsed ComponentBuilder for this string
      */
     public ComponentBuilder parseEvent(String text, String definitions) {
+        if (counter() != null) {
+            counter().event();
+        }
         List<String> defParts = new ArrayList<>();
         if (definitions.startsWith(" ")) {
             defParts.add("");
@@ -531,7 +803,7 @@ public class MineDownParser {
             if (defLowerCase.startsWith(WITH_PREFIX)) {
                 String[] args = getValue(i, definition.substring(WITH_PREFIX.length()), defParts, true).split("(?<!\\\\),");
                 for (String arg : args) {
-                    translationArgs.add(copy(false).urlDetection(false).parse(arg).build());
+                    translationArgs.add(nestedParser().parse(arg).build());
                 }
                 continue;
             }
@@ -753,8 +1025,7 @@ public class MineDownParser {
             }
             if (hoverAction != null) {
                 if (hoverAction == HoverEvent.Action.SHOW_TEXT) {
-                    hoverEvent = HoverEvent.showText(copy(false)
-                            .urlDetection(false)
+                    hoverEvent = HoverEvent.showText(nestedParser()
                             .parse(Util.wrap(valueStr, hoverTextWidth()))
                             .build()
                     );
@@ -768,9 +1039,12 @@ public class MineDownParser {
                         hoverEvent = HoverEvent.showEntity(HoverEvent.ShowEntity.showEntity(
                                 Key.key(additionalParts[0]), UUID.fromString(valueParts[0]),
                                 additionalParts.length > 1 && additionalParts[1] != null ?
-                                        copy(false).urlDetection(false).parse(additionalParts[1]).build() : null
+                                        nestedParser().parse(additionalParts[1]).build() : null
                         ));
                     } catch (Exception e) {
+                        if (e instanceof ParseLimits.ExceededException) {
+                            throw (ParseLimits.ExceededException) e;
+                        }
                         if (!lenient()) {
                             if (valueParts.length < 2) {
                                 throw new IllegalArgumentException("Invalid entity definition. Needs to be of format uuid:id or uuid:namespace:id!");
@@ -830,6 +1104,9 @@ public class MineDownParser {
         }
 
         return copy()
+                .budget(budget())
+                .tracker(tracker())
+                .counter(counter())
                 .urlDetection(false)
                 .translationKey(translationKey)
                 .translationArgs(translationArgs)
@@ -847,7 +1124,7 @@ public class MineDownParser {
                 .parse(text);
     }
 
-    private String getValue(AtomicInteger i, String firstPart, List<String> defParts, boolean hasAction) {
+    static String getValue(AtomicInteger i, String firstPart, List<String> defParts, boolean hasAction) {
         int bracketDepth = !firstPart.isEmpty() && firstPart.startsWith("{") && hasAction ? 1 : 0;
 
         StringBuilder value = new StringBuilder();
@@ -1033,7 +1310,44 @@ public class MineDownParser {
         return this.hoverEvent;
     }
 
-    private static Integer parseRainbow(String colorString, String prefix, boolean lenient) {
+    private MineDownParser counter(ParseLimits.Counter counter) {
+        this.counter = counter;
+        return this;
+    }
+
+    private ParseLimits.Counter counter() {
+        return this.counter;
+    }
+
+    private MineDownParser tracker(PacketBudget.Tracker tracker) {
+        this.tracker = tracker;
+        return this;
+    }
+
+    private PacketBudget.Tracker tracker() {
+        return this.tracker;
+    }
+
+    private MineDownParser budget(Budget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    private Budget budget() {
+        return this.budget;
+    }
+
+    /**
+     * Check whether a string would be read as a color or format definition when it is enclosed in color chars
+     * @param colorString The string that would be enclosed, starting with the character after the first color char
+     * @return Whether the string is a color or format definition
+     */
+    static boolean isColorString(String colorString) {
+        return colorString.length() > 1 && (parseRainbow(colorString, "", true) != null
+                || (!colorString.contains("=") && !parseFormat(colorString, "", true).isEmpty()));
+    }
+
+    static Integer parseRainbow(String colorString, String prefix, boolean lenient) {
         if (colorString.substring(prefix.length()).toLowerCase(Locale.ROOT).startsWith(RAINBOW)) {
             if (colorString.length() > prefix.length() + RAINBOW.length() + 1) {
                 try {
@@ -1056,7 +1370,7 @@ public class MineDownParser {
      * @param lenient     Whether or not to accept malformed strings
      * @return The parsed color or <code>null</code> if lenient is true and no color was found
      */
-    private static List<Map.Entry<Object, Boolean>> parseFormat(String colorString, String prefix, boolean lenient) {
+    static List<Map.Entry<Object, Boolean>> parseFormat(String colorString, String prefix, boolean lenient) {
         List<Map.Entry<Object, Boolean>> formats = new ArrayList<>();
         if (prefix.length() + 1 == colorString.length()) {
             Object format = Util.getFormatFromLegacy(colorString.charAt(prefix.length()));
@@ -1095,7 +1409,7 @@ public class MineDownParser {
      * @param lenient      Whether to accept malformed strings
      * @return The parsed shadow color or <code>null</code> if lenient is true and no color was found
      */
-    private static ShadowColor parseShadow(String shadowString, String prefix, boolean lenient) {
+    static ShadowColor parseShadow(String shadowString, String prefix, boolean lenient) {
         if (prefix.length() + 1 == shadowString.length()) {
             Object format = Util.getFormatFromLegacy(shadowString.charAt(prefix.length()));
             if (format == null && !lenient) {
@@ -1183,7 +1497,12 @@ public class MineDownParser {
         urlDetection(from.urlDetection());
         urlHoverText(from.urlHoverText());
         autoAddUrlPrefix(from.autoAddUrlPrefix());
+        optimize(from.optimize());
         hoverTextWidth(from.hoverTextWidth());
+        maxLength(from.maxLength());
+        ellipsis(from.ellipsis());
+        packetBudget(from.packetBudget());
+        parseLimits(from.parseLimits());
         enabledOptions(from.enabledOptions());
         filteredOptions(from.filteredOptions());
         colorChar(from.colorChar());
@@ -1194,20 +1513,50 @@ public class MineDownParser {
             colors(from.colors());
             clickEvent(from.clickEvent());
             hoverEvent(from.hoverEvent());
+            budget(from.budget());
+            tracker(from.tracker());
+            counter(from.counter());
         }
         return this;
     }
 
     /**
-     * Reset the parser state to the start
+     * Create a key that identifies the result of parsing a message with this parser's current settings.
+     * Two keys are equal if parsing their messages results in equal components.
+     * @param message The message that gets parsed
+     * @return The key
+     */
+    List<Object> cacheKey(String message) {
+        return Arrays.asList(message, colorChar(), lenient(), urlDetection(), urlHoverText(), autoAddUrlPrefix(),
+                hoverTextWidth(), maxLength(), ellipsis(), packetBudget(), parseLimits(), toBits(enabledOptions()), toBits(filteredOptions()));
+    }
+
+    private static int toBits(Set<Option> options) {
+        int bits = 0;
+        for (Option option : options) {
+            bits |= 1 << option.ordinal();
+        }
+        return bits;
+    }
+
+    /**
+     * Reset the parser state to the start. The text buffer is kept and only cleared.
      * @return The parser's instance
      */
     public MineDownParser reset() {
         builder = null;
-        value = new StringBuilder();
+        if (value == null) {
+            value = new StringBuilder();
+        } else {
+            value.setLength(0);
+        }
         translationKey = null;
         translationArgs.clear();
         font = null;
+        sprite = null;
+        atlas = null;
+        playerHead = null;
+        formattingIsLegacy = false;
         insertion = null;
         rainbowPhase = null;
         colors = null;
@@ -1467,6 +1816,26 @@ public class MineDownParser {
         return this;
     }
 
+    /**
+     * Get whether or not the component tree gets optimized after parsing
+     * @return whether or not to optimize the component tree (Default: false)
+     */
+    public boolean optimize() {
+        return this.optimize;
+    }
+
+    /**
+     * Set whether or not {@link MineDown} optimizes the component tree with the {@link ComponentOptimizer} after parsing
+     * and replacing placeholders. This removes redundant wrappers and merges parts with the same style,
+     * the result looks exactly the same.
+     * @param optimize Whether or not to optimize the component tree (Default: false)
+     * @return The MineDownParser instance
+     */
+    public MineDownParser optimize(boolean optimize) {
+        this.optimize = optimize;
+        return this;
+    }
+
     /**
      * Get the max width the hover text should have.
      * Minecraft itself will wrap after 60 characters.
@@ -1488,4 +1857,105 @@ public class MineDownParser {
         return this;
     }
 
+    /**
+     * Get the maximum amount of visible characters that the parsed message should have
+     * @return The maximum length in code points or -1 if there is no limit (Default: -1)
+     */
+    public int maxLength() {
+        return this.maxLength;
+    }
+
+    /**
+     * Set the maximum amount of visible characters that the parsed message should have. Longer messages are cut off
+     * and end with the {@link #ellipsis()}, the parser stops reading them after that. The styles and events of the
+     * remaining text stay the same, hover texts are not limited.
+     * @param maxLength The maximum length in code points, including the ellipsis, or -1 for no limit (Default: -1)
+     * @return The MineDownParser instance
+     */
+    public MineDownParser maxLength(int maxLength) {
+        Util.validate(maxLength >= -1, "The max length can't be smaller than -1!");
+        this.maxLength = maxLength;
+        return this;
+    }
+
+    /**
+     * Get the text that messages end with when they got cut off because of the {@link #maxLength()}
+     * @return The ellipsis text (Default: empty)
+     */
+    public String ellipsis() {
+        return this.ellipsis;
+    }
+
+    /**
+     * Set the text that messages end with when they got cut off because of the {@link #maxLength()}.
+     * It has the style of the text that it follows.
+     * @param ellipsis The ellipsis text, e.g. "…" (Default: empty)
+     * @return The MineDownParser instance
+     */
+    public MineDownParser ellipsis(String ellipsis) {
+        Util.validate(ellipsis != null, "The ellipsis can't be null!");
+        this.ellipsis = ellipsis;
+        return this;
+    }
+
+    /**
+     * Get the limit for the JSON size of the parsed message
+     * @return The packet budget or null if there is none (Default: null)
+     */
+    public PacketBudget packetBudget() {
+        return this.packetBudget;
+    }
+
+    /**
+     * Set a limit for the JSON size of the parsed message. The parser rejects the message as soon as its visible text
+     * alone is too large. Use {@link PacketBudget#apply(Component)} on the finished message to check the exact size
+     * and degrade it if necessary, {@link MineDown} does that automatically.
+     * @param packetBudget The packet budget or null for no limit (Default: null)
+     * @return The MineDownParser instance
+     */
+    public MineDownParser packetBudget(PacketBudget packetBudget) {
+        this.packetBudget = packetBudget;
+        return this;
+    }
+
+    /**
+     * Get the limits for the complexity of the message
+     * @return The limits or null if there are none (Default: null)
+     */
+    public ParseLimits parseLimits() {
+        return this.parseLimits;
+    }
+
+    /**
+     * Set limits for the complexity of the message, e.g. for messages written by players. The parser stops as soon as
+     * a limit is reached and either throws a {@link ParseLimits.ExceededException} or returns the message as plain text.
+     * @param parseLimits The limits or null for no limits (Default: null)
+     * @return The MineDownParser instance
+     */
+    public MineDownParser parseLimits(ParseLimits parseLimits) {
+        this.parseLimits = parseLimits;
+        return this;
+    }
+
+    /**
+     * Create a parser for the components in events and translation arguments, they don't detect urls and have no
+     * length or size limits but count towards the complexity limits of the message
+     */
+    private MineDownParser nestedParser() {
+        return copy(false).urlDetection(false).maxLength(-1).packetBudget(null).counter(counter());
+    }
+
+    /**
+     * The amount of visible characters that can still be added while parsing a message with a {@link #maxLength}
+     */
+    private static class Budget {
+        private int remaining;
+        private String ellipsis;
+
+        private Budget(int remaining, String ellipsis) {
+            this.remaining = remaining;
+            this.ellipsis = ellipsis;
+        }
+    }
+
 }
@@ -0,0 +1,846 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import de.themoep.minedown.adventure.MineDownParser.Option;
+import net.kyori.adventure.key.Key;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+
+import static de.themoep.minedown.adventure.MineDown.ATLAS_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.COLOR_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.FONT_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.FORMAT_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.HAT_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.HOVER_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.INSERTION_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.PAYLOAD_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.PLAYER_HEAD_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.PROFILE_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.SHADOW_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.SPRITE_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.TEXTURE_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.TRANSLATE_PREFIX;
+import static de.themoep.minedown.adventure.MineDown.WITH_PREFIX;
+
+/**
+ * Rewrites {@link MineDown} messages so that they only contain allowed markup. This works in one pass over the string
+ * without creating any components, which makes it cheap enough to run on every chat message of untrusted players
+ * instead of parsing them with {@link MineDownParser#filter(Option)}.
+ * <ul>
+ * <li>The syntax of options that aren't allowed gets removed like filtering them would, their text stays.</li>
+ * <li>Colors that aren't allowed become the nearest allowed color. If only certain colors are allowed then
+ * gradients get their first color and rainbows and shadows are removed.</li>
+ * <li>Click and hover events are only kept if their action is allowed, hover texts and entity names are sanitized too.</li>
+ * <li>Translations, fonts, insertions, sprites and player heads are always removed.</li>
+ * <li>Brackets, parentheses and color chars in the text get escaped so that the structure of the result can't differ
+ * from the sanitized one. If urls aren't allowed then dots that could start a top level domain get escaped.</li>
+ * </ul>
+ * The result is meant to be parsed with the same settings that the sanitizer uses.
+ */
+public class MineDownSanitizer {
+
+    private static final String FORMATTING_CHARS = "_*~?#";
+
+    private final MineDownParser settings;
+    private Set<Option> options = EnumSet.allOf(Option.class);
+    private List<TextColor> colors = null;
+    private Set<ClickEvent.Action> clickActions = EnumSet.noneOf(ClickEvent.Action.class);
+    private Set<HoverEvent.Action<?>> hoverActions = Collections.singleton(HoverEvent.Action.SHOW_TEXT);
+
+    /**
+     * Create a sanitizer with the default parser settings
+     */
+    public MineDownSanitizer() {
+        this(new MineDownParser());
+    }
+
+    /**
+     * Create a sanitizer that reads messages with the settings of a parser like the color char, the enabled and
+     * filtered options and url detection. Only the settings are used, the parser's state is not touched.
+     * @param settings The parser to take the settings from
+     */
+    public MineDownSanitizer(MineDownParser settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Sanitize a {@link MineDown} message
+     * @param message The message to sanitize
+     * @return The message with only the allowed markup
+     */
+    public String sanitize(String message) {
+        return sanitize(message, new StringBuilder(message.length() + 16)).toString();
+    }
+
+    /**
+     * Sanitize a {@link MineDown} message
+     * @param message The message to sanitize
+     * @param sb      The builder to append the sanitized message to
+     * @return The builder
+     */
+    public StringBuilder sanitize(String message, StringBuilder sb) {
+        sanitize(new Output(sb), message, settings.urlDetection());
+        return sb;
+    }
+
+    private void sanitize(Output out, String message, boolean urlDetection) {
+        Matcher urlMatcher = urlDetection && clickActions.contains(ClickEvent.Action.OPEN_URL)
+                ? MineDownParser.URL_PATTERN.matcher(message) : null;
+        boolean escaped = false;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+
+            boolean isEscape = c == '\\' && i + 1 < message.length();
+            boolean isColorCode = settings.isEnabled(Option.LEGACY_COLORS)
+                    && i + 1 < message.length() && (c == '§' || c == settings.colorChar());
+            int eventEndIndex = -1;
+            String eventDefinition = null;
+            if (!escaped && settings.isEnabled(Option.ADVANCED_FORMATTING) && c == '[') {
+                eventEndIndex = Util.getUnescapedEndIndex(message, '[', ']', i);
+                if (eventEndIndex != -1 && message.length() > eventEndIndex + 1 && message.charAt(eventEndIndex + 1) == '(') {
+                    int definitionClose = Util.getUnescapedEndIndex(message, '(', ')', eventEndIndex + 1);
+                    if (definitionClose != -1) {
+                        eventDefinition = message.substring(eventEndIndex + 2, definitionClose);
+                    }
+                }
+            }
+            boolean isFormatting = settings.isEnabled(Option.SIMPLE_FORMATTING)
+                    && (c == '_' || c == '*' || c == '~' || c == '?' || c == '#') && Util.isDouble(message, i)
+                    && message.indexOf(String.valueOf(c) + String.valueOf(c), i + 2) != -1;
+
+            if (escaped) {
+                escaped = false;
+                int urlEnd = findUrl(urlMatcher, message, i);
+                if (urlEnd != -1) {
+                    // escaping doesn't prevent url detection, urls keep their escape char
+                    out.syntax("\\" + message.substring(i, urlEnd));
+                    i = urlEnd - 1;
+                } else if (c == '.' && urlMatcher == null) {
+                    text(out, message, i, urlDetection);
+                } else {
+                    out.escaped(c);
+                }
+
+            } else if (isEscape) {
+                escaped = true;
+
+            } else if (isColorCode) {
+                i = sanitizeColorCode(out, message, i, urlDetection);
+
+            } else if (eventEndIndex != -1 && eventDefinition != null) {
+                String text = message.substring(i + 1, eventEndIndex);
+                if (isAllowed(Option.ADVANCED_FORMATTING)) {
+                    String definitions = eventDefinition.isEmpty() ? "" : sanitizeDefinitions(eventDefinition);
+                    out.syntax("[");
+                    // the text of events with definitions doesn't detect urls
+                    sanitize(out, text, urlDetection && definitions.isEmpty());
+                    out.syntax("](" + definitions + ")");
+                } else {
+                    unwrap(out, text, urlDetection);
+                }
+                i = eventEndIndex + 2 + eventDefinition.length();
+
+            } else if (isFormatting) {
+                String marker = String.valueOf(c) + String.valueOf(c);
+                int endIndex = message.indexOf(marker, i + 2);
+                String text = message.substring(i + 2, endIndex);
+                if (isAllowed(Option.SIMPLE_FORMATTING)) {
+                    out.syntax(marker);
+                    sanitize(out, text, urlDetection);
+                    out.syntax(marker);
+                } else {
+                    unwrap(out, text, urlDetection);
+                }
+                i = endIndex + 1;
+
+            } else {
+                int urlEnd = findUrl(urlMatcher, message, i);
+                if (urlEnd != -1) {
+                    // urls are read until the next space no matter what they contain
+                    out.syntax(message.substring(i, urlEnd));
+                    i = urlEnd - 1;
+                } else {
+                    text(out, message, i, urlDetection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find an url at a position the same way the parser does
+     * @return The end index of the url or -1 if there is none
+     */
+    private static int findUrl(Matcher urlMatcher, String message, int i) {
+        if (urlMatcher == null) {
+            return -1;
+        }
+        int urlEnd = message.indexOf(' ', i);
+        if (urlEnd == -1) {
+            urlEnd = message.length();
+        }
+        return urlMatcher.region(i, urlEnd).find() ? urlEnd : -1;
+    }
+
+    /**
+     * Write a char of the text, escape it if it could change the structure of the result
+     */
+    private void text(Output out, String message, int i, boolean urlDetection) {
+        char c = message.charAt(i);
+        if (c == '[' || c == ']' || c == '(' || c == ')' || c == '\\'
+                || (settings.isEnabled(Option.LEGACY_COLORS) && (c == '§' || c == settings.colorChar()))) {
+            out.escaped(c);
+        } else if (c == '.' && urlDetection && !clickActions.contains(ClickEvent.Action.OPEN_URL)) {
+            // urls are detected in the unescaped text, an escaped dot ends the text so it can't start a top level domain
+            int next = i + 1;
+            if (next + 1 < message.length() && message.charAt(next) == '\\') {
+                next++;
+            }
+            if (next < message.length() && message.charAt(next) >= 'a' && message.charAt(next) <= 'z') {
+                out.escaped(c);
+            } else {
+                out.text(c);
+            }
+        } else {
+            out.text(c);
+        }
+    }
+
+    /**
+     * Write the text of syntax that isn't allowed, it still needs to be grouped if it contains color codes
+     * so that they don't apply to the text after it
+     */
+    private void unwrap(Output out, String text, boolean urlDetection) {
+        Output inner = new Output(new StringBuilder());
+        sanitize(inner, text, urlDetection);
+        out.gap();
+        if (settings.isEnabled(Option.ADVANCED_FORMATTING) && (inner.sb.indexOf(String.valueOf(settings.colorChar())) != -1 || inner.sb.indexOf("§") != -1)) {
+            out.syntax("[");
+            out.append(inner);
+            out.syntax("]()");
+        } else {
+            out.append(inner);
+        }
+        out.gap();
+    }
+
+    private int sanitizeColorCode(Output out, String message, int start, boolean urlDetection) {
+        char c = message.charAt(start);
+        int i = start + 1;
+        char code = message.charAt(i);
+        if (code >= 'A' && code <= 'Z') {
+            code += 32;
+        }
+        Integer rainbowPhase = null;
+        List<Map.Entry<Object, Boolean>> encoded = null;
+        Option filterOption = null;
+        boolean spanCandidate = false;
+        StringBuilder colorString = new StringBuilder();
+        for (int j = i; j < message.length(); j++) {
+            char c1 = message.charAt(j);
+            if (c1 == c && colorString.length() > 1) {
+                spanCandidate = true;
+                String colorStr = colorString.toString();
+                rainbowPhase = MineDownParser.parseRainbow(colorStr, "", true);
+                if (rainbowPhase == null && !colorStr.contains("=")) {
+                    encoded = MineDownParser.parseFormat(colorStr, "", true);
+                    if (encoded.isEmpty()) {
+                        encoded = null;
+                    } else {
+                        filterOption = Option.SIMPLE_FORMATTING;
+                        i = j;
+                    }
+                } else {
+                    filterOption = Option.SIMPLE_FORMATTING;
+                    i = j;
+                }
+                break;
+            }
+            if (c1 != '_' && c1 != '#' && c1 != '-' && c1 != ',' && c1 != ':' &&
+                    (c1 < 'A' || c1 > 'Z') && (c1 < 'a' || c1 > 'z') && (c1 < '0' || c1 > '9')) {
+                break;
+            }
+            colorString.append(c1);
+        }
+        if (rainbowPhase == null && encoded == null) {
+            Object format = Util.getFormatFromLegacy(code);
+            if (format != null) {
+                filterOption = Option.LEGACY_COLORS;
+                encoded = Collections.singletonList(new AbstractMap.SimpleEntry<>(format, true));
+            }
+        }
+
+        if (rainbowPhase == null && encoded == null) {
+            // not a code, both chars are text and the second one can't start any syntax
+            out.escaped(c);
+            char next = message.charAt(i);
+            if (Character.isLetterOrDigit(next) || next == ' ' || next == '.') {
+                text(out, message, i, urlDetection);
+            } else {
+                out.escaped(next);
+            }
+            return i;
+        }
+        if (!isAllowed(filterOption)) {
+            out.gap();
+            return i;
+        }
+        if (spanCandidate && filterOption == Option.LEGACY_COLORS && (colors != null
+                || colorString.toString().toLowerCase(Locale.ROOT).startsWith("rainbow"))) {
+            // the text after the code would get read as a span again, a changed code could even turn it into a valid one
+            out.gap();
+            return i;
+        }
+        String original = message.substring(start, i + 1);
+        if (colors == null) {
+            // spans are only parsed leniently here, write them in a way that is always valid
+            out.syntax(filterOption == Option.LEGACY_COLORS ? original : c + span(rainbowPhase, encoded) + c);
+            return i;
+        }
+        if (rainbowPhase != null) {
+            out.gap();
+            return i;
+        }
+        List<Map.Entry<TextColor, Boolean>> codeColors = new ArrayList<>();
+        for (Map.Entry<Object, Boolean> e : encoded) {
+            if (e.getKey() instanceof TextColor) {
+                codeColors.add(new AbstractMap.SimpleImmutableEntry<>((TextColor) e.getKey(), e.getValue()));
+            }
+        }
+        if (codeColors.isEmpty()) {
+            out.syntax(original);
+            return i;
+        }
+        TextColor color = firstColor(codeColors);
+        TextColor allowed = nearestAllowed(color);
+        if (allowed == null) {
+            out.gap();
+        } else if (codeColors.size() == 1 && allowed.equals(color)) {
+            out.syntax(original);
+        } else if (allowed instanceof NamedTextColor && isAllowed(Option.LEGACY_COLORS)) {
+            out.syntax(String.valueOf(c) + Util.getLegacyFormatChar(allowed));
+        } else if (isAllowed(Option.SIMPLE_FORMATTING)) {
+            out.syntax(c + name(allowed) + c);
+        } else {
+            out.gap();
+        }
+        return i;
+    }
+
+    /**
+     * Read an event definition the same way as {@link MineDownParser#parseEvent(String, String)} does
+     * and write the allowed parts of it in an unambiguous way
+     */
+    private String sanitizeDefinitions(String definitions) {
+        List<String> defParts = new ArrayList<>();
+        if (definitions.startsWith(" ")) {
+            defParts.add("");
+        }
+        Collections.addAll(defParts, definitions.split(" "));
+        if (definitions.endsWith(" ")) {
+            defParts.add("");
+        }
+        Integer rainbowPhase = null;
+        List<Map.Entry<TextColor, Boolean>> colors = null;
+        Map<TextDecoration, Boolean> formats = new LinkedHashMap<>();
+        String shadow = null;
+        ClickEvent.Action clickAction = null;
+        String clickValue = null;
+        HoverEvent.Action<?> hoverAction = null;
+        String hoverValue = null;
+        boolean playerHead = false;
+        int formatEnd = -1;
+
+        for (AtomicInteger i = new AtomicInteger(); i.get() < defParts.size(); i.incrementAndGet()) {
+            String definition = defParts.get(i.get());
+            String defLowerCase = definition.toLowerCase(Locale.ROOT);
+            Integer parsedRainbowPhase = MineDownParser.parseRainbow(definition, "", true);
+            if (parsedRainbowPhase != null) {
+                rainbowPhase = parsedRainbowPhase;
+                continue;
+            } else if (!definition.contains("=")) {
+                List<Map.Entry<Object, Boolean>> parsed = MineDownParser.parseFormat(definition, "", true);
+                if (!parsed.isEmpty()) {
+                    for (Map.Entry<Object, Boolean> e : parsed) {
+                        if (e.getKey() instanceof TextColor) {
+                            if (colors == null) {
+                                colors = new ArrayList<>();
+                            }
+                            colors.add(new AbstractMap.SimpleImmutableEntry<>((TextColor) e.getKey(), e.getValue()));
+                        } else if (e.getKey() instanceof TextDecoration) {
+                            formats.put((TextDecoration) e.getKey(), e.getValue());
+                        }
+                    }
+                    formatEnd = i.get();
+                    continue;
+                }
+            }
+
+            if (defLowerCase.startsWith(TRANSLATE_PREFIX) || defLowerCase.startsWith(FONT_PREFIX)
+                    || defLowerCase.startsWith(SPRITE_PREFIX) || defLowerCase.startsWith(ATLAS_PREFIX)) {
+                continue;
+            }
+
+            if (defLowerCase.startsWith(WITH_PREFIX)) {
+                MineDownParser.getValue(i, definition.substring(WITH_PREFIX.length()), defParts, true);
+                continue;
+            }
+
+            if (defLowerCase.startsWith(PLAYER_HEAD_PREFIX) || defLowerCase.startsWith(TEXTURE_PREFIX) || defLowerCase.startsWith(HAT_PREFIX)) {
+                playerHead = true;
+                continue;
+            }
+
+            if (defLowerCase.startsWith(PROFILE_PREFIX) && playerHead) {
+                continue;
+            }
+
+            if (defLowerCase.startsWith(INSERTION_PREFIX) || defLowerCase.startsWith(PAYLOAD_PREFIX)) {
+                MineDownParser.getValue(i, definition.substring(definition.indexOf('=') + 1), defParts, true);
+                continue;
+            }
+
+            if (defLowerCase.startsWith(COLOR_PREFIX)) {
+                Integer colorRainbowPhase = MineDownParser.parseRainbow(definition, COLOR_PREFIX, true);
+                if (colorRainbowPhase == null) {
+                    colors = new ArrayList<>();
+                    for (Map.Entry<Object, Boolean> e : MineDownParser.parseFormat(definition, COLOR_PREFIX, true)) {
+                        if (e.getKey() instanceof TextColor) {
+                            colors.add(new AbstractMap.SimpleImmutableEntry<>((TextColor) e.getKey(), e.getValue()));
+                        }
+                    }
+                } else {
+                    rainbowPhase = colorRainbowPhase;
+                }
+                formatEnd = i.get();
+                continue;
+            }
+
+            if (defLowerCase.startsWith(SHADOW_PREFIX)) {
+                if (MineDownParser.parseShadow(definition, SHADOW_PREFIX, true) != null) {
+                    shadow = definition.substring(SHADOW_PREFIX.length());
+                }
+                formatEnd = i.get();
+                continue;
+            }
+
+            if (defLowerCase.startsWith(FORMAT_PREFIX)) {
+                for (Map.Entry<Object, Boolean> e : MineDownParser.parseFormat(definition, FORMAT_PREFIX, true)) {
+                    if (e.getKey() instanceof TextDecoration) {
+                        formats.put((TextDecoration) e.getKey(), e.getValue());
+                    }
+                }
+                formatEnd = i.get();
+                continue;
+            }
+
+            if (i.get() == formatEnd + 1 && MineDownParser.URL_PATTERN.matcher(definition).matches()) {
+                clickAction = ClickEvent.Action.OPEN_URL;
+                clickValue = definition.startsWith("http://") || definition.startsWith("https://") ? definition : "http://" + definition;
+                continue;
+            }
+
+            ClickEvent.Action click = definition.startsWith("/") ? ClickEvent.Action.RUN_COMMAND : null;
+            HoverEvent.Action<?> hover = null;
+            if (defLowerCase.startsWith(HOVER_PREFIX)) {
+                hover = HoverEvent.Action.SHOW_TEXT;
+            }
+            String[] parts = definition.split("=", 2);
+            if (hover == null) {
+                hover = HoverEvent.Action.NAMES.value(parts[0].toLowerCase(Locale.ROOT));
+            }
+            try {
+                click = ClickEvent.Action.NAMES.value(parts[0].toLowerCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+            }
+            String value = MineDownParser.getValue(i, parts.length > 1 ? parts[1] : "", defParts, click != null || hover != null);
+            if (click != null) {
+                clickAction = click;
+                clickValue = value;
+            } else if (hover == null) {
+                hover = HoverEvent.Action.SHOW_TEXT;
+            }
+            if (hover != null) {
+                hoverAction = hover;
+                hoverValue = value;
+            }
+        }
+
+        List<String> sanitized = new ArrayList<>();
+        // colors and formats are written as one part without an equals sign so that they work in hover texts too
+        StringBuilder style = new StringBuilder();
+        if (this.colors == null) {
+            if (rainbowPhase != null) {
+                sanitized.add(span(rainbowPhase, null));
+            } else if (colors != null) {
+                for (Map.Entry<TextColor, Boolean> e : colors) {
+                    style.append(style.length() > 0 ? "-" : "").append(e.getValue() ? "" : "!").append(name(e.getKey()));
+                }
+            }
+        } else if (rainbowPhase == null && colors != null && !colors.isEmpty()) {
+            TextColor allowed = nearestAllowed(firstColor(colors));
+            if (allowed != null) {
+                style.append(name(allowed));
+            }
+        }
+        for (Map.Entry<TextDecoration, Boolean> e : formats.entrySet()) {
+            style.append(style.length() > 0 ? "," : "").append(e.getValue() ? "" : "!").append(TextDecoration.NAMES.key(e.getKey()));
+        }
+        if (style.length() > 0) {
+            sanitized.add(style.toString());
+        }
+        if (shadow != null && this.colors == null) {
+            sanitized.add(SHADOW_PREFIX + shadow);
+        }
+        if (clickAction != null && clickActions.contains(clickAction) && isValidClick(clickAction, clickValue)) {
+            sanitized.add(ClickEvent.Action.NAMES.key(clickAction) + "=" + clickValue);
+        }
+        if (hoverAction != null && hoverActions.contains(hoverAction)) {
+            String hover = sanitizeHover(hoverAction, hoverValue);
+            if (hover != null) {
+                sanitized.add(hover);
+            }
+        }
+        return String.join(" ", sanitized);
+    }
+
+    private boolean isValidClick(ClickEvent.Action action, String value) {
+        if (!isSafeValue(value)) {
+            return false;
+        }
+        try {
+            Class<? extends ClickEvent.Payload> payloadType = Util.getPayloadType(action);
+            if (payloadType.isAssignableFrom(ClickEvent.Payload.Text.class)) {
+                return true;
+            } else if (payloadType.isAssignableFrom(ClickEvent.Payload.Int.class)) {
+                Integer.parseInt(value);
+                return true;
+            } else if (payloadType.isAssignableFrom(ClickEvent.Payload.Custom.class)) {
+                Key.key(value);
+                return true;
+            }
+        } catch (IllegalArgumentException e) {
+            // invalid value or unsupported action
+        }
+        return false;
+    }
+
+    private String sanitizeHover(HoverEvent.Action<?> action, String value) {
+        if (action == HoverEvent.Action.SHOW_TEXT) {
+            String text = sanitizeText(value);
+            return text != null ? HOVER_PREFIX + text : null;
+        } else if (action == HoverEvent.Action.SHOW_ENTITY) {
+            String[] valueParts = value.split(":", 2);
+            if (valueParts.length < 2) {
+                return null;
+            }
+            String[] additionalParts = valueParts[1].split(" ", 2);
+            try {
+                UUID.fromString(valueParts[0]);
+                Key.key(additionalParts[0].contains(":") ? additionalParts[0] : "minecraft:" + additionalParts[0]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            String entity = valueParts[0] + ":" + additionalParts[0];
+            if (!isSafeValue(entity)) {
+                return null;
+            }
+            String name = additionalParts.length > 1 ? sanitizeText(additionalParts[1]) : null;
+            return HoverEvent.Action.NAMES.key(action) + "=" + entity + (name != null ? " " + name : "");
+        } else if (action == HoverEvent.Action.SHOW_ITEM) {
+            String id = value.split(" ", 2)[0];
+            int countIndex = id.indexOf('*');
+            if (countIndex > 0) {
+                id = id.substring(0, countIndex);
+            }
+            try {
+                Key.key(id.contains(":") ? id : "minecraft:" + id);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            return isSafeValue(value) ? HoverEvent.Action.NAMES.key(action) + "=" + value : null;
+        }
+        return null;
+    }
+
+    /**
+     * Sanitize a {@link MineDown} text that is the value of an event definition and escape everything that
+     * would end the value early
+     * @return The text or null if it's empty
+     */
+    private String sanitizeText(String value) {
+        int start = 0;
+        while (start < value.length() && value.charAt(start) == ' ') {
+            // an empty first part would make the definition itself part of the value
+            start++;
+        }
+        if (start == value.length()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        // events and translation arguments don't detect urls
+        sanitize(new Output(sb), value.substring(start), false);
+        if (sb.charAt(0) == '{') {
+            sb.insert(0, '\\');
+        }
+        int firstSpace = sb.indexOf(" ");
+        if (firstSpace != -1) {
+            for (int i = firstSpace; i < sb.length(); i++) {
+                if (sb.charAt(i) == '=' && !Util.isEscaped(sb.toString(), i)) {
+                    sb.insert(i, '\\');
+                    i++;
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Check whether a value that can't be escaped gets read the same way when it is written into a definition
+     */
+    private static boolean isSafeValue(String value) {
+        if (value.isEmpty() || value.charAt(0) == ' ' || value.charAt(0) == '{' || value.endsWith("\\")) {
+            return false;
+        }
+        int brackets = 0;
+        int parentheses = 0;
+        boolean escaped = false;
+        boolean firstPart = true;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == ' ') {
+                firstPart = false;
+            } else if (c == '=' && !firstPart) {
+                return false;
+            } else if (c == '[') {
+                brackets++;
+            } else if (c == ']' && --brackets < 0) {
+                return false;
+            } else if (c == '(') {
+                parentheses++;
+            } else if (c == ')' && --parentheses < 0) {
+                return false;
+            }
+        }
+        return brackets == 0 && parentheses == 0;
+    }
+
+    private boolean isAllowed(Option option) {
+        return options.contains(option) && !settings.isFiltered(option);
+    }
+
+    private static TextColor firstColor(List<Map.Entry<TextColor, Boolean>> colors) {
+        if (colors.size() == 1) {
+            return colors.get(0).getKey();
+        }
+        // gradients only use the colors that aren't negated
+        for (Map.Entry<TextColor, Boolean> e : colors) {
+            if (e.getValue()) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    private TextColor nearestAllowed(TextColor color) {
+        if (color == null || colors.isEmpty()) {
+            return null;
+        }
+        return colors.contains(color) ? color : TextColor.nearestColorTo(colors, color);
+    }
+
+    private static String span(Integer rainbowPhase, List<Map.Entry<Object, Boolean>> encoded) {
+        if (rainbowPhase != null) {
+            return "rainbow" + (rainbowPhase != 0 ? ":" + rainbowPhase : "");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Object, Boolean> e : encoded) {
+            sb.append(sb.length() > 0 ? "," : "").append(e.getValue() ? "" : "!");
+            if (e.getKey() instanceof TextColor) {
+                sb.append(name((TextColor) e.getKey()));
+            } else {
+                sb.append(TextDecoration.NAMES.key((TextDecoration) e.getKey()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String name(TextColor color) {
+        return color instanceof NamedTextColor ? NamedTextColor.NAMES.key((NamedTextColor) color) : color.asHexString();
+    }
+
+    /**
+     * Get the options whose syntax is allowed
+     * @return The allowed options (Default: all)
+     */
+    public Set<Option> options() {
+        return options;
+    }
+
+    /**
+     * Set the options whose syntax is allowed, the syntax of all other options gets removed
+     * @param options The allowed options (Default: all)
+     * @return The MineDownSanitizer instance
+     */
+    public MineDownSanitizer options(Set<Option> options) {
+        Util.validate(options != null, "The options can't be null!");
+        this.options = options.isEmpty() ? EnumSet.noneOf(Option.class) : EnumSet.copyOf(options);
+        return this;
+    }
+
+    /**
+     * Get the colors that are allowed
+     * @return The allowed colors or null if all are allowed (Default: null)
+     */
+    public List<TextColor> colors() {
+        return colors;
+    }
+
+    /**
+     * Set the colors that are allowed. Other colors get replaced with the nearest allowed one,
+     * gradients get their first color and rainbows and shadows get removed.
+     * @param colors The allowed colors or null to allow all colors, gradients, rainbows and shadows (Default: null)
+     * @return The MineDownSanitizer instance
+     */
+    public MineDownSanitizer colors(Collection<? extends TextColor> colors) {
+        this.colors = colors != null ? Collections.unmodifiableList(new ArrayList<>(colors)) : null;
+        return this;
+    }
+
+    /**
+     * Get the click actions that are allowed
+     * @return The allowed click actions (Default: none)
+     */
+    public Set<ClickEvent.Action> clickActions() {
+        return clickActions;
+    }
+
+    /**
+     * Set the click actions that are allowed, other click events get removed.
+     * If {@link ClickEvent.Action#OPEN_URL} isn't allowed then urls in the text get split so that they aren't detected.
+     * @param clickActions The allowed click actions (Default: none)
+     * @return The MineDownSanitizer instance
+     */
+    public MineDownSanitizer clickActions(Set<ClickEvent.Action> clickActions) {
+        Util.validate(clickActions != null, "The click actions can't be null!");
+        this.clickActions = clickActions.isEmpty() ? EnumSet.noneOf(ClickEvent.Action.class) : EnumSet.copyOf(clickActions);
+        return this;
+    }
+
+    /**
+     * Get the hover actions that are allowed
+     * @return The allowed hover actions (Default: show_text)
+     */
+    public Set<HoverEvent.Action<?>> hoverActions() {
+        return hoverActions;
+    }
+
+    /**
+     * Set the hover actions that are allowed, other hover events get removed
+     * @param hoverActions The allowed hover actions (Default: show_text)
+     * @return The MineDownSanitizer instance
+     */
+    public MineDownSanitizer hoverActions(Set<HoverEvent.Action<?>> hoverActions) {
+        Util.validate(hoverActions != null, "The hover actions can't be null!");
+        this.hoverActions = new HashSet<>(hoverActions);
+        return this;
+    }
+
+    /**
+     * The sanitized string and whether markup was removed right before its end. Removing markup could let the text
+     * around it form new formatting syntax so the text char before such a gap gets escaped if necessary.
+     */
+    private static class Output {
+        private final StringBuilder sb;
+        private boolean gap = false;
+        private int lastText = -1;
+
+        private Output(StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        private void gap() {
+            gap = true;
+        }
+
+        private void text(char c) {
+            join(c);
+            sb.append(c);
+            lastText = sb.length() - 1;
+        }
+
+        private void escaped(char c) {
+            join('\\');
+            sb.append('\\').append(c);
+            lastText = -1;
+        }
+
+        private void syntax(String syntax) {
+            join(syntax.charAt(0));
+            sb.append(syntax);
+            lastText = -1;
+        }
+
+        private void append(Output other) {
+            if (other.sb.length() > 0) {
+                join(other.sb.charAt(0));
+                int offset = sb.length();
+                sb.append(other.sb);
+                lastText = other.lastText != -1 ? offset + other.lastText : -1;
+                gap = other.gap;
+            }
+        }
+
+        private void join(char next) {
+            if (gap) {
+                gap = false;
+                if (lastText != -1 && lastText == sb.length() - 1 && sb.charAt(lastText) == next && FORMATTING_CHARS.indexOf(next) != -1) {
+                    sb.insert(lastText, '\\');
+                }
+            }
+        }
+    }
+}
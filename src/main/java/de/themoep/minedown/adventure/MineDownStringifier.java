@@ -36,15 +36,18 @@ import net.kyori.adventure.text.format.TextColor;
 import net.kyori.adventure.text.object.PlayerHeadObjectContents;
 import net.kyori.adventure.text.object.SpriteObjectContents;
 
+import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.EnumSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static de.themoep.minedown.adventure.MineDown.ATLAS_PREFIX;
 import static de.themoep.minedown.adventure.MineDown.COLOR_PREFIX;
@@ -64,6 +67,17 @@ import static de.themoep.minedown.adventure.MineDown.WITH_PREFIX;
 
 public class MineDownStringifier {
 
+    /**
+     * The first color of the rainbows with the phases 0 to 99, it doesn't depend on the length
+     */
+    private static final int[] RAINBOW_STARTS = new int[100];
+
+    static {
+        for (int phase = 0; phase < RAINBOW_STARTS.length; phase++) {
+            RAINBOW_STARTS[phase] = Util.createRainbow(1L, phase).get(0).value();
+        }
+    }
+
     /**
      * Whether or not to use legacy color codes (Default: false)
      */
@@ -94,22 +108,35 @@ public class MineDownStringifier {
      */
     private char colorChar = '&';
 
+    /**
+     * Whether or not to merge runs with the same style and use the shortest syntax (Default: false)
+     */
+    private boolean shortestOutput = false;
+
+    /**
+     * Whether or not to write single character parts with gradient or rainbow colors as one gradient or rainbow (Default: true)
+     */
+    private boolean detectGradients = true;
+
     private TextColor color = null;
     private ClickEvent clickEvent = null;
     private HoverEvent hoverEvent = null;
     private Set<TextDecoration> formats = new LinkedHashSet<>();
 
+    /**
+     * The saved style states of the outer nesting levels. The entries are reused so that stringifying
+     * children doesn't need new stringifier instances.
+     */
+    private final List<State> stateStack = new ArrayList<>();
+    private int depth = 0;
+
     /**
      * Create a {@link MineDown} string from a component message
      * @param components The components to generate a MineDown string from
      * @return The MineDown string
      */
     public String stringify(List<Component> components) {
-        StringBuilder sb = new StringBuilder();
-        for (Component component : components) {
-            sb.append(stringify(component));
-        }
-        return sb.toString();
+        return stringify(components, new StringBuilder()).toString();
     }
 
     /**
@@ -118,10 +145,61 @@ public class MineDownStringifier {
      * @return The MineDown string
      */
     public String stringify(Component component) {
-        StringBuilder sb = new StringBuilder();
+        return stringify(component, new StringBuilder()).toString();
+    }
+
+    /**
+     * Write the {@link MineDown} string of a component message to a builder
+     * @param components The components to generate a MineDown string from
+     * @param sb         The builder to append to
+     * @return The builder
+     */
+    public StringBuilder stringify(List<Component> components, StringBuilder sb) {
+        if (shortestOutput()) {
+            // the runs can only be merged if they are known to be written together
+            return stringify(Component.text().append(components).build(), sb);
+        }
+        for (Component component : components) {
+            stringify(component, sb);
+        }
+        return sb;
+    }
+
+    /**
+     * Write the {@link MineDown} string of a component message to an {@link Appendable} like a writer.
+     * The string is written in one call, {@link StringBuilder}s are written to directly.
+     * @param component The component to generate a MineDown string from
+     * @param out       The appendable to write to
+     * @param <A>       The type of the appendable
+     * @return The appendable
+     * @throws IOException If the appendable throws one
+     */
+    public <A extends Appendable> A stringify(Component component, A out) throws IOException {
+        if (out instanceof StringBuilder) {
+            stringify(component, (StringBuilder) out);
+        } else {
+            out.append(stringify(component, new StringBuilder()));
+        }
+        return out;
+    }
+
+    /**
+     * Write the {@link MineDown} string of a component message to a builder
+     * @param component The component to generate a MineDown string from
+     * @param sb        The builder to append to
+     * @return The builder
+     */
+    public StringBuilder stringify(Component component, StringBuilder sb) {
+        if (shortestOutput() && appendShortest(sb, component)) {
+            return sb;
+        }
+        return appendComponent(sb, component);
+    }
+
+    private StringBuilder appendComponent(StringBuilder sb, Component component) {
         if (!component.hasStyling() && component.children().isEmpty() &&  component instanceof TextComponent) {
             appendText(sb, component);
-            return sb.toString();
+            return sb;
         }
         boolean hasEvent = (component.style().font() != null && component.style().font() != Style.DEFAULT_FONT)
                 || (component.shadowColor() != null && component.shadowColor().alpha() != 0)
@@ -146,7 +224,26 @@ public class MineDownStringifier {
         appendText(sb, component);
 
         if (!component.children().isEmpty()) {
-            sb.append(copy().stringify(component.children()));
+            pushState();
+            List<Component> children = component.children();
+            List<Component> gradientRun = Collections.emptyList();
+            int runStart = 0;
+            for (int i = 0; i < children.size(); i++) {
+                if (detectGradients() && !useLegacyColors()) {
+                    // collect the parts that could be a gradient once and check the ones after each start in it
+                    if (i >= runStart + gradientRun.size()) {
+                        gradientRun = gradientRun(children, i);
+                        runStart = i;
+                    }
+                    int end = appendGradient(sb, gradientRun, i - runStart);
+                    if (end > i - runStart) {
+                        i = runStart + end - 1;
+                        continue;
+                    }
+                }
+                appendComponent(sb, children.get(i));
+            }
+            popState();
         }
 
         if (hasEvent) {
@@ -156,187 +253,859 @@ public class MineDownStringifier {
                 appendFormatSuffix(sb, component);
             }
             sb.append("](");
-            List<String> definitions = new ArrayList<>();
-            if (component instanceof TranslatableComponent) {
-                TranslatableComponent translatable = (TranslatableComponent) component;
-                definitions.add(TRANSLATE_PREFIX + translatable.key());
-                if (!translatable.arguments().isEmpty()) {
-                    definitions.add(new StringBuilder()
-                            .append(WITH_PREFIX)
-                            .append("{")
-                            .append(translatable.arguments().stream().map(arg -> stringify(arg.asComponent()))
-                                    .collect(Collectors.joining(",")))
-                            .append("}").toString());
-                }
-            } else if (component instanceof ObjectComponent) {
-                if (((ObjectComponent) component).contents() instanceof PlayerHeadObjectContents) {
-                    PlayerHeadObjectContents playerHeadContents = (PlayerHeadObjectContents) ((ObjectComponent) component).contents();
-                    String defValue = null;
-                    if (playerHeadContents.id() != null) {
-                        defValue = playerHeadContents.id().toString();
-                    } else if (playerHeadContents.name() != null) {
-                        defValue = playerHeadContents.name();
-                    } else if (playerHeadContents.texture() != null) {
-                        defValue = playerHeadContents.texture().asMinimalString();
-                    } else if (!playerHeadContents.profileProperties().isEmpty()) {
-                        for (PlayerHeadObjectContents.ProfileProperty property : playerHeadContents.profileProperties()) {
-                            if ("textures".equals(property.name()) && property.signature() == null) {
-                                String decoded = new String(Base64.getDecoder().decode(property.value()));
-                                if (decoded.startsWith("{\"textures\"") && decoded.endsWith("}")) {
-                                    defValue = property.value();
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                    if (defValue == null) {
-                        defValue = "Unknown";
+            appendDefinitions(sb, component, preferSimpleEvents(), true);
+            sb.append(')');
+        } else {
+            appendFormatSuffix(sb, component);
+        }
+        return sb;
+    }
+
+    /**
+     * Get the consecutive single character components that only have a color
+     * @param children The components to check
+     * @param start    The index of the first component to check
+     * @return The components, without the empty components the parser wraps them in
+     */
+    private static List<Component> gradientRun(List<Component> children, int start) {
+        List<Component> parts = new ArrayList<>();
+        for (int i = start; i < children.size(); i++) {
+            Component part = gradientPart(children.get(i));
+            if (part == null) {
+                break;
+            }
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /**
+     * Write a sequence of single character components that only have a color as one gradient or rainbow
+     * if the colors match the ones generated by {@link Util#createGradient(long, List)} or {@link Util#createRainbow(long, int)}
+     * @param sb    The builder to append to
+     * @param run   The single character components with only a color, see {@link #gradientRun(List, int)}
+     * @param start The index of the first component to check
+     * @return The index after the last written component or <code>start</code> if no gradient was written
+     */
+    private int appendGradient(StringBuilder sb, List<Component> run, int start) {
+        List<Component> parts = run.subList(start, run.size());
+        if (parts.size() < 2) {
+            return start;
+        }
+        int[] values = new int[parts.size()];
+        boolean singleColor = true;
+        for (int i = 0; i < parts.size(); i++) {
+            values[i] = parts.get(i).color().value();
+            singleColor &= values[i] == values[0];
+        }
+        if (singleColor) {
+            return start;
+        }
+
+        String colorString = null;
+        Integer rainbowPhase = findRainbowPhase(values);
+        if (rainbowPhase != null) {
+            colorString = rainbowPhase == 0 ? "rainbow" : "rainbow:" + rainbowPhase;
+        } else {
+            List<TextColor> gradient = findGradient(values);
+            if (gradient != null) {
+                StringBuilder gradientString = new StringBuilder();
+                for (TextColor color : gradient) {
+                    if (gradientString.length() > 0) {
+                        gradientString.append('-');
                     }
-                    definitions.add(PLAYER_HEAD_PREFIX + defValue);
+                    NamedTextColor named = NamedTextColor.namedColor(color.value());
+                    gradientString.append(named != null ? named.toString() : color.asHexString());
+                }
+                colorString = gradientString.toString();
+            }
+        }
+        if (colorString == null) {
+            return start;
+        }
 
-                    if (!playerHeadContents.hat()) {
-                        definitions.add(HAT_PREFIX + "false");
+        // a gradient code would also color the text after the run, the definition only colors the text in the brackets
+        sb.append('[');
+        for (Component part : parts) {
+            appendText(sb, part);
+        }
+        sb.append("](").append(colorString);
+        // the text of events doesn't inherit the formatting around it
+        Set<TextDecoration> openFormats = new LinkedHashSet<>();
+        for (int i = 0; i < depth; i++) {
+            openFormats.addAll(stateStack.get(i).formats);
+        }
+        openFormats.addAll(formats);
+        for (TextDecoration format : openFormats) {
+            sb.append(' ').append(format.name().toLowerCase(Locale.ROOT));
+        }
+        sb.append(')');
+        return start + parts.size();
+    }
+
+    /**
+     * Get the single character component with only a color, the parser wraps these in empty components
+     * @param component The component to check
+     * @return The component with the color or <code>null</code> if it isn't a single character with a color
+     */
+    private static Component gradientPart(Component component) {
+        if (!(component instanceof TextComponent)) {
+            return null;
+        }
+        String content = ((TextComponent) component).content();
+        if (content.isEmpty() && !component.hasStyling() && component.children().size() == 1) {
+            return gradientPart(component.children().get(0));
+        }
+        if (content.isEmpty() || content.length() != Character.charCount(content.codePointAt(0))
+                || !component.children().isEmpty() || component.color() == null
+                || !component.style().equals(Style.style(component.color()))) {
+            return null;
+        }
+        return component;
+    }
+
+    /**
+     * Check whether colors match the ones generated by {@link Util#createGradient(long, List)} or {@link Util#createRainbow(long, int)}
+     * @param values The color values, one for each character
+     * @return Whether the colors are a gradient or a rainbow with more than one color
+     */
+    static boolean isGradient(int[] values) {
+        if (values.length < 2) {
+            return false;
+        }
+        boolean singleColor = true;
+        for (int value : values) {
+            singleColor &= value == values[0];
+        }
+        return !singleColor && (findRainbowPhase(values) != null || findGradient(values) != null);
+    }
+
+    /**
+     * Find the phase of the rainbow that has the provided colors
+     * @param values The color values
+     * @return The phase or <code>null</code> if the colors aren't a rainbow with a phase between 0 and 99
+     */
+    private static Integer findRainbowPhase(int[] values) {
+        for (int phase = 0; phase < RAINBOW_STARTS.length; phase++) {
+            // only generate the rainbows which start with the right color
+            if (RAINBOW_STARTS[phase] == values[0] && matches(Util.createRainbow((long) values.length, phase), values)) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the colors of the gradient that has the provided colors, using as few colors as possible
+     * and at most one color for every two characters
+     * @param values The color values
+     * @return The colors of the gradient or <code>null</code> if the colors aren't a gradient
+     */
+    private static List<TextColor> findGradient(int[] values) {
+        int length = values.length;
+        if (length < 3) {
+            return null;
+        }
+        // every sector has at least two steps so the first three colors are always on one line
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int c0 = (values[0] >> shift) & 0xFF;
+            int c1 = (values[1] >> shift) & 0xFF;
+            int c2 = (values[2] >> shift) & 0xFF;
+            if (Math.abs(2 * c1 - c0 - c2) > 1) {
+                return null;
+            }
+        }
+        int[] sectors = new int[length];
+        float[] factors = new float[length];
+        // with more stops any colors would be a gradient
+        for (int stops = 2; stops * 2 <= length + 1; stops++) {
+            // follow the sectors like Util#createGradient does, each sector starts with the exact color of its stop
+            float factorStep = 1.0f / ((float) (length - 1) / (stops - 1));
+            // check the second color against the first sector before walking all sectors
+            int secondStop = (int) (1 / factorStep);
+            while (factorStep * secondStop <= 1) {
+                secondStop++;
+            }
+            while (secondStop > 1 && factorStep * (secondStop - 1) > 1) {
+                secondStop--;
+            }
+            if (secondStop > 1 && secondStop < length
+                    && TextColor.lerp(factorStep, TextColor.color(values[0]), TextColor.color(values[secondStop])).value() != values[1]) {
+                continue;
+            }
+            List<TextColor> gradient = new ArrayList<>();
+            long index = 0;
+            int colorIndex = 0;
+            int sectorStart = 0;
+            boolean matches = true;
+            for (int i = 0; i < length && matches; i++) {
+                if (factorStep * index > 1) {
+                    colorIndex++;
+                    index = 0;
+                }
+                float factor = factorStep * index++;
+                if (factor > 1) {
+                    factor = 1 - (factor - 1);
+                }
+                sectors[i] = colorIndex;
+                factors[i] = factor;
+                if (factor == 0 && colorIndex == gradient.size()) {
+                    gradient.add(TextColor.color(values[i]));
+                    if (gradient.size() > stops) {
+                        matches = false;
+                    } else if (colorIndex > 0) {
+                        // both stops of the previous sector are known now, stop early if it doesn't match
+                        matches = matchesSector(values, factors, sectorStart, i, gradient.get(colorIndex - 1), gradient.get(colorIndex));
+                        sectorStart = i;
                     }
+                }
+            }
+            if (!matches) {
+                continue;
+            }
+            if (gradient.size() == stops) {
+                if (matches(Util.createGradient((long) length, gradient), values)) {
+                    return gradient;
+                }
+            } else if (gradient.size() == stops - 1 && colorIndex == stops - 2) {
+                // the last stop is never reached exactly, find the colors it could have
+                List<TextColor> gradientTo = findGradientEnd(values, sectors, factors, gradient);
+                if (gradientTo != null) {
+                    return gradientTo;
+                }
+            }
+        }
+        return null;
+    }
 
-                    if (playerHeadContents.texture() != null) {
-                        definitions.add(TEXTURE_PREFIX + playerHeadContents.texture());
+    private static boolean matchesSector(int[] values, float[] factors, int start, int end, TextColor from, TextColor to) {
+        for (int i = start; i < end; i++) {
+            if (TextColor.lerp(factors[i], from, to).value() != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<TextColor> findGradientEnd(int[] values, int[] sectors, float[] factors, List<TextColor> gradient) {
+        int lastSector = gradient.size() - 1;
+        int from = gradient.get(lastSector).value();
+        int[] min = {0, 0, 0};
+        int[] max = {255, 255, 255};
+        boolean constrained = false;
+        for (int i = 0; i < values.length; i++) {
+            if (sectors[i] != lastSector || factors[i] <= 0) {
+                continue;
+            }
+            constrained = true;
+            for (int channel = 0; channel < 3; channel++) {
+                int shift = 16 - channel * 8;
+                int a = (from >> shift) & 0xFF;
+                int c = (values[i] >> shift) & 0xFF;
+                // the lerp rounds the channel so every value within half a step of it is possible
+                min[channel] = Math.max(min[channel], (int) Math.ceil(a + (c - a - 0.5f) / factors[i]));
+                max[channel] = Math.min(max[channel], (int) Math.floor(a + (c - a + 0.5f) / factors[i]));
+            }
+        }
+        if (!constrained) {
+            // the last stop isn't visible, use the last color
+            min[0] = max[0] = (values[values.length - 1] >> 16) & 0xFF;
+            min[1] = max[1] = (values[values.length - 1] >> 8) & 0xFF;
+            min[2] = max[2] = values[values.length - 1] & 0xFF;
+        }
+        int candidates = 1;
+        for (int channel = 0; channel < 3; channel++) {
+            candidates *= Math.max(0, max[channel] - min[channel] + 1);
+        }
+        if (candidates == 0 || candidates > 64) {
+            return null;
+        }
+        List<TextColor> candidate = new ArrayList<>(gradient);
+        candidate.add(null);
+        for (int r = min[0]; r <= max[0]; r++) {
+            for (int g = min[1]; g <= max[1]; g++) {
+                for (int b = min[2]; b <= max[2]; b++) {
+                    candidate.set(candidate.size() - 1, TextColor.color(r, g, b));
+                    if (matches(Util.createGradient((long) values.length, candidate), values)) {
+                        return candidate;
                     }
+                }
+            }
+        }
+        return null;
+    }
 
-                    if (!playerHeadContents.profileProperties().isEmpty()) {
-                        List<String> profileValues = new ArrayList<>();
-                        for (PlayerHeadObjectContents.ProfileProperty property : playerHeadContents.profileProperties()) {
-                            if (defValue.equals(property.value())) {
-                                continue;
-                            }
-                            String profileValue = property.name() + "=" + property.value();
-                            if (property.signature() != null) {
-                                profileValue += ",signature=" + property.signature();
+    private static boolean matches(List<TextColor> colors, int[] values) {
+        if (colors.size() != values.length) {
+            return false;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (colors.get(i).value() != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the event definitions of a component, the events are taken from the current state
+     * @param sb               The builder
+     * @param component        The component
+     * @param simpleEvents     Whether to use simple event definitions
+     * @param styleDefinitions Whether to write color and formatting definitions if enabled
+     */
+    private void appendDefinitions(StringBuilder sb, Component component, boolean simpleEvents, boolean styleDefinitions) {
+        int definitions = 0;
+        if (component instanceof TranslatableComponent) {
+            TranslatableComponent translatable = (TranslatableComponent) component;
+            nextDefinition(sb, definitions++).append(TRANSLATE_PREFIX).append(translatable.key());
+            if (!translatable.arguments().isEmpty()) {
+                nextDefinition(sb, definitions++).append(WITH_PREFIX).append("{");
+                for (int i = 0; i < translatable.arguments().size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    appendComponent(sb, translatable.arguments().get(i).asComponent());
+                }
+                sb.append("}");
+            }
+        } else if (component instanceof ObjectComponent) {
+            if (((ObjectComponent) component).contents() instanceof PlayerHeadObjectContents) {
+                PlayerHeadObjectContents playerHeadContents = (PlayerHeadObjectContents) ((ObjectComponent) component).contents();
+                String defValue = null;
+                if (playerHeadContents.id() != null) {
+                    defValue = playerHeadContents.id().toString();
+                } else if (playerHeadContents.name() != null) {
+                    defValue = playerHeadContents.name();
+                } else if (playerHeadContents.texture() != null) {
+                    defValue = playerHeadContents.texture().asMinimalString();
+                } else if (!playerHeadContents.profileProperties().isEmpty()) {
+                    for (PlayerHeadObjectContents.ProfileProperty property : playerHeadContents.profileProperties()) {
+                        if ("textures".equals(property.name()) && property.signature() == null) {
+                            String decoded = new String(Base64.getDecoder().decode(property.value()));
+                            if (decoded.startsWith("{\"textures\"") && decoded.endsWith("}")) {
+                                defValue = property.value();
+                                break;
                             }
-                            profileValues.add(profileValue);
                         }
-                        if (!profileValues.isEmpty()) {
-                            definitions.add(PROFILE_PREFIX + "{" + profileValues.stream().map(s -> {
-                                if (profileValues.size() == 1) {
-                                    return s;
-                                } else {
-                                    return "{" + s + "}";
-                                }
-                            }).collect(Collectors.joining(",")) + "}");
-                        }
-                    }
-                } else if (((ObjectComponent) component).contents() instanceof SpriteObjectContents) {
-                    SpriteObjectContents spriteContents = (SpriteObjectContents) ((ObjectComponent) component).contents();
-                    definitions.add(SPRITE_PREFIX + spriteContents.sprite().asMinimalString());
-                    if (!spriteContents.atlas().equals(SpriteObjectContents.DEFAULT_ATLAS)) {
-                        definitions.add(ATLAS_PREFIX + spriteContents.atlas().asMinimalString());
                     }
                 }
-            }
-            if (colorInEventDefinition() && component.color() != null) {
-                StringBuilder sbi = new StringBuilder();
-                if (!preferSimpleEvents()) {
-                    sbi.append(COLOR_PREFIX);
+                if (defValue == null) {
+                    defValue = "Unknown";
                 }
-                if (component.color() instanceof NamedTextColor) {
-                    sbi.append(component.color());
-                } else {
-                    sbi.append(component.color().asHexString().toLowerCase(Locale.ROOT));
-                }
-                definitions.add(sbi.toString());
-            }
-            if (formattingInEventDefinition()) {
-                StringBuilder sbi = new StringBuilder();
-                if (!preferSimpleEvents()) {
-                    sbi.append(FORMAT_PREFIX);
-                }
-                sbi.append(component.decorations().entrySet().stream()
-                        .filter(e -> e.getValue() == TextDecoration.State.TRUE)
-                        .map(e -> e.getKey().name().toLowerCase(Locale.ROOT))
-                        .collect(Collectors.joining(" ")));
-                definitions.add(sbi.toString());
-            }
-            if (component.shadowColor() != null && component.shadowColor().alpha() != 0) {
-                String hexString = component.shadowColor().asHexString().toLowerCase(Locale.ROOT);
-                if (component.shadowColor().alpha() == SHADOW_ALPHA) {
-                    String shortHex = hexString.substring(0, 7);
-                    TextColor color = TextColor.fromHexString(shortHex);
-                    NamedTextColor namedColor = NamedTextColor.namedColor(color.value());
-                    if (namedColor != null) {
-                        definitions.add(SHADOW_PREFIX + namedColor);
-                    } else {
-                        definitions.add(SHADOW_PREFIX + shortHex);
+                nextDefinition(sb, definitions++).append(PLAYER_HEAD_PREFIX).append(defValue);
+
+                if (!playerHeadContents.hat()) {
+                    nextDefinition(sb, definitions++).append(HAT_PREFIX).append("false");
+                }
+
+                if (playerHeadContents.texture() != null) {
+                    nextDefinition(sb, definitions++).append(TEXTURE_PREFIX).append(playerHeadContents.texture());
+                }
+
+                int profileValues = 0;
+                for (PlayerHeadObjectContents.ProfileProperty property : playerHeadContents.profileProperties()) {
+                    if (!defValue.equals(property.value())) {
+                        profileValues++;
                     }
-                } else {
-                    definitions.add(SHADOW_PREFIX + hexString);
+                }
+                if (profileValues > 0) {
+                    nextDefinition(sb, definitions++).append(PROFILE_PREFIX).append("{");
+                    boolean first = true;
+                    for (PlayerHeadObjectContents.ProfileProperty property : playerHeadContents.profileProperties()) {
+                        if (defValue.equals(property.value())) {
+                            continue;
+                        }
+                        if (!first) {
+                            sb.append(',');
+                        }
+                        first = false;
+                        if (profileValues > 1) {
+                            sb.append('{');
+                        }
+                        sb.append(property.name()).append('=').append(property.value());
+                        if (property.signature() != null) {
+                            sb.append(",signature=").append(property.signature());
+                        }
+                        if (profileValues > 1) {
+                            sb.append('}');
+                        }
+                    }
+                    sb.append("}");
+                }
+            } else if (((ObjectComponent) component).contents() instanceof SpriteObjectContents) {
+                SpriteObjectContents spriteContents = (SpriteObjectContents) ((ObjectComponent) component).contents();
+                nextDefinition(sb, definitions++).append(SPRITE_PREFIX).append(spriteContents.sprite().asMinimalString());
+                if (!spriteContents.atlas().equals(SpriteObjectContents.DEFAULT_ATLAS)) {
+                    nextDefinition(sb, definitions++).append(ATLAS_PREFIX).append(spriteContents.atlas().asMinimalString());
                 }
             }
-            if (component.style().font() != null && component.style().font() != Style.DEFAULT_FONT) {
-                Key font = component.style().font();
-                if (font.namespace().equals("minecraft")) {
-                    definitions.add(FONT_PREFIX + font.value());
-                } else {
-                    definitions.add(FONT_PREFIX + font);
+        }
+        if (styleDefinitions && colorInEventDefinition() && component.color() != null) {
+            nextDefinition(sb, definitions++);
+            if (!simpleEvents) {
+                sb.append(COLOR_PREFIX);
+            }
+            if (component.color() instanceof NamedTextColor) {
+                sb.append(component.color());
+            } else {
+                sb.append(component.color().asHexString().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (styleDefinitions && formattingInEventDefinition()) {
+            nextDefinition(sb, definitions++);
+            if (!simpleEvents) {
+                sb.append(FORMAT_PREFIX);
+            }
+            boolean first = true;
+            for (Map.Entry<TextDecoration, TextDecoration.State> decoration : component.decorations().entrySet()) {
+                if (decoration.getValue() == TextDecoration.State.TRUE) {
+                    if (!first) {
+                        sb.append(' ');
+                    }
+                    first = false;
+                    sb.append(decoration.getKey().name().toLowerCase(Locale.ROOT));
                 }
             }
-            if (component.insertion() != null) {
-                if (component.insertion().contains(" ")) {
-                    definitions.add(INSERTION_PREFIX + "{" + component.insertion() + "}");
+        }
+        if (component.shadowColor() != null && component.shadowColor().alpha() != 0) {
+            String hexString = component.shadowColor().asHexString().toLowerCase(Locale.ROOT);
+            nextDefinition(sb, definitions++).append(SHADOW_PREFIX);
+            if (component.shadowColor().alpha() == SHADOW_ALPHA) {
+                String shortHex = hexString.substring(0, 7);
+                TextColor color = TextColor.fromHexString(shortHex);
+                NamedTextColor namedColor = NamedTextColor.namedColor(color.value());
+                if (namedColor != null) {
+                    sb.append(namedColor);
                 } else {
-                    definitions.add(INSERTION_PREFIX + component.insertion());
+                    sb.append(shortHex);
                 }
+            } else {
+                sb.append(hexString);
             }
-            if (clickEvent != null) {
-                if (preferSimpleEvents() && clickEvent.action().name().equalsIgnoreCase("open_url")) {
-                    definitions.add(((ClickEvent.Payload.Text) clickEvent.payload()).value());
-                } else {
-                    String payloadDef = clickEvent.action().name().toLowerCase(Locale.ROOT);
-                    ClickEvent.Payload payload = clickEvent.payload();
-                    if (payload instanceof ClickEvent.Payload.Text) {
-                        payloadDef += "=" + ((ClickEvent.Payload.Text) payload).value();
-                    } else if (payload instanceof ClickEvent.Payload.Int) {
-                        payloadDef += "=" + ((ClickEvent.Payload.Int) payload).integer();
-                    } else if (payload instanceof ClickEvent.Payload.Custom) {
-                        ClickEvent.Payload.Custom custom = (ClickEvent.Payload.Custom) payload;
-                        payloadDef += "=" + custom.key().asMinimalString()
-                                + (custom.nbt().string().isEmpty() ? "" : " " + MineDown.PAYLOAD_PREFIX + custom.nbt().string());
+        }
+        if (component.style().font() != null && component.style().font() != Style.DEFAULT_FONT) {
+            Key font = component.style().font();
+            nextDefinition(sb, definitions++).append(FONT_PREFIX);
+            if (font.namespace().equals("minecraft")) {
+                sb.append(font.value());
+            } else {
+                sb.append(font);
+            }
+        }
+        if (component.insertion() != null) {
+            nextDefinition(sb, definitions++).append(INSERTION_PREFIX);
+            if (component.insertion().contains(" ")) {
+                sb.append("{").append(component.insertion()).append("}");
+            } else {
+                sb.append(component.insertion());
+            }
+        }
+        if (clickEvent != null) {
+            nextDefinition(sb, definitions++);
+            if (simpleEvents && clickEvent.action().name().equalsIgnoreCase("open_url")) {
+                sb.append(((ClickEvent.Payload.Text) clickEvent.payload()).value());
+            } else {
+                sb.append(clickEvent.action().name().toLowerCase(Locale.ROOT));
+                ClickEvent.Payload payload = clickEvent.payload();
+                if (payload instanceof ClickEvent.Payload.Text) {
+                    sb.append("=").append(((ClickEvent.Payload.Text) payload).value());
+                } else if (payload instanceof ClickEvent.Payload.Int) {
+                    sb.append("=").append(((ClickEvent.Payload.Int) payload).integer());
+                } else if (payload instanceof ClickEvent.Payload.Custom) {
+                    ClickEvent.Payload.Custom custom = (ClickEvent.Payload.Custom) payload;
+                    sb.append("=").append(custom.key().asMinimalString());
+                    if (!custom.nbt().string().isEmpty()) {
+                        sb.append(" ").append(MineDown.PAYLOAD_PREFIX).append(custom.nbt().string());
                     }
-                    definitions.add(payloadDef);
                 }
             }
-            if (hoverEvent != null) {
-                StringBuilder sbi = new StringBuilder();
-                if (preferSimpleEvents() && hoverEvent.action() == HoverEvent.Action.SHOW_TEXT &&
-                        (clickEvent == null || !clickEvent.action().name().equalsIgnoreCase("open_url"))) {
-                    sbi.append(HOVER_PREFIX);
+        }
+        if (hoverEvent != null) {
+            nextDefinition(sb, definitions++);
+            if (simpleEvents && hoverEvent.action() == HoverEvent.Action.SHOW_TEXT &&
+                    (clickEvent == null || !clickEvent.action().name().equalsIgnoreCase("open_url"))) {
+                sb.append(HOVER_PREFIX);
+            } else {
+                sb.append(hoverEvent.action().toString().toLowerCase(Locale.ROOT)).append('=');
+            }
+            if (hoverEvent.value() instanceof Component) {
+                Component hoverText = (Component) hoverEvent.value();
+                pushState();
+                stringify(hoverText, sb);
+                popState();
+            } else if (hoverEvent.value() instanceof HoverEvent.ShowEntity) {
+                HoverEvent.ShowEntity contentEntity = (HoverEvent.ShowEntity) hoverEvent.value();
+                sb.append(contentEntity.id()).append(":").append(contentEntity.type());
+                if (contentEntity.name() != null) {
+                    sb.append(" ");
+                    appendComponent(sb, contentEntity.name());
+                }
+            } else if (hoverEvent.value() instanceof HoverEvent.ShowItem) {
+                HoverEvent.ShowItem contentItem = (HoverEvent.ShowItem) hoverEvent.value();
+                sb.append(contentItem.item());
+                if (contentItem.count() > 0) {
+                    sb.append("*").append(contentItem.count());
+                }
+                if (contentItem.nbt() != null) {
+                    sb.append(" ").append(contentItem.nbt().string());
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a new event definition by separating it from the previous one
+     * @param sb    The builder
+     * @param index The index of the new definition
+     * @return The builder
+     */
+    private static StringBuilder nextDefinition(StringBuilder sb, int index) {
+        if (index > 0) {
+            sb.append(' ');
+        }
+        return sb;
+    }
+
+    /**
+     * Save the style state of the current level and start a new level with an empty state
+     */
+    private void pushState() {
+        if (stateStack.size() == depth) {
+            stateStack.add(new State());
+        }
+        State saved = stateStack.get(depth++);
+        saved.color = color;
+        saved.clickEvent = clickEvent;
+        saved.hoverEvent = hoverEvent;
+        Set<TextDecoration> levelFormats = saved.formats;
+        saved.formats = formats;
+        formats = levelFormats;
+        formats.clear();
+        color = null;
+        clickEvent = null;
+        hoverEvent = null;
+    }
+
+    /**
+     * Restore the style state of the previous level
+     */
+    private void popState() {
+        State saved = stateStack.get(--depth);
+        color = saved.color;
+        clickEvent = saved.clickEvent;
+        hoverEvent = saved.hoverEvent;
+        Set<TextDecoration> levelFormats = formats;
+        formats = saved.formats;
+        saved.formats = levelFormats;
+        saved.color = null;
+        saved.clickEvent = null;
+        saved.hoverEvent = null;
+    }
+
+    /**
+     * The style state of a nesting level
+     */
+    private static class State {
+        private TextColor color;
+        private ClickEvent clickEvent;
+        private HoverEvent hoverEvent;
+        private Set<TextDecoration> formats = new LinkedHashSet<>();
+    }
+
+    /**
+     * Write the shortest MineDown string which parses to the same text with the same styles and events.
+     * Adjacent parts with the same style are merged, siblings with the same events share one event definition,
+     * legacy codes are used for colors and formatting and hex colors are shortened where possible.
+     * The result is parsed again and only written if that results in the same text and styles.
+     * @param sb        The builder to append to
+     * @param component The component to write
+     * @return Whether the shortest string could be written, <code>false</code> if the component contains parts
+     *         which are not supported in this mode or the shortest string didn't parse to the same result
+     */
+    private boolean appendShortest(StringBuilder sb, Component component) {
+        List<Run> runs = new ArrayList<>();
+        if (!flatten(component, Style.empty(), runs)) {
+            return false;
+        }
+        int start = sb.length();
+        new ShortestWriter(sb).write(runs);
+        List<Run> parsedRuns = new ArrayList<>();
+        try {
+            Component parsed = new MineDownParser().colorChar(colorChar()).parse(sb.substring(start)).build();
+            if (flatten(parsed, Style.empty(), parsedRuns) && parsedRuns.equals(runs)) {
+                return true;
+            }
+        } catch (IllegalArgumentException ignored) {
+            // the short form is not valid, write the normal one
+        }
+        sb.setLength(start);
+        return false;
+    }
+
+    /**
+     * Flatten a component tree to runs of text with their effective style, merging adjacent runs with the same style
+     * @param component The component
+     * @param parent    The effective style of the parent
+     * @param runs      The list to add the runs to
+     * @return <code>false</code> if the component contains anything else than text components
+     */
+    private static boolean flatten(Component component, Style parent, List<Run> runs) {
+        if (!(component instanceof TextComponent)) {
+            return false;
+        }
+        Style style = component.style().merge(parent, Style.Merge.Strategy.IF_ABSENT_ON_TARGET);
+        String content = ((TextComponent) component).content();
+        if (!content.isEmpty()) {
+            Style normalized = normalize(style);
+            if (!runs.isEmpty() && runs.get(runs.size() - 1).style.equals(normalized)) {
+                runs.get(runs.size() - 1).text.append(content);
+            } else {
+                runs.add(new Run(content, normalized));
+            }
+        }
+        for (Component child : component.children()) {
+            if (!flatten(child, style, runs)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reduce a style to what is visible: decorations that are not set to true, the default font
+     * and invisible shadows are removed and hover texts are flattened.
+     * @param style The effective style
+     * @return The normalized style
+     */
+    private static Style normalize(Style style) {
+        Style.Builder builder = Style.style()
+                .color(style.color())
+                .clickEvent(style.clickEvent())
+                .insertion(style.insertion());
+        for (TextDecoration decoration : TextDecoration.values()) {
+            if (style.decoration(decoration) == TextDecoration.State.TRUE) {
+                builder.decoration(decoration, true);
+            }
+        }
+        if (style.font() != null && !style.font().equals(Style.DEFAULT_FONT)) {
+            builder.font(style.font());
+        }
+        if (style.shadowColor() != null && style.shadowColor().alpha() != 0) {
+            builder.shadowColor(style.shadowColor());
+        }
+        HoverEvent<?> hoverEvent = style.hoverEvent();
+        if (hoverEvent != null && hoverEvent.action() == HoverEvent.Action.SHOW_TEXT) {
+            List<Run> hoverRuns = new ArrayList<>();
+            if (flatten((Component) hoverEvent.value(), Style.empty(), hoverRuns)) {
+                TextComponent.Builder hoverText = Component.text();
+                for (Run run : hoverRuns) {
+                    hoverText.append(Component.text(run.text.toString(), run.style));
+                }
+                hoverEvent = HoverEvent.showText(hoverText.build());
+            }
+        }
+        return builder.hoverEvent(hoverEvent).build();
+    }
+
+    /**
+     * A run of text with the same effective style
+     */
+    private static class Run {
+        private final StringBuilder text;
+        private final Style style;
+
+        private Run(String text, Style style) {
+            this.text = new StringBuilder(text);
+            this.style = style;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Run)) {
+                return false;
+            }
+            Run run = (Run) o;
+            return style.equals(run.style) && text.toString().contentEquals(run.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.toString().hashCode() + style.hashCode();
+        }
+    }
+
+    /**
+     * Writes runs with legacy codes while keeping track of the parser's state
+     */
+    private class ShortestWriter {
+        private final StringBuilder sb;
+        private TextColor color = null;
+        private Set<TextDecoration> decorations = EnumSet.noneOf(TextDecoration.class);
+        /**
+         * Whether the parser's formatting is unknown because an event's text added legacy formatting
+         * which the parser shares with the outer text
+         */
+        private boolean dirty = false;
+        /**
+         * The last single character legacy code if it was the last thing written, 0 otherwise
+         */
+        private char shortCode = 0;
+        private boolean decorationWritten = false;
+
+        private ShortestWriter(StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        private void write(List<Run> runs) {
+            int i = 0;
+            while (i < runs.size()) {
+                Style events = events(runs.get(i).style);
+                int end = i + 1;
+                while (end < runs.size() && events(runs.get(end).style).equals(events)) {
+                    end++;
+                }
+                if (events.isEmpty()) {
+                    for (int j = i; j < end; j++) {
+                        writeRun(runs.get(j));
+                    }
                 } else {
-                    sbi.append(hoverEvent.action().toString().toLowerCase(Locale.ROOT)).append('=');
-                }
-                if (hoverEvent.value() instanceof Component) {
-                    sbi.append(copy().stringify((Component) hoverEvent.value()));
-                } else if (hoverEvent.value() instanceof HoverEvent.ShowEntity) {
-                    HoverEvent.ShowEntity contentEntity = (HoverEvent.ShowEntity) hoverEvent.value();
-                    sbi.append(contentEntity.id()).append(":").append(contentEntity.type());
-                    if (contentEntity.name() != null) {
-                        sbi.append(" ").append(stringify(contentEntity.name()));
+                    // hoist the first color out of the event so that following text can use it too,
+                    // the legacy formatting of the outer text doesn't apply inside the event's text
+                    TextColor first = runs.get(i).style.color();
+                    if (colorChanged(first)) {
+                        transition(Style.style().color(first).build());
                     }
-                } else if (hoverEvent.value() instanceof HoverEvent.ShowItem) {
-                    HoverEvent.ShowItem contentItem = (HoverEvent.ShowItem) hoverEvent.value();
-                    sbi.append(contentItem.item());
-                    if (contentItem.count() > 0) {
-                        sbi.append("*").append(contentItem.count());
+                    TextColor outerColor = color;
+                    Set<TextDecoration> outerDecorations = decorations;
+                    boolean outerDirty = dirty;
+                    decorations = EnumSet.noneOf(TextDecoration.class);
+                    dirty = false;
+                    decorationWritten = false;
+                    sb.append('[');
+                    shortCode = 0;
+                    for (int j = i; j < end; j++) {
+                        writeRun(runs.get(j));
                     }
-                    if (contentItem.nbt() != null) {
-                        sbi.append(" ").append(contentItem.nbt().string());
+                    sb.append("](");
+                    ClickEvent previousClick = clickEvent;
+                    HoverEvent previousHover = hoverEvent;
+                    clickEvent = events.clickEvent();
+                    hoverEvent = events.hoverEvent();
+                    appendDefinitions(sb, Component.text("", events), true, false);
+                    clickEvent = previousClick;
+                    hoverEvent = previousHover;
+                    sb.append(')');
+                    shortCode = 0;
+                    color = outerColor;
+                    decorations = outerDecorations;
+                    dirty = outerDirty || decorationWritten;
+                }
+                i = end;
+            }
+        }
+
+        private Style events(Style style) {
+            return Style.style()
+                    .clickEvent(style.clickEvent())
+                    .hoverEvent(style.hoverEvent())
+                    .insertion(style.insertion())
+                    .font(style.font())
+                    .shadowColor(style.shadowColor())
+                    .build();
+        }
+
+        private void writeRun(Run run) {
+            transition(run.style);
+            appendEscaped(run.text);
+        }
+
+        private void transition(Style style) {
+            TextColor target = style.color();
+            Set<TextDecoration> targetDecorations = EnumSet.noneOf(TextDecoration.class);
+            for (TextDecoration decoration : TextDecoration.values()) {
+                if (style.decoration(decoration) == TextDecoration.State.TRUE) {
+                    targetDecorations.add(decoration);
+                }
+            }
+            boolean colorChanged = colorChanged(target);
+            if (dirty || (target == null && color != null) || (!colorChanged && !targetDecorations.containsAll(decorations))) {
+                appendCode(Util.TextControl.RESET.getChar());
+                color = null;
+                decorations.clear();
+                dirty = false;
+                colorChanged = target != null;
+            }
+            if (colorChanged) {
+                // legacy color codes reset the legacy formatting
+                appendColor(target);
+                color = target;
+                decorations.clear();
+            }
+            for (TextDecoration decoration : targetDecorations) {
+                if (decorations.add(decoration)) {
+                    appendCode(Util.getLegacyFormatChar(decoration));
+                    decorationWritten = true;
+                }
+            }
+        }
+
+        private boolean colorChanged(TextColor target) {
+            return target == null ? color != null : color == null || color.value() != target.value();
+        }
+
+        private void appendColor(TextColor color) {
+            NamedTextColor named = NamedTextColor.namedColor(color.value());
+            if (named != null) {
+                appendCode(Util.getLegacyFormatChar(named));
+                return;
+            }
+            String hex = color.asHexString().toLowerCase(Locale.ROOT);
+            sb.append(colorChar()).append('#');
+            if (hex.charAt(1) == hex.charAt(2) && hex.charAt(3) == hex.charAt(4) && hex.charAt(5) == hex.charAt(6)) {
+                sb.append(hex.charAt(1)).append(hex.charAt(3)).append(hex.charAt(5));
+            } else {
+                sb.append(hex, 1, 7);
+            }
+            sb.append(colorChar());
+            shortCode = 0;
+        }
+
+        private void appendCode(char code) {
+            sb.append(colorChar()).append(code);
+            shortCode = code;
+        }
+
+        private void appendEscaped(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                boolean escape = c == '\\' || c == colorChar() || c == '§' || c == '[' || c == ']'
+                        || ((c == '*' || c == '_' || c == '~' || c == '?' || c == '#') && i + 1 < text.length() && text.charAt(i + 1) == c);
+                if (!escape && i == 0 && shortCode != 0) {
+                    // the parser would read the code and the text as a color name if another code directly follows
+                    escape = true;
+                    for (int j = 0; j < text.length() && escape; j++) {
+                        escape = isColorNameChar(text.charAt(j));
                     }
+                    escape = escape && MineDownParser.isColorString(shortCode + text.toString());
                 }
-                definitions.add(sbi.toString());
+                if (escape) {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+            if (text.length() > 0) {
+                shortCode = 0;
             }
-            sb.append(String.join(" ", definitions));
-            sb.append(')');
-        } else {
-            appendFormatSuffix(sb, component);
         }
-        return sb.toString();
+
+        private boolean isColorNameChar(char c) {
+            return c == '_' || c == '#' || c == '-' || c == ',' || c == ':'
+                    || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+        }
     }
 
     private void appendText(StringBuilder sb, Component component) {
@@ -440,6 +1209,8 @@ public class MineDownStringifier {
         formattingInEventDefinition(from.formattingInEventDefinition());
         colorInEventDefinition(from.colorInEventDefinition());
         colorChar(from.colorChar());
+        shortestOutput(from.shortestOutput());
+        detectGradients(from.detectGradients());
         return this;
     }
 
@@ -551,4 +1322,45 @@ public class MineDownStringifier {
         return this;
     }
 
+    /**
+     * Get whether or not to write the shortest string that parses to the same result
+     * @return whether or not to write the shortest output (Default: false)
+     */
+    public boolean shortestOutput() {
+        return this.shortestOutput;
+    }
+
+    /**
+     * Set whether or not to write the shortest string that parses to the same result. Adjacent components
+     * with the same style are merged, siblings with the same events share one definition and legacy codes
+     * are used for colors and formatting, ignoring the other style settings. Messages that contain anything
+     * else than text components, or which wouldn't parse to the same text and styles when written this way,
+     * are written normally.
+     * @param shortestOutput Whether or not to write the shortest output (Default: false)
+     * @return The MineDownStringifier instance
+     */
+    public MineDownStringifier shortestOutput(boolean shortestOutput) {
+        this.shortestOutput = shortestOutput;
+        return this;
+    }
+
+    /**
+     * Get whether or not to write single character parts with gradient or rainbow colors as one gradient or rainbow
+     * @return whether or not to detect gradients (Default: true)
+     */
+    public boolean detectGradients() {
+        return this.detectGradients;
+    }
+
+    /**
+     * Set whether or not to write single character parts with gradient or rainbow colors as one gradient or rainbow
+     * instead of writing a color code for each character. This has no effect when legacy colors are used.
+     * @param detectGradients Whether or not to detect gradients (Default: true)
+     * @return The MineDownStringifier instance
+     */
+    public MineDownStringifier detectGradients(boolean detectGradients) {
+        this.detectGradients = detectGradients;
+        return this;
+    }
+
 }
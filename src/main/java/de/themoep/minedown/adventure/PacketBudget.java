@@ -0,0 +1,340 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.format.Style;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A limit for the size of the JSON that a message gets serialized to, e.g. to stay below the maximum size of chat packets.
+ * When the {@link MineDownParser} has a budget it stops with a {@link ExceededException} as soon as the visible text
+ * alone is larger than the limit, instead of building the whole oversized message.
+ * {@link #apply(Component)} checks the exact size of the finished message once and only degrades it if necessary.
+ */
+public final class PacketBudget {
+
+    /**
+     * The maximum length of JSON text components in the protocol
+     */
+    public static final int CHAT_LIMIT = 262144;
+
+    private final int maxBytes;
+    private final List<Degradation> degradations;
+
+    private PacketBudget(int maxBytes, List<Degradation> degradations) {
+        this.maxBytes = maxBytes;
+        this.degradations = degradations;
+    }
+
+    /**
+     * Create a new budget
+     * @param maxBytes     The maximum size of the UTF-8 encoded JSON in bytes
+     * @param degradations The ways to make the message smaller in the order that they should be tried in,
+     *                     the message is rejected if it is still too large after all of them
+     * @return The budget
+     */
+    public static PacketBudget of(int maxBytes, Degradation... degradations) {
+        Util.validate(maxBytes > 0, "The max bytes need to be positive!");
+        return new PacketBudget(maxBytes, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(degradations))));
+    }
+
+    /**
+     * Get the size that a component has when serialized to JSON with the {@link ComponentJsonWriter}
+     * @param component The component
+     * @return The size of the UTF-8 encoded JSON in bytes
+     */
+    public static int size(Component component) {
+        return utf8Length(ComponentJsonWriter.write(component, new StringBuilder()));
+    }
+
+    /**
+     * Make sure that a component fits into the budget. If it is too large it gets optimized with the
+     * {@link ComponentOptimizer} first and then degraded in the configured order until it fits
+     * @param component The component to check
+     * @return The component or a degraded version of it that fits
+     * @throws ExceededException If the component is still too large after all the degradations
+     */
+    public Component apply(Component component) throws ExceededException {
+        int size = size(component);
+        if (size > maxBytes) {
+            // a smaller tree looks exactly the same so that is tried before degrading anything
+            component = ComponentOptimizer.optimize(component);
+            size = size(component);
+        }
+        for (int i = 0; i < degradations.size() && size > maxBytes; i++) {
+            component = degradations.get(i).apply(component);
+            size = size(component);
+        }
+        if (size > maxBytes) {
+            throw new ExceededException(this, size);
+        }
+        return component;
+    }
+
+    /**
+     * Get the maximum size of the UTF-8 encoded JSON in bytes
+     * @return The maximum size in bytes
+     */
+    public int maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the ways to make the message smaller in the order that they get tried in
+     * @return The degradations
+     */
+    public List<Degradation> degradations() {
+        return degradations;
+    }
+
+    /**
+     * Start tracking the estimated size of a message that gets parsed
+     * @return A new tracker
+     */
+    Tracker tracker() {
+        return new Tracker();
+    }
+
+    static int utf8Length(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    // four bytes for the pair
+                    length += 2;
+                    i++;
+                } else {
+                    length += 2;
+                }
+            } else if (c >= 0x80) {
+                length += 1;
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PacketBudget that = (PacketBudget) o;
+        return maxBytes == that.maxBytes && degradations.equals(that.degradations);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * maxBytes + degradations.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "PacketBudget{maxBytes=" + maxBytes + ", degradations=" + degradations + "}";
+    }
+
+    /**
+     * Ways to make a message smaller
+     */
+    public enum Degradation {
+        /**
+         * Give gradients and rainbows a single color instead of one per character
+         */
+        COLLAPSE_GRADIENTS {
+            @Override
+            Component apply(Component component) {
+                List<Component> children = component.children();
+                if (children.isEmpty()) {
+                    return component;
+                }
+                boolean changed = false;
+                List<Component> collapsed = new ArrayList<>(children.size());
+                for (int i = 0; i < children.size(); i++) {
+                    List<TextComponent> run = colorRun(children, i);
+                    if (run.isEmpty()) {
+                        Component child = apply(children.get(i));
+                        changed |= child != children.get(i);
+                        collapsed.add(child);
+                        continue;
+                    }
+                    // only the parts from the first one that starts a gradient to the end of the run are collapsed
+                    int start = 0;
+                    while (start < run.size() && !isGradient(run.subList(start, run.size()))) {
+                        collapsed.add(children.get(i + start));
+                        start++;
+                    }
+                    if (start < run.size()) {
+                        StringBuilder content = new StringBuilder();
+                        for (TextComponent part : run.subList(start, run.size())) {
+                            content.append(part.content());
+                        }
+                        collapsed.add(Component.text(content.toString(), run.get(start).color()));
+                        changed = true;
+                    }
+                    i += run.size() - 1;
+                }
+                return changed ? component.children(collapsed) : component;
+            }
+
+            /**
+             * Get the consecutive text components that only have a color, like the ones of a gradient
+             */
+            private List<TextComponent> colorRun(List<Component> children, int start) {
+                List<TextComponent> run = new ArrayList<>();
+                for (int i = start; i < children.size(); i++) {
+                    TextComponent part = colorPart(children.get(i));
+                    if (part == null) {
+                        break;
+                    }
+                    run.add(part);
+                }
+                return run;
+            }
+
+            private TextComponent colorPart(Component component) {
+                if (!(component instanceof TextComponent)) {
+                    return null;
+                }
+                TextComponent text = (TextComponent) component;
+                if (text.content().isEmpty() && !text.hasStyling() && text.children().size() == 1) {
+                    // the characters of gradients might be wrapped, e.g. by the replacer
+                    return colorPart(text.children().get(0));
+                }
+                if (text.content().isEmpty() || !text.children().isEmpty() || text.color() == null
+                        || !text.style().equals(Style.style(text.color()))) {
+                    return null;
+                }
+                return text;
+            }
+
+            /**
+             * Check the colors of the parts like the {@link MineDownStringifier} does, the parts might contain
+             * more than one character if the {@link ComponentOptimizer} merged the ones with the same color
+             */
+            private boolean isGradient(List<TextComponent> parts) {
+                int length = 0;
+                for (TextComponent part : parts) {
+                    length += part.content().codePointCount(0, part.content().length());
+                }
+                int[] values = new int[length];
+                int index = 0;
+                for (TextComponent part : parts) {
+                    int count = part.content().codePointCount(0, part.content().length());
+                    Arrays.fill(values, index, index + count, part.color().value());
+                    index += count;
+                }
+                return MineDownStringifier.isGradient(values);
+            }
+        },
+        /**
+         * Remove all hover events
+         */
+        DROP_HOVERS {
+            @Override
+            Component apply(Component component) {
+                if (component.hoverEvent() != null) {
+                    component = component.hoverEvent(null);
+                }
+                if (component.children().isEmpty()) {
+                    return component;
+                }
+                boolean changed = false;
+                List<Component> children = new ArrayList<>(component.children().size());
+                for (Component child : component.children()) {
+                    Component degraded = apply(child);
+                    changed |= degraded != child;
+                    children.add(degraded);
+                }
+                return changed ? component.children(children) : component;
+            }
+        };
+
+        /**
+         * Apply this degradation to a component and all its children
+         * @param component The component
+         * @return The degraded component or the same instance if nothing changed
+         */
+        abstract Component apply(Component component);
+    }
+
+    /**
+     * Thrown when a message doesn't fit into a {@link PacketBudget} even after degrading it
+     */
+    public static class ExceededException extends IllegalArgumentException {
+        private final PacketBudget budget;
+        private final int size;
+
+        ExceededException(PacketBudget budget, int size) {
+            super("The message has a size of " + (size < 0 ? "more than " + budget.maxBytes() : size)
+                    + " bytes which doesn't fit into the budget of " + budget.maxBytes() + " bytes!");
+            this.budget = budget;
+            this.size = size;
+        }
+
+        /**
+         * Get the budget that was exceeded
+         * @return The budget
+         */
+        public PacketBudget budget() {
+            return budget;
+        }
+
+        /**
+         * Get the size of the message
+         * @return The size in bytes or -1 if the message was rejected while it was parsed
+         */
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Keeps track of the size of the visible text of a message while it is parsed. None of the degradations make the
+     * text smaller so a message whose text alone doesn't fit can be rejected early, without serializing any parts.
+     */
+    class Tracker {
+        private long textBytes = 0;
+
+        /**
+         * Add the visible text of a part of the message
+         * @param text The text of the part
+         * @throws ExceededException If the text of the message is already larger than the budget
+         */
+        void add(CharSequence text) throws ExceededException {
+            textBytes += utf8Length(text);
+            if (textBytes > maxBytes) {
+                throw new ExceededException(PacketBudget.this, -1);
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limits for how complex a message can be, to protect against untrusted input that takes a lot of time to parse
+ * or produces huge component trees. When the {@link MineDownParser} has limits it stops as soon as one of them is
+ * reached and, depending on the {@link Action}, either fails or shows the message as plain text.
+ * Each instance counts how often its limits were reached.
+ * Instances are immutable, the methods that change a limit return a copy.
+ */
+public final class ParseLimits {
+
+    private final int[] max;
+    private final Action action;
+    private final AtomicLongArray triggered = new AtomicLongArray(Limit.values().length);
+
+    private ParseLimits(int[] max, Action action) {
+        this.max = max;
+        this.action = action;
+    }
+
+    /**
+     * Create limits that don't restrict anything and fail when a limit that gets set later is reached
+     * @return The limits
+     */
+    public static ParseLimits unlimited() {
+        int[] max = new int[Limit.values().length];
+        Arrays.fill(max, -1);
+        return new ParseLimits(max, Action.FAIL);
+    }
+
+    /**
+     * Create limits that are suitable for messages written by players. They show messages that exceed them as plain text.
+     * <ul>
+     * <li>{@link Limit#INPUT_LENGTH}: 2048</li>
+     * <li>{@link Limit#DEPTH}: 8</li>
+     * <li>{@link Limit#COMPONENTS}: 256</li>
+     * <li>{@link Limit#GRADIENT_LENGTH}: 256</li>
+     * <li>{@link Limit#EVENTS}: 32</li>
+     * </ul>
+     * @return The limits
+     */
+    public static ParseLimits untrusted() {
+        return unlimited()
+                .max(Limit.INPUT_LENGTH, 2048)
+                .max(Limit.DEPTH, 8)
+                .max(Limit.COMPONENTS, 256)
+                .max(Limit.GRADIENT_LENGTH, 256)
+                .max(Limit.EVENTS, 32)
+                .action(Action.PLAIN_TEXT);
+    }
+
+    /**
+     * Get the maximum of a limit
+     * @param limit The limit
+     * @return The maximum or -1 if it is unlimited
+     */
+    public int max(Limit limit) {
+        return max[limit.ordinal()];
+    }
+
+    /**
+     * Set the maximum of a limit
+     * @param limit The limit
+     * @param max   The maximum or -1 for no limit
+     * @return A copy of these limits with the new maximum
+     */
+    public ParseLimits max(Limit limit, int max) {
+        Util.validate(max >= -1, "The maximum can't be less than -1!");
+        int[] copy = this.max.clone();
+        copy[limit.ordinal()] = max;
+        return new ParseLimits(copy, action);
+    }
+
+    /**
+     * Get what happens when a limit is reached
+     * @return The action
+     */
+    public Action action() {
+        return action;
+    }
+
+    /**
+     * Set what happens when a limit is reached
+     * @param action The action
+     * @return A copy of these limits with the new action
+     */
+    public ParseLimits action(Action action) {
+        Util.validate(action != null, "The action can't be null!");
+        return new ParseLimits(max.clone(), action);
+    }
+
+    /**
+     * Get how often a limit was reached while parsing with these limits
+     * @param limit The limit
+     * @return The amount of messages that reached the limit
+     */
+    public long triggered(Limit limit) {
+        return triggered.get(limit.ordinal());
+    }
+
+    /**
+     * Start counting the complexity of a message that gets parsed
+     * @return A new counter
+     */
+    Counter counter() {
+        return new Counter();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ParseLimits that = (ParseLimits) o;
+        return action == that.action && Arrays.equals(max, that.max);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * action.hashCode() + Arrays.hashCode(max);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ParseLimits{");
+        for (Limit limit : Limit.values()) {
+            sb.append(limit.name().toLowerCase(Locale.ROOT)).append('=').append(max(limit)).append(", ");
+        }
+        return sb.append("action=").append(action).append('}').toString();
+    }
+
+    /**
+     * The things that can be limited
+     */
+    public enum Limit {
+        /**
+         * The length of the message in chars
+         */
+        INPUT_LENGTH,
+        /**
+         * How deep formatting and events can be nested, the message itself has a depth of 1
+         */
+        DEPTH,
+        /**
+         * The amount of components that the parser creates for text, translations, objects and the characters of gradients
+         */
+        COMPONENTS,
+        /**
+         * The amount of code points that a single gradient or rainbow can color
+         */
+        GRADIENT_LENGTH,
+        /**
+         * The amount of events, i.e. [text](definitions) parts
+         */
+        EVENTS
+    }
+
+    /**
+     * What happens when a limit is reached
+     */
+    public enum Action {
+        /**
+         * Throw a {@link ExceededException}
+         */
+        FAIL,
+        /**
+         * Show the message as it was written without any formatting
+         */
+        PLAIN_TEXT
+    }
+
+    /**
+     * Thrown when a message reaches one of the {@link ParseLimits}
+     */
+    public static class ExceededException extends IllegalArgumentException {
+        private final ParseLimits limits;
+        private final Limit limit;
+
+        ExceededException(ParseLimits limits, Limit limit) {
+            super("The message exceeds the " + limit.name().toLowerCase(Locale.ROOT).replace('_', ' ')
+                    + " limit of " + limits.max(limit) + "!");
+            this.limits = limits;
+            this.limit = limit;
+        }
+
+        /**
+         * Get the limits that were exceeded
+         * @return The limits
+         */
+        public ParseLimits limits() {
+            return limits;
+        }
+
+        /**
+         * Get the limit that was reached
+         * @return The limit
+         */
+        public Limit limit() {
+            return limit;
+        }
+    }
+
+    /**
+     * Counts the complexity of a message while it is parsed
+     */
+    class Counter {
+        private int depth = 0;
+        private long components = 0;
+        private long events = 0;
+
+        /**
+         * Check the length of the message before it gets parsed
+         * @param length The length in chars
+         */
+        void input(int length) throws ExceededException {
+            check(Limit.INPUT_LENGTH, length);
+        }
+
+        /**
+         * Enter a nested part of the message
+         */
+        void enter() throws ExceededException {
+            check(Limit.DEPTH, ++depth);
+        }
+
+        /**
+         * Leave a nested part of the message
+         */
+        void exit() {
+            depth--;
+        }
+
+        /**
+         * Count new components
+         * @param amount The amount of components
+         */
+        void components(int amount) throws ExceededException {
+            components += amount;
+            check(Limit.COMPONENTS, components);
+        }
+
+        /**
+         * Check the length of a gradient or rainbow
+         * @param length The length in code points
+         */
+        void gradient(long length) throws ExceededException {
+            check(Limit.GRADIENT_LENGTH, length);
+        }
+
+        /**
+         * Count a new event
+         */
+        void event() throws ExceededException {
+            check(Limit.EVENTS, ++events);
+        }
+
+        private void check(Limit limit, long value) throws ExceededException {
+            int max = max(limit);
+            if (max >= 0 && value > max) {
+                triggered.incrementAndGet(limit.ordinal());
+                throw new ExceededException(ParseLimits.this, limit);
+            }
+        }
+    }
+}
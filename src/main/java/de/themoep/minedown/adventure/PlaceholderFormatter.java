@@ -0,0 +1,419 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+
+/**
+ * Formats typed placeholder values (whole numbers, decimals, {@link Duration}s and {@link Instant}s) directly into
+ * a {@link StringBuilder} without creating intermediate strings. Instances are immutable and can be shared between threads.
+ * <p>
+ * The {@link #DEFAULT} formatter writes the same output as {@link String#valueOf(Object)},
+ * use {@link #of(Locale)} or the {@link #builder()} for localized output.
+ */
+public final class PlaceholderFormatter {
+
+    /**
+     * The default formatter which writes values exactly like {@link String#valueOf(Object)} does
+     */
+    public static final PlaceholderFormatter DEFAULT = new PlaceholderFormatter();
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    private final boolean localized;
+    private final Locale locale;
+    private final boolean grouping;
+    private final int fractionDigits;
+    private final char zeroDigit;
+    private final char groupingSeparator;
+    private final char decimalSeparator;
+    private final char minusSign;
+    private final String infinity;
+    private final String nan;
+    private final DateTimeFormatter dateTimeFormatter;
+
+    private PlaceholderFormatter() {
+        this.localized = false;
+        this.locale = Locale.ROOT;
+        this.grouping = false;
+        this.fractionDigits = -1;
+        this.zeroDigit = '0';
+        this.groupingSeparator = ',';
+        this.decimalSeparator = '.';
+        this.minusSign = '-';
+        this.infinity = "Infinity";
+        this.nan = "NaN";
+        this.dateTimeFormatter = DateTimeFormatter.ISO_INSTANT;
+    }
+
+    private PlaceholderFormatter(Builder builder) {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(builder.locale);
+        this.localized = true;
+        this.locale = builder.locale;
+        this.grouping = builder.grouping;
+        this.fractionDigits = builder.fractionDigits;
+        this.zeroDigit = symbols.getZeroDigit();
+        this.groupingSeparator = symbols.getGroupingSeparator();
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.minusSign = symbols.getMinusSign();
+        this.infinity = symbols.getInfinity();
+        this.nan = symbols.getNaN();
+        DateTimeFormatter dateTimeFormatter = builder.dateTimeFormatter != null
+                ? builder.dateTimeFormatter
+                : DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM).withLocale(builder.locale);
+        this.dateTimeFormatter = dateTimeFormatter.getZone() == null
+                ? dateTimeFormatter.withZone(builder.zone != null ? builder.zone : ZoneId.systemDefault())
+                : dateTimeFormatter;
+    }
+
+    /**
+     * Get a formatter with the number symbols and date format of a locale, grouping and two fraction digits
+     * @param locale The locale
+     * @return A new formatter for that locale
+     */
+    public static PlaceholderFormatter of(Locale locale) {
+        return builder().locale(locale).build();
+    }
+
+    /**
+     * Create a builder for a localized formatter
+     * @return A new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Check whether a value is one of the types that this formatter writes itself
+     * @param value The value to check
+     * @return <code>true</code> if it is a {@link Number}, {@link Duration} or {@link Instant}
+     */
+    public static boolean isTyped(Object value) {
+        return value instanceof Number || value instanceof Duration || value instanceof Instant;
+    }
+
+    /**
+     * Format a value into a string
+     * @param value The value to format
+     * @return The formatted value
+     */
+    public String format(Object value) {
+        return format(value, new StringBuilder()).toString();
+    }
+
+    /**
+     * Append a value to a builder. Whole numbers, decimals, {@link Duration}s and {@link Instant}s are
+     * formatted by this formatter, all other values with {@link String#valueOf(Object)}.
+     * @param value The value to format
+     * @param out   The builder to append to
+     * @return The builder
+     */
+    public StringBuilder format(Object value, StringBuilder out) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return format(((Number) value).longValue(), out);
+        } else if (value instanceof Float && !localized) {
+            return out.append(((Float) value).floatValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            return format(((Number) value).doubleValue(), out);
+        } else if (value instanceof BigDecimal && localized) {
+            return format((BigDecimal) value, out);
+        } else if (value instanceof Duration) {
+            return format((Duration) value, out);
+        } else if (value instanceof Instant) {
+            return format((Instant) value, out);
+        }
+        return out.append(value);
+    }
+
+    /**
+     * Append a whole number to a builder
+     * @param value The number
+     * @param out   The builder to append to
+     * @return The builder
+     */
+    public StringBuilder format(long value, StringBuilder out) {
+        if (!localized) {
+            return out.append(value);
+        }
+        if (value < 0) {
+            out.append(minusSign);
+            if (value == Long.MIN_VALUE) {
+                return appendDigits(out, Long.toString(value).substring(1));
+            }
+            value = -value;
+        }
+        return appendDigits(out, value);
+    }
+
+    /**
+     * Append a decimal number to a builder. Localized formatters round it to their fraction digits.
+     * @param value The number
+     * @param out   The builder to append to
+     * @return The builder
+     */
+    public StringBuilder format(double value, StringBuilder out) {
+        if (!localized) {
+            return out.append(value);
+        }
+        if (Double.isNaN(value)) {
+            return out.append(nan);
+        }
+        boolean negative = value < 0;
+        if (negative) {
+            value = -value;
+        }
+        long scale = POWERS_OF_TEN[fractionDigits];
+        if (Double.isInfinite(value)) {
+            return (negative ? out.append(minusSign) : out).append(infinity);
+        } else if (value * scale >= Long.MAX_VALUE / 10) {
+            return format(BigDecimal.valueOf(negative ? -value : value), out);
+        }
+        long scaled = Math.round(value * scale);
+        if (negative && scaled != 0) {
+            out.append(minusSign);
+        }
+        appendDigits(out, scaled / scale);
+        if (fractionDigits > 0) {
+            out.append(decimalSeparator);
+            long fraction = scaled % scale;
+            for (long power = scale / 10; power > 0; power /= 10) {
+                out.append((char) (zeroDigit + fraction / power % 10));
+            }
+        }
+        return out;
+    }
+
+    private StringBuilder format(BigDecimal value, StringBuilder out) {
+        if (value.signum() < 0) {
+            out.append(minusSign);
+            value = value.negate();
+        }
+        String plain = value.setScale(fractionDigits, RoundingMode.HALF_UP).toPlainString();
+        int point = plain.indexOf('.');
+        appendDigits(out, point > -1 ? plain.substring(0, point) : plain);
+        if (point > -1) {
+            out.append(decimalSeparator);
+            for (int i = point + 1; i < plain.length(); i++) {
+                out.append((char) (zeroDigit + plain.charAt(i) - '0'));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Append a duration to a builder. Localized formatters write it as a clock-like
+     * <code>hours:minutes:seconds</code> (or <code>minutes:seconds</code> if it is shorter than an hour).
+     * @param value The duration
+     * @param out   The builder to append to
+     * @return The builder
+     */
+    public StringBuilder format(Duration value, StringBuilder out) {
+        if (!localized) {
+            return out.append(value);
+        }
+        if (value.isNegative()) {
+            out.append(minusSign);
+            value = value.negated();
+        }
+        long seconds = value.getSeconds();
+        long hours = seconds / 3600;
+        if (hours > 0) {
+            appendDigits(out, hours);
+            out.append(':');
+            appendPadded(out, seconds / 60 % 60);
+        } else {
+            appendDigits(out, seconds / 60);
+        }
+        out.append(':');
+        return appendPadded(out, seconds % 60);
+    }
+
+    /**
+     * Append an instant to a builder using this formatter's date time format
+     * @param value The instant
+     * @param out   The builder to append to
+     * @return The builder
+     */
+    public StringBuilder format(Instant value, StringBuilder out) {
+        if (!localized) {
+            return out.append(value);
+        }
+        dateTimeFormatter.formatTo(value, out);
+        return out;
+    }
+
+    /**
+     * Append any date time object to a builder using this formatter's date time format
+     * @param value The temporal
+     * @param out   The builder to append to
+     * @return The builder
+     */
+    public StringBuilder format(TemporalAccessor value, StringBuilder out) {
+        dateTimeFormatter.formatTo(value, out);
+        return out;
+    }
+
+    private StringBuilder appendPadded(StringBuilder out, long value) {
+        if (value < 10) {
+            out.append(zeroDigit);
+        }
+        return appendDigits(out, value);
+    }
+
+    private StringBuilder appendDigits(StringBuilder out, long value) {
+        long divisor = 1;
+        int length = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+            length++;
+        }
+        for (int i = length - 1; i >= 0; i--, divisor /= 10) {
+            out.append((char) (zeroDigit + value / divisor % 10));
+            if (grouping && i > 0 && i % 3 == 0) {
+                out.append(groupingSeparator);
+            }
+        }
+        return out;
+    }
+
+    private StringBuilder appendDigits(StringBuilder out, String digits) {
+        for (int i = 0; i < digits.length(); i++) {
+            out.append((char) (zeroDigit + digits.charAt(i) - '0'));
+            int remaining = digits.length() - i - 1;
+            if (grouping && remaining > 0 && remaining % 3 == 0) {
+                out.append(groupingSeparator);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Get the locale of this formatter
+     * @return The locale, {@link Locale#ROOT} for the default formatter
+     */
+    public Locale locale() {
+        return locale;
+    }
+
+    /**
+     * Get whether digits of whole numbers are grouped
+     * @return Whether to group digits
+     */
+    public boolean grouping() {
+        return grouping;
+    }
+
+    /**
+     * Get the amount of fraction digits that decimals are rounded to
+     * @return The amount of fraction digits or -1 if decimals are not rounded
+     */
+    public int fractionDigits() {
+        return fractionDigits;
+    }
+
+    /**
+     * Builder for localized {@link PlaceholderFormatter}s
+     */
+    public static final class Builder {
+        private Locale locale = Locale.ROOT;
+        private boolean grouping = true;
+        private int fractionDigits = 2;
+        private DateTimeFormatter dateTimeFormatter = null;
+        private ZoneId zone = null;
+
+        private Builder() {}
+
+        /**
+         * Set the locale to use the number symbols and date format of
+         * @param locale The locale
+         * @return The Builder instance
+         */
+        public Builder locale(Locale locale) {
+            Util.validate(locale != null, "The locale can't be null");
+            this.locale = locale;
+            return this;
+        }
+
+        /**
+         * Set whether digits of numbers should be grouped (Default: true)
+         * @param grouping Whether to group digits
+         * @return The Builder instance
+         */
+        public Builder grouping(boolean grouping) {
+            this.grouping = grouping;
+            return this;
+        }
+
+        /**
+         * Set the amount of fraction digits that decimals are rounded to (Default: 2)
+         * @param fractionDigits The amount of fraction digits, between 0 and 9
+         * @return The Builder instance
+         */
+        public Builder fractionDigits(int fractionDigits) {
+            Util.validate(fractionDigits >= 0 && fractionDigits < POWERS_OF_TEN.length,
+                    "The fraction digits have to be between 0 and " + (POWERS_OF_TEN.length - 1));
+            this.fractionDigits = fractionDigits;
+            return this;
+        }
+
+        /**
+         * Set the format for instants (Default: the medium localized date time format of the locale)
+         * @param dateTimeFormatter The formatter to use
+         * @return The Builder instance
+         */
+        public Builder dateTimeFormatter(DateTimeFormatter dateTimeFormatter) {
+            this.dateTimeFormatter = dateTimeFormatter;
+            return this;
+        }
+
+        /**
+         * Set the time zone instants are formatted in if the date time format has none (Default: the system zone)
+         * @param zone The zone
+         * @return The Builder instance
+         */
+        public Builder zone(ZoneId zone) {
+            this.zone = zone;
+            return this;
+        }
+
+        /**
+         * Build the formatter
+         * @return The new formatter
+         */
+        public PlaceholderFormatter build() {
+            return new PlaceholderFormatter(this);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the values of all placeholders that a message uses at once.
+ * This is called once per render with every placeholder that was found in the message
+ * and which doesn't already have a value in the {@link Replacer}, so that all values can be
+ * fetched with a single lookup instead of one lookup per placeholder.
+ */
+@FunctionalInterface
+public interface PlaceholderResolver {
+
+    /**
+     * Resolve the values of a set of placeholders
+     * @param placeholders The keys of the placeholders that the message uses, without prefix and suffix
+     * @return The values mapped to their placeholder. Placeholders which are not included are not replaced.
+     *         Suppliers and functions get resolved right away and the results are formatted like the typed values
+     *         passed to {@link Replacer#replace(Map)}. Components are inserted in their legacy text form,
+     *         so unlike component replacements they lose their events.
+     */
+    Map<String, ?> resolve(Set<String> placeholders);
+}
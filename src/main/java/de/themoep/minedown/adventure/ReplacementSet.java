@@ -0,0 +1,381 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An immutable set of placeholder replacements which can be shared between threads and messages.
+ * <p>
+ * Sets can be layered on top of each other (e.g. global values, then per-player values) with {@link #layer()}.
+ * A layer only stores its own values and looks up missing ones in its parent, so the parent's values never get copied.
+ * Values of a layer take precedence over the ones of its parents.
+ * <p>
+ * Unlike the {@link Replacer} the set replaces all placeholders in a single pass over the string
+ * by looking up the text between the placeholder prefix and suffix. Replaced values are not searched for
+ * further placeholders and the prefix and suffix are always matched case-sensitively.
+ */
+public final class ReplacementSet {
+
+    private final ReplacementSet parent;
+    private final String placeholderPrefix;
+    private final String placeholderSuffix;
+    private final boolean ignorePlaceholderCase;
+    private final Map<String, String> replacements;
+    private final Map<String, Component> componentReplacements;
+    private final Map<String, String> serializedComponentReplacements;
+
+    private ReplacementSet(Builder builder) {
+        this.parent = builder.parent;
+        this.placeholderPrefix = builder.placeholderPrefix;
+        this.placeholderSuffix = builder.placeholderSuffix;
+        this.ignorePlaceholderCase = builder.ignorePlaceholderCase;
+        this.replacements = Collections.unmodifiableMap(new LinkedHashMap<>(builder.replacements));
+        this.componentReplacements = Collections.unmodifiableMap(new LinkedHashMap<>(builder.componentReplacements));
+        Map<String, String> serialized = new HashMap<>();
+        for (Map.Entry<String, Component> entry : componentReplacements.entrySet()) {
+            serialized.put(normalize(entry.getKey()), LegacyComponentSerializer.legacySection().serialize(entry.getValue()));
+        }
+        this.serializedComponentReplacements = serialized;
+    }
+
+    /**
+     * Create a new builder for a replacement set
+     * @return A new builder
+     */
+    public static Builder builder() {
+        return new Builder(null);
+    }
+
+    /**
+     * Create a builder for a new set which is layered on top of this one. The new set has access to
+     * all values of this one without copying them and uses the same placeholder configuration.
+     * @return A new builder with this set as the parent
+     */
+    public Builder layer() {
+        return new Builder(this);
+    }
+
+    /**
+     * Replace the placeholders of this set and its parents in a string. Component replacements are inserted in their legacy form.
+     * @param string The string to replace in
+     * @return The string with the placeholders replaced
+     */
+    @Contract("null -> null")
+    public @Nullable String replaceIn(@Nullable String string) {
+        return string != null ? replace(string, true, key -> false) : null;
+    }
+
+    /**
+     * Replace the placeholders of this set and its parents in a component
+     * @param component The component to replace in
+     * @return A copy of the component with all placeholders replaced
+     */
+    @Contract("null -> null")
+    public @Nullable Component replaceIn(@Nullable Component component) {
+        return new Replacer()
+                .placeholderPrefix(placeholderPrefix())
+                .placeholderSuffix(placeholderSuffix())
+                .ignorePlaceholderCase(ignorePlaceholderCase())
+                .replace(this)
+                .replaceIn(component);
+    }
+
+    /**
+     * Replace the string placeholders of this set and its parents in a string. Does not replace component replacements!
+     * @param string  The string to replace in
+     * @param skipped Check whether a key, without prefix and suffix, should be left for someone else to replace
+     * @return The string with the placeholders replaced
+     */
+    String replaceStrings(String string, Predicate<String> skipped) {
+        return replace(string, false, skipped);
+    }
+
+    private String replace(String string, boolean components, Predicate<String> skipped) {
+        StringBuilder sb = null;
+        int last = 0;
+        int start = string.indexOf(placeholderPrefix());
+        while (start > -1) {
+            int keyStart = start + placeholderPrefix().length();
+            int end = string.indexOf(placeholderSuffix(), keyStart);
+            if (end == -1) {
+                break;
+            }
+            String key = string.substring(keyStart, end);
+            String value = skipped.test(key) ? null : get(key, components);
+            if (value != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(string.length() + value.length());
+                }
+                sb.append(string, last, start).append(value);
+                last = end + placeholderSuffix().length();
+                start = string.indexOf(placeholderPrefix(), last);
+            } else {
+                start = string.indexOf(placeholderPrefix(), start + 1);
+            }
+        }
+        if (sb == null) {
+            return string;
+        }
+        return sb.append(string, last, string.length()).toString();
+    }
+
+    private String get(String key, boolean components) {
+        key = normalize(key);
+        for (ReplacementSet set = this; set != null; set = set.parent()) {
+            String value = set.replacements.get(key);
+            if (value != null) {
+                return value;
+            }
+            value = set.serializedComponentReplacements.get(key);
+            if (value != null) {
+                // a component of a layer shadows the strings of its parents, it gets replaced in the component pass
+                return components ? value : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check whether this set or one of its parents has a value for a placeholder
+     * @param key The key of the placeholder, without prefix and suffix
+     * @return <code>true</code> if there is a string or component replacement for it
+     */
+    public boolean contains(String key) {
+        return get(key, true) != null;
+    }
+
+    private String normalize(String key) {
+        return ignorePlaceholderCase() ? key.toLowerCase(Locale.ROOT) : key;
+    }
+
+    /**
+     * Get the set this one is layered on top of
+     * @return The parent set or <code>null</code> if this is the bottom layer
+     */
+    public @Nullable ReplacementSet parent() {
+        return this.parent;
+    }
+
+    /**
+     * Get the string replacements of this layer, without the ones of its parents.
+     * The keys are lower case if the placeholder case is ignored.
+     * @return An unmodifiable map of placeholders to their values
+     */
+    public Map<String, String> replacements() {
+        return this.replacements;
+    }
+
+    /**
+     * Get the component replacements of this layer, without the ones of its parents.
+     * The keys are lower case if the placeholder case is ignored.
+     * @return An unmodifiable map of placeholders to their components
+     */
+    public Map<String, Component> componentReplacements() {
+        return this.componentReplacements;
+    }
+
+    /**
+     * Get the placeholder indicator's prefix string
+     * @return the prefix characters
+     */
+    public String placeholderPrefix() {
+        return this.placeholderPrefix;
+    }
+
+    /**
+     * Get the placeholder indicator's suffix string
+     * @return the suffix characters
+     */
+    public String placeholderSuffix() {
+        return this.placeholderSuffix;
+    }
+
+    /**
+     * Whether the placeholders are replaced no matter what the case of them is
+     * @return whether or not to ignore the placeholder case (Default: true)
+     */
+    public boolean ignorePlaceholderCase() {
+        return this.ignorePlaceholderCase;
+    }
+
+    /**
+     * Builder for {@link ReplacementSet}s
+     */
+    public static final class Builder {
+        private final ReplacementSet parent;
+        private final Map<String, String> replacements = new LinkedHashMap<>();
+        private final Map<String, Component> componentReplacements = new LinkedHashMap<>();
+        private String placeholderPrefix = "%";
+        private String placeholderSuffix = "%";
+        private boolean ignorePlaceholderCase = true;
+
+        private Builder(ReplacementSet parent) {
+            this.parent = parent;
+            if (parent != null) {
+                placeholderPrefix = parent.placeholderPrefix();
+                placeholderSuffix = parent.placeholderSuffix();
+                ignorePlaceholderCase = parent.ignorePlaceholderCase();
+            }
+        }
+
+        /**
+         * Add an array with placeholders and values that should get replaced
+         * @param replacements The replacements, nth element is the placeholder, n+1th the value
+         * @return The Builder instance
+         */
+        public Builder replace(String... replacements) {
+            Util.validate(replacements.length % 2 == 0, "The replacement length has to be even, " +
+                    "mapping i % 2 == 0 to the placeholder and i % 2 = 1 to the placeholder's value");
+            for (int i = 0; i + 1 < replacements.length; i += 2) {
+                replace(replacements[i], replacements[i + 1]);
+            }
+            return this;
+        }
+
+        /**
+         * Add a placeholder to string mapping
+         * @param placeholder The placeholder to replace
+         * @param replacement The replacement value
+         * @return The Builder instance
+         */
+        public Builder replace(String placeholder, String replacement) {
+            placeholder = normalize(placeholder);
+            componentReplacements.remove(placeholder);
+            replacements.put(placeholder, replacement != null ? replacement : "null");
+            return this;
+        }
+
+        /**
+         * Add a placeholder to component mapping
+         * @param placeholder The placeholder to replace
+         * @param replacement The replacement component
+         * @return The Builder instance
+         */
+        public Builder replace(String placeholder, Component replacement) {
+            Util.validate(replacement != null, "Component replacements can't be null");
+            placeholder = normalize(placeholder);
+            replacements.remove(placeholder);
+            componentReplacements.put(placeholder, replacement);
+            return this;
+        }
+
+        /**
+         * Add a map with placeholders and values. {@link Component}s are added as component replacements,
+         * all other values are converted to strings. Lazily supplied values are not supported.
+         * @param replacements The replacements mapped placeholder to value
+         * @return The Builder instance
+         */
+        public Builder replace(Map<String, ?> replacements) {
+            for (Map.Entry<String, ?> entry : replacements.entrySet()) {
+                Object value = entry.getValue();
+                Util.validate(!(value instanceof Supplier) && !(value instanceof Function),
+                        "Replacement sets are immutable and don't support lazy values (" + entry.getKey() + ")");
+                if (value instanceof Component) {
+                    replace(entry.getKey(), (Component) value);
+                } else {
+                    replace(entry.getKey(), String.valueOf(value));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Set the placeholder indicator for both prefix and suffix
+         * @param placeholderIndicator The string to use as a placeholder indicator
+         * @return The Builder instance
+         */
+        public Builder placeholderIndicator(String placeholderIndicator) {
+            placeholderPrefix(placeholderIndicator);
+            placeholderSuffix(placeholderIndicator);
+            return this;
+        }
+
+        /**
+         * Set the placeholder indicator's prefix string. Can't be changed for layers.
+         * @param placeholderPrefix The placeholder prefix string
+         * @return The Builder instance
+         */
+        public Builder placeholderPrefix(String placeholderPrefix) {
+            validateConfigurable();
+            Util.validate(placeholderPrefix != null && !placeholderPrefix.isEmpty(), "The placeholder prefix can't be empty");
+            this.placeholderPrefix = placeholderPrefix;
+            return this;
+        }
+
+        /**
+         * Set the placeholder indicator's suffix string. Can't be changed for layers.
+         * @param placeholderSuffix The placeholder suffix string
+         * @return The Builder instance
+         */
+        public Builder placeholderSuffix(String placeholderSuffix) {
+            validateConfigurable();
+            Util.validate(placeholderSuffix != null && !placeholderSuffix.isEmpty(), "The placeholder suffix can't be empty");
+            this.placeholderSuffix = placeholderSuffix;
+            return this;
+        }
+
+        /**
+         * Set whether or not the placeholders should be replaced no matter what the case of them is.
+         * Can't be changed for layers and has to be set before adding replacements.
+         * @param ignorePlaceholderCase Whether or not to ignore the case in placeholders (Default: true)
+         * @return The Builder instance
+         */
+        public Builder ignorePlaceholderCase(boolean ignorePlaceholderCase) {
+            validateConfigurable();
+            Util.validate(replacements.isEmpty() && componentReplacements.isEmpty(),
+                    "The placeholder case setting has to be set before adding replacements");
+            this.ignorePlaceholderCase = ignorePlaceholderCase;
+            return this;
+        }
+
+        private void validateConfigurable() {
+            Util.validate(parent == null, "Layers use the placeholder configuration of their parent set");
+        }
+
+        private String normalize(String placeholder) {
+            return ignorePlaceholderCase ? placeholder.toLowerCase(Locale.ROOT) : placeholder;
+        }
+
+        /**
+         * Build the immutable replacement set
+         * @return The new replacement set
+         */
+        public ReplacementSet build() {
+            return new ReplacementSet(this);
+        }
+    }
+}
@@ -38,16 +38,22 @@ import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -58,25 +64,59 @@ import java.util.stream.Collectors;
 public class Replacer {
 
     /**
-     * A cache of compiled replacement patterns
+     * Cache of replaced texts with legacy codes parsed to components, keyed by the text after the replacement
      */
-    private static final Map<String, Pattern> PATTERN_CACHE = new ConcurrentHashMap<>();
+    private static final BoundedCache<String, Component> LEGACY_CACHE = new BoundedCache<>(1024);
 
     /**
-     * The creator of the patterns for the pattern cache
+     * The map of placeholders with their string replacements
      */
-    private static final Function<String, Pattern> PATTERN_CREATOR = p -> Pattern.compile(p, Pattern.LITERAL);
+    private final Map<String, String> replacements = new LinkedHashMap<>();
 
     /**
-     * The map of placeholders with their string replacements
+     * The map of placeholders with typed values (numbers, durations and instants)
+     * which are written by the placeholder formatter
      */
-    private final Map<String, String> replacements = new LinkedHashMap<>();
+    private final Map<String, Object> typedReplacements = new LinkedHashMap<>();
 
     /**
      * The map of placeholders with their component array replacements
      */
     private final Map<String, Component> componentReplacements = new LinkedHashMap<>();
 
+    /**
+     * The legacy string forms of the component replacements mapped to the component they were created from.
+     * An entry is only re-serialized when the component of its placeholder changes. Renders on different
+     * threads can fill it at the same time.
+     */
+    private final Map<String, Map.Entry<Component, String>> serializedComponentReplacements = new ConcurrentHashMap<>();
+
+    /**
+     * The map of placeholders with suppliers of their values. These only get resolved when the
+     * placeholder is actually found and at most once per render.
+     */
+    private final Map<String, Supplier<?>> lazyReplacements = new LinkedHashMap<>();
+
+    /**
+     * The render that is running on the current thread, so that one Replacer can be used by several threads at once
+     */
+    private final ThreadLocal<Render> render = new ThreadLocal<>();
+
+    /**
+     * The resolver to query for the values of all placeholders without a replacement once per render
+     */
+    private PlaceholderResolver placeholderResolver = null;
+
+    /**
+     * The shared immutable replacements which are applied after this Replacer's own ones
+     */
+    private ReplacementSet replacementSet = null;
+
+    /**
+     * The formatter for typed placeholder values
+     */
+    private PlaceholderFormatter placeholderFormatter = PlaceholderFormatter.DEFAULT;
+
     /**
      * The placeholder indicator's prefix character
      */
@@ -137,34 +177,59 @@ public class Replacer {
     public Replacer replace(String... replacements) {
         Util.validate(replacements.length % 2 == 0, "The replacement length has to be even, " +
                 "mapping i % 2 == 0 to the placeholder and i % 2 = 1 to the placeholder's value");
-        Map<String, String> replacementMap = new LinkedHashMap<>();
         for (int i = 0; i + 1 < replacements.length; i += 2) {
-            replacementMap.put(replacements[i], replacements[i + 1]);
+            typedReplacements().remove(replacements[i]);
+            lazyReplacements().remove(replacements[i]);
+            replacements().put(replacements[i], replacements[i + 1] != null ? replacements[i + 1] : "null");
         }
-        return replace(replacementMap);
+        return this;
     }
 
     /**
-     * Add a map with placeholders and values that should get replaced in the message
+     * Add a map with placeholders and values that should get replaced in the message.
+     * {@link Supplier} values (and {@link Function}s which get the placeholder passed) are only
+     * resolved when the placeholder is actually used, {@link Component}s are added as component replacements
+     * and numbers, {@link Duration}s and {@link Instant}s are written by the {@link #placeholderFormatter()}.
      * @param replacements The replacements mapped placeholder to value
      * @return The Replacer instance
      */
     public Replacer replace(Map<String, ?> replacements) {
-        if (replacements != null && !replacements.isEmpty()) {
-            Object any = replacements.values().stream().filter(Objects::nonNull).findAny().orElse(null);
-            if (any instanceof String) {
-                replacements().putAll((Map<String, String>) replacements);
-            } else if (any instanceof Component) {
-                componentReplacements().putAll((Map<String, Component>) replacements);
-            } else {
-                for (Map.Entry<String, ?> entry : replacements.entrySet()) {
-                    replacements().put(entry.getKey(), String.valueOf(entry.getValue()));
-                }
+        if (replacements != null) {
+            for (Map.Entry<String, ?> entry : replacements.entrySet()) {
+                replaceValue(entry.getKey(), entry.getValue());
             }
         }
         return this;
     }
 
+    /**
+     * Add a placeholder with a value of any type, it is handled like the values of {@link #replace(Map)}.
+     * Use this instead of the typed replace methods when the value can be <code>null</code>,
+     * a call like <code>replace(placeholder, null)</code> is ambiguous between them and doesn't compile.
+     * @param placeholder The placeholder to replace
+     * @param replacement The replacement value, <code>null</code> is replaced with the string "null"
+     * @return The Replacer instance
+     */
+    public Replacer replaceValue(String placeholder, @Nullable Object replacement) {
+        if (replacement instanceof Component) {
+            replace(placeholder, (Component) replacement);
+        } else if (replacement instanceof Supplier) {
+            replace(placeholder, (Supplier<?>) replacement);
+        } else if (replacement instanceof Function) {
+            // functions only ever get the placeholder key passed
+            @SuppressWarnings("unchecked")
+            Function<String, ?> function = (Function<String, ?>) replacement;
+            replace(placeholder, function);
+        } else if (PlaceholderFormatter.isTyped(replacement)) {
+            replaceTyped(placeholder, replacement);
+        } else {
+            typedReplacements().remove(placeholder);
+            lazyReplacements().remove(placeholder);
+            replacements().put(placeholder, replacement instanceof String ? (String) replacement : String.valueOf(replacement));
+        }
+        return this;
+    }
+
     /**
      * Add a placeholder to component mapping that should get replaced in the message
      * @param placeholder The placeholder to replace
@@ -172,10 +237,94 @@ public class Replacer {
      * @return The Replacer instance
      */
     public Replacer replace(String placeholder, Component replacement) {
+        lazyReplacements().remove(placeholder);
         componentReplacements().put(placeholder, replacement);
         return this;
     }
 
+    /**
+     * Add a placeholder whose value is only supplied when the placeholder is actually found in the message.
+     * The supplier is called at most once per render. Component values are inserted in their legacy form.
+     * @param placeholder The placeholder to replace
+     * @param replacement The supplier of the replacement value
+     * @return The Replacer instance
+     */
+    public Replacer replace(String placeholder, Supplier<?> replacement) {
+        replacements().remove(placeholder);
+        typedReplacements().remove(placeholder);
+        lazyReplacements().put(placeholder, replacement);
+        return this;
+    }
+
+    /**
+     * Add a placeholder whose value is only computed when the placeholder is actually found in the message.
+     * The function gets the placeholder passed and is called at most once per render.
+     * @param placeholder The placeholder to replace
+     * @param replacement The function computing the replacement value
+     * @return The Replacer instance
+     */
+    public Replacer replace(String placeholder, Function<String, ?> replacement) {
+        return replace(placeholder, (Supplier<?>) () -> replacement.apply(placeholder));
+    }
+
+    /**
+     * Add a placeholder with a whole number value which is written by the {@link #placeholderFormatter()}
+     * @param placeholder The placeholder to replace
+     * @param replacement The replacement value
+     * @return The Replacer instance
+     */
+    public Replacer replace(String placeholder, long replacement) {
+        return replaceTyped(placeholder, replacement);
+    }
+
+    /**
+     * Add a placeholder with a decimal value which is written by the {@link #placeholderFormatter()}
+     * @param placeholder The placeholder to replace
+     * @param replacement The replacement value
+     * @return The Replacer instance
+     */
+    public Replacer replace(String placeholder, double replacement) {
+        return replaceTyped(placeholder, replacement);
+    }
+
+    /**
+     * Add a placeholder with a duration value which is written by the {@link #placeholderFormatter()}
+     * @param placeholder The placeholder to replace
+     * @param replacement The replacement value
+     * @return The Replacer instance
+     */
+    public Replacer replace(String placeholder, Duration replacement) {
+        return replaceTyped(placeholder, replacement);
+    }
+
+    /**
+     * Add a placeholder with an instant value which is written by the {@link #placeholderFormatter()}
+     * @param placeholder The placeholder to replace
+     * @param replacement The replacement value
+     * @return The Replacer instance
+     */
+    public Replacer replace(String placeholder, Instant replacement) {
+        return replaceTyped(placeholder, replacement);
+    }
+
+    private Replacer replaceTyped(String placeholder, Object replacement) {
+        replacements().remove(placeholder);
+        lazyReplacements().remove(placeholder);
+        typedReplacements().put(placeholder, replacement);
+        return this;
+    }
+
+    /**
+     * Use an immutable set of replacements. Its values are applied after the ones of this Replacer
+     * and matched with the set's own placeholder configuration. The set is not copied.
+     * @param replacementSet The replacement set or <code>null</code> to not use one
+     * @return The Replacer instance
+     */
+    public Replacer replace(@Nullable ReplacementSet replacementSet) {
+        this.replacementSet = replacementSet;
+        return this;
+    }
+
     /**
      * Set the placeholder indicator for both prefix and suffix
      * @param placeholderIndicator The character to use as a placeholder indicator
@@ -198,11 +347,23 @@ public class Replacer {
             return null;
         }
 
-        List<Component> replaced = new ArrayList<>();
-        for (Component component : components) {
-            replaced.add(replaceIn(component));
+        startRender();
+        try {
+            resolvePlaceholders(() -> {
+                Set<String> placeholders = new LinkedHashSet<>();
+                for (Component component : components) {
+                    collectPlaceholders(component, placeholders);
+                }
+                return placeholders;
+            });
+            List<Component> replaced = new ArrayList<>();
+            for (Component component : components) {
+                replaced.add(replaceIn(component));
+            }
+            return replaced;
+        } finally {
+            finishRender();
         }
-        return replaced;
     }
 
     /**
@@ -216,6 +377,16 @@ public class Replacer {
             return null;
         }
 
+        startRender();
+        try {
+            resolvePlaceholders(() -> placeholders(component));
+            return replaceComponent(component);
+        } finally {
+            finishRender();
+        }
+    }
+
+    private Component replaceComponent(Component component) {
         TextComponent.Builder builder = Component.text();
 
         if (component instanceof KeybindComponent) {
@@ -227,7 +398,7 @@ public class Replacer {
             if (sectionIndex > -1 && replaced.length() > sectionIndex + 1
                     && Util.getFormatFromLegacy(replaced.toLowerCase(Locale.ROOT).charAt(sectionIndex + 1)) != null) {
                 // replacement contain legacy code, parse to components and append them as children
-                Component replacedComponent = LegacyComponentSerializer.legacySection().deserialize(replaced);
+                Component replacedComponent = LEGACY_CACHE.get(replaced, r -> Util.parseLegacy(r, '§'));
                 component = ((TextComponent) component).content("");
                 List<Component> children = new ArrayList<>();
                 children.add(replacedComponent);
@@ -292,56 +463,72 @@ public class Replacer {
         replacedComponents.add(component);
 
         for (Map.Entry<String, Component> replacement : componentReplacements().entrySet()) {
-            List<Component> newReplacedComponents = new ArrayList<>();
-
-            for (Component replaceComponent : replacedComponents) {
-                if (replaceComponent instanceof TextComponent) {
-                    TextComponent textComponent = (TextComponent) replaceComponent;
-                    String placeHolder = placeholderPrefix()
-                            + (ignorePlaceholderCase() ? replacement.getKey().toLowerCase(Locale.ROOT) : replacement.getKey())
-                            + placeholderSuffix();
-                    String text = ignorePlaceholderCase() ? textComponent.content().toLowerCase(Locale.ROOT) : textComponent.content();
-                    int index = text.indexOf(placeHolder);
-                    if (index > -1) {
-                        while (true) {
-                            ComponentBuilder<?, ?> startBuilder;
-                            if (index > 0) {
-                                startBuilder = Component.text().mergeStyle(textComponent);
-                                ((TextComponent.Builder) startBuilder).content(textComponent.content().substring(0, index));
-                                startBuilder.append(replacement.getValue());
-                            } else if (replacement.getValue() instanceof BuildableComponent){
-                                startBuilder = ((BuildableComponent<?, ?>) replacement.getValue()).toBuilder();
-                                // Merge replacement style onto the component's to properly apply the replacement styles over the component ones
-                                startBuilder.style(Style.style().merge(textComponent.style()).merge(replacement.getValue().style()).build());
-                            } else {
-                                startBuilder = Component.text().mergeStyle(textComponent);
-                                startBuilder.append(replacement.getValue());
-                            }
-                            newReplacedComponents.add(startBuilder.build());
-
-                            textComponent = textComponent.content(textComponent.content().substring(index + placeHolder.length()));
-                            text = ignorePlaceholderCase() ? textComponent.content().toLowerCase(Locale.ROOT) : textComponent.content();
-
-                            if (text.isEmpty() || (index = text.indexOf(placeHolder)) < 0) {
-                                // No further placeholder in text, add rest to newReplacedComponents
-                                newReplacedComponents.add(textComponent);
-                                break;
-                            }
-                        }
-                        continue;
-                    }
-                }
-
-                // Nothing was replaced, just add it
-                newReplacedComponents.add(replaceComponent);
+            String placeholder = placeholderPrefix()
+                    + (ignorePlaceholderCase() ? replacement.getKey().toLowerCase(Locale.ROOT) : replacement.getKey())
+                    + placeholderSuffix();
+            replacedComponents = replacePlaceholder(replacedComponents, placeholder, ignorePlaceholderCase(), replacement.getValue());
+        }
+        for (ReplacementSet set = replacementSet(); set != null; set = set.parent()) {
+            for (Map.Entry<String, Component> replacement : set.componentReplacements().entrySet()) {
+                String placeholder = set.placeholderPrefix() + replacement.getKey() + set.placeholderSuffix();
+                replacedComponents = replacePlaceholder(replacedComponents, placeholder, set.ignorePlaceholderCase(), replacement.getValue());
             }
-            replacedComponents = newReplacedComponents;
         }
         builder.append(replacedComponents);
 
         return builder.build();
     }
 
+    /**
+     * Replace a placeholder with a component in a list of components
+     * @param replacedComponents The components to replace in
+     * @param placeHolder        The placeholder including prefix and suffix, lower case if the case should be ignored
+     * @param ignoreCase         Whether to ignore the case of the text when searching for the placeholder
+     * @param replacement        The replacement component
+     * @return The new list of components with the placeholder replaced
+     */
+    private List<Component> replacePlaceholder(List<Component> replacedComponents, String placeHolder, boolean ignoreCase, Component replacement) {
+        List<Component> newReplacedComponents = new ArrayList<>();
+
+        for (Component replaceComponent : replacedComponents) {
+            if (replaceComponent instanceof TextComponent) {
+                TextComponent textComponent = (TextComponent) replaceComponent;
+                int index = indexOf(textComponent.content(), placeHolder, 0, ignoreCase);
+                if (index > -1) {
+                    while (true) {
+                        ComponentBuilder<?, ?> startBuilder;
+                        if (index > 0) {
+                            startBuilder = Component.text().mergeStyle(textComponent);
+                            ((TextComponent.Builder) startBuilder).content(textComponent.content().substring(0, index));
+                            startBuilder.append(replacement);
+                        } else if (replacement instanceof BuildableComponent){
+                            startBuilder = ((BuildableComponent<?, ?>) replacement).toBuilder();
+                            // Merge replacement style onto the component's to properly apply the replacement styles over the component ones
+                            startBuilder.style(Style.style().merge(textComponent.style()).merge(replacement.style()).build());
+                        } else {
+                            startBuilder = Component.text().mergeStyle(textComponent);
+                            startBuilder.append(replacement);
+                        }
+                        newReplacedComponents.add(startBuilder.build());
+
+                        textComponent = textComponent.content(textComponent.content().substring(index + placeHolder.length()));
+                        if (textComponent.content().isEmpty()
+                                || (index = indexOf(textComponent.content(), placeHolder, 0, ignoreCase)) < 0) {
+                            // No further placeholder in text, add rest to newReplacedComponents
+                            newReplacedComponents.add(textComponent);
+                            break;
+                        }
+                    }
+                    continue;
+                }
+            }
+
+            // Nothing was replaced, just add it
+            newReplacedComponents.add(replaceComponent);
+        }
+        return newReplacedComponents;
+    }
+
     /**
      * Replace the placeholders in a string.
      * @param string The String list to replace in
@@ -353,11 +540,25 @@ public class Replacer {
             return null;
         }
 
-        Replacer replacer = copy();
-        for (Map.Entry<String, Component> entry : replacer.componentReplacements().entrySet()) {
-            replacer.replacements().putIfAbsent(entry.getKey(), LegacyComponentSerializer.legacySection().serialize(entry.getValue()));
+        startRender();
+        try {
+            String message = string;
+            resolvePlaceholders(() -> placeholders(message));
+            string = replaceOwnStrings(string);
+            for (Map.Entry<String, Component> entry : componentReplacements().entrySet()) {
+                if (!replacements().containsKey(entry.getKey()) && !typedReplacements().containsKey(entry.getKey())
+                        && !lazyReplacements().containsKey(entry.getKey())) {
+                    string = replacePlaceholder(string, entry.getKey(), getSerialized(entry.getKey(), entry.getValue()));
+                }
+            }
+            if (replacementSet() != null) {
+                // the set comes last so that this Replacer's own values take precedence
+                string = replacementSet().replaceIn(string);
+            }
+            return string;
+        } finally {
+            finishRender();
         }
-        return replacer.replaceStrings(string);
     }
 
     /**
@@ -366,23 +567,345 @@ public class Replacer {
      * @return The string with the placeholders replaced
      */
     String replaceStrings(String string) {
+        string = replaceOwnStrings(string);
+        if (replacementSet() != null) {
+            // the component replacements of this Replacer take precedence, they are replaced afterwards
+            string = replacementSet().replaceStrings(string, this::hasOwnComponentPlaceholder);
+        }
+        return string;
+    }
+
+    private String replaceOwnStrings(String string) {
         for (Map.Entry<String, String> replacement : replacements().entrySet()) {
-            String replValue = replacement.getValue() != null ? replacement.getValue() : "null";
-            if (ignorePlaceholderCase()) {
-                String placeholder = placeholderPrefix() + replacement.getKey().toLowerCase(Locale.ROOT) + placeholderSuffix();
-                int nextStart = 0;
-                int startIndex;
-                while (nextStart < string.length() && (startIndex = string.toLowerCase(Locale.ROOT).indexOf(placeholder, nextStart)) > -1) {
-                    nextStart = startIndex + replValue.length();
-                    string = string.substring(0, startIndex) + replValue + string.substring(startIndex + placeholder.length());
+            string = replacePlaceholder(string, replacement.getKey(), replacement.getValue());
+        }
+        for (Map.Entry<String, Object> replacement : typedReplacements().entrySet()) {
+            string = replacePlaceholder(string, replacement.getKey(), replacement.getValue());
+        }
+        for (Map.Entry<String, Supplier<?>> replacement : lazyReplacements().entrySet()) {
+            if (indexOf(string, placeholderPrefix() + replacement.getKey() + placeholderSuffix(), 0, ignorePlaceholderCase()) > -1) {
+                string = replacePlaceholder(string, replacement.getKey(), resolve(replacement.getKey(), replacement.getValue()));
+            }
+        }
+        Render render = this.render.get();
+        if (render != null) {
+            for (Map.Entry<String, String> replacement : render.resolverReplacements.entrySet()) {
+                string = replacePlaceholder(string, replacement.getKey(), replacement.getValue());
+            }
+        }
+        return string;
+    }
+
+    /**
+     * Check whether a placeholder of the replacement set is also one of this Replacer's component replacements
+     * @param key The key of the placeholder, without prefix and suffix
+     * @return Whether this Replacer has a component replacement for it
+     */
+    private boolean hasOwnComponentPlaceholder(String key) {
+        if (!placeholderPrefix().equals(replacementSet().placeholderPrefix())
+                || !placeholderSuffix().equals(replacementSet().placeholderSuffix())) {
+            return false;
+        }
+        for (String placeholder : componentReplacements().keySet()) {
+            if (ignorePlaceholderCase() ? placeholder.equalsIgnoreCase(key) : placeholder.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the keys of all placeholders that are used in a string with this Replacer's prefix and suffix.
+     * Keys can't be empty or contain whitespace.
+     * @param string The string to search
+     * @return The keys of the placeholders, without prefix and suffix, in the order they appear in
+     */
+    public Set<String> placeholders(String string) {
+        Set<String> placeholders = new LinkedHashSet<>();
+        collectPlaceholders(string, placeholders);
+        return placeholders;
+    }
+
+    /**
+     * Get the keys of all placeholders that are used in a component, its children and its events.
+     * Keys can't be empty or contain whitespace.
+     * @param component The component to search
+     * @return The keys of the placeholders, without prefix and suffix, in the order they appear in
+     */
+    public Set<String> placeholders(Component component) {
+        Set<String> placeholders = new LinkedHashSet<>();
+        collectPlaceholders(component, placeholders);
+        return placeholders;
+    }
+
+    private void collectPlaceholders(@Nullable String string, Set<String> placeholders) {
+        if (string == null || placeholderPrefix().isEmpty() || placeholderSuffix().isEmpty()) {
+            return;
+        }
+        int start = string.indexOf(placeholderPrefix());
+        while (start > -1) {
+            int keyStart = start + placeholderPrefix().length();
+            int end = string.indexOf(placeholderSuffix(), keyStart);
+            if (end == -1) {
+                break;
+            }
+            boolean valid = end > keyStart;
+            for (int i = keyStart; i < end && valid; i++) {
+                valid = !Character.isWhitespace(string.charAt(i));
+            }
+            if (valid) {
+                placeholders.add(string.substring(keyStart, end));
+                start = string.indexOf(placeholderPrefix(), end + placeholderSuffix().length());
+            } else {
+                start = string.indexOf(placeholderPrefix(), start + 1);
+            }
+        }
+    }
+
+    private void collectPlaceholders(@Nullable Component component, Set<String> placeholders) {
+        if (component == null) {
+            return;
+        }
+        if (component instanceof TextComponent) {
+            collectPlaceholders(((TextComponent) component).content(), placeholders);
+        } else if (component instanceof KeybindComponent) {
+            collectPlaceholders(((KeybindComponent) component).keybind(), placeholders);
+        } else if (component instanceof TranslatableComponent) {
+            collectPlaceholders(((TranslatableComponent) component).key(), placeholders);
+            for (TranslationArgumentLike argument : ((TranslatableComponent) component).arguments()) {
+                collectPlaceholders(argument.asComponent(), placeholders);
+            }
+        }
+        collectPlaceholders(component.insertion(), placeholders);
+        if (component.clickEvent() != null) {
+            ClickEvent.Payload payload = component.clickEvent().payload();
+            if (payload instanceof ClickEvent.Payload.Text) {
+                collectPlaceholders(((ClickEvent.Payload.Text) payload).value(), placeholders);
+            } else if (payload instanceof ClickEvent.Payload.Custom) {
+                collectPlaceholders(((ClickEvent.Payload.Custom) payload).key().asString(), placeholders);
+                collectPlaceholders(((ClickEvent.Payload.Custom) payload).nbt().string(), placeholders);
+            }
+        }
+        if (component.hoverEvent() != null) {
+            Object value = component.hoverEvent().value();
+            if (value instanceof Component) {
+                collectPlaceholders((Component) value, placeholders);
+            } else if (value instanceof HoverEvent.ShowEntity) {
+                collectPlaceholders(((HoverEvent.ShowEntity) value).type().asString(), placeholders);
+                collectPlaceholders(((HoverEvent.ShowEntity) value).name(), placeholders);
+            } else if (value instanceof HoverEvent.ShowItem) {
+                collectPlaceholders(((HoverEvent.ShowItem) value).item().asString(), placeholders);
+                BinaryTagHolder nbt = itemNbt((HoverEvent.ShowItem) value);
+                if (nbt != null) {
+                    collectPlaceholders(nbt.string(), placeholders);
+                }
+            }
+        }
+        for (Component child : component.children()) {
+            collectPlaceholders(child, placeholders);
+        }
+    }
+
+    /**
+     * Query the placeholder resolver for all used placeholders that don't have a value yet.
+     * This only does something in the outermost render and if a resolver is set.
+     * @param placeholders Supplies the placeholders used in the message
+     */
+    void resolvePlaceholders(Supplier<Set<String>> placeholders) {
+        Render render = this.render.get();
+        if (render == null || render.depth != 1 || placeholderResolver() == null) {
+            return;
+        }
+        Set<String> known = new HashSet<>();
+        addKnown(known, replacements().keySet());
+        addKnown(known, typedReplacements().keySet());
+        addKnown(known, lazyReplacements().keySet());
+        addKnown(known, componentReplacements().keySet());
+        Set<String> unresolved = new LinkedHashSet<>();
+        for (String placeholder : placeholders.get()) {
+            if (!known.contains(ignorePlaceholderCase() ? placeholder.toLowerCase(Locale.ROOT) : placeholder)
+                    && (replacementSet() == null || !replacementSet().contains(placeholder))) {
+                unresolved.add(placeholder);
+            }
+        }
+        if (unresolved.isEmpty()) {
+            return;
+        }
+        Map<String, ?> resolved = placeholderResolver().resolve(Collections.unmodifiableSet(unresolved));
+        if (resolved != null) {
+            for (Map.Entry<String, ?> entry : resolved.entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Supplier) {
+                    value = ((Supplier<?>) value).get();
+                } else if (value instanceof Function) {
+                    // functions only ever get the placeholder key passed
+                    @SuppressWarnings("unchecked")
+                    Function<String, ?> function = (Function<String, ?>) value;
+                    value = function.apply(entry.getKey());
                 }
+                render.resolverReplacements.put(entry.getKey(), toReplacementString(value));
+            }
+        }
+    }
+
+    /**
+     * Get the legacy nbt of an item. It is deprecated in Adventure but the parser still creates items with it
+     * and it can contain placeholders.
+     */
+    @SuppressWarnings("deprecation")
+    private static BinaryTagHolder itemNbt(HoverEvent.ShowItem item) {
+        return item.nbt();
+    }
+
+    private void addKnown(Set<String> known, Set<String> keys) {
+        for (String key : keys) {
+            known.add(ignorePlaceholderCase() ? key.toLowerCase(Locale.ROOT) : key);
+        }
+    }
+
+    /**
+     * Find the index of a placeholder in a string without creating any intermediate strings
+     * @param string      The string to search in
+     * @param placeholder The placeholder including its prefix and suffix
+     * @param fromIndex   The index to start searching from
+     * @param ignoreCase  Whether to ignore the case when comparing characters
+     * @return The index of the placeholder's prefix or {@code -1} if it wasn't found
+     */
+    private static int indexOf(String string, String placeholder, int fromIndex, boolean ignoreCase) {
+        if (!ignoreCase) {
+            return string.indexOf(placeholder, fromIndex);
+        }
+        if (placeholder.isEmpty()) {
+            return fromIndex <= string.length() ? fromIndex : -1;
+        }
+        char first = placeholder.charAt(0);
+        char firstUpper = Character.toUpperCase(first);
+        char firstLower = Character.toLowerCase(first);
+        for (int i = fromIndex; i + placeholder.length() <= string.length(); i++) {
+            char c = string.charAt(i);
+            if ((c == first || c == firstUpper || c == firstLower || Character.toLowerCase(c) == firstLower)
+                    && string.regionMatches(true, i, placeholder, 0, placeholder.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Resolve the value of a lazy replacement. The value is only resolved once per render.
+     * @param placeholder The placeholder of the replacement
+     * @param supplier    The supplier of the value
+     * @return The value as a string
+     */
+    private String resolve(String placeholder, Supplier<?> supplier) {
+        Render render = this.render.get();
+        String resolved = render != null ? render.resolvedReplacements.get(placeholder) : null;
+        if (resolved == null) {
+            resolved = toReplacementString(supplier.get());
+            if (render != null) {
+                render.resolvedReplacements.put(placeholder, resolved);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Convert a resolved value to the string it is replaced with. Components are inserted in their legacy form.
+     * @param value The value
+     * @return The string to replace with
+     */
+    private String toReplacementString(Object value) {
+        if (value instanceof Component) {
+            return LegacyComponentSerializer.legacySection().serialize((Component) value);
+        }
+        return placeholderFormatter().format(value);
+    }
+
+    /**
+     * Start a render on the current thread. Lazy replacements are resolved at most once until the render is finished.
+     * Renders can be nested, only the outermost one counts.
+     */
+    void startRender() {
+        Render render = this.render.get();
+        if (render == null) {
+            render = new Render();
+            this.render.set(render);
+        }
+        render.depth++;
+    }
+
+    /**
+     * Finish a render started with {@link #startRender()}. When the outermost render finishes
+     * the resolved lazy replacements are discarded so that the next render resolves them again.
+     */
+    void finishRender() {
+        Render render = this.render.get();
+        if (render != null && --render.depth <= 0) {
+            this.render.remove();
+        }
+    }
+
+    /**
+     * Replace a single placeholder in a string
+     * @param string      The string to replace in
+     * @param key         The key of the placeholder, without prefix and suffix
+     * @param replacement The value to replace the placeholder with, typed values are written by the placeholder formatter
+     * @return The string with the placeholder replaced
+     */
+    private String replacePlaceholder(String string, String key, Object replacement) {
+        String placeholder = placeholderPrefix() + key + placeholderSuffix();
+        int index = indexOf(string, placeholder, 0, ignorePlaceholderCase());
+        if (index < 0) {
+            return string;
+        }
+        StringBuilder sb = new StringBuilder(string.length() + 16);
+        int last = 0;
+        do {
+            sb.append(string, last, index);
+            if (replacement instanceof String) {
+                sb.append((String) replacement);
             } else {
-                String placeholder = placeholderPrefix() + replacement.getKey() + placeholderSuffix();
-                Pattern pattern = PATTERN_CACHE.computeIfAbsent(placeholder, PATTERN_CREATOR);
-                string = pattern.matcher(string).replaceAll(Matcher.quoteReplacement(replValue));
+                placeholderFormatter().format(replacement, sb);
             }
+            last = index + placeholder.length();
+        } while (!placeholder.isEmpty() && (index = indexOf(string, placeholder, last, ignorePlaceholderCase())) > -1);
+        return sb.append(string, last, string.length()).toString();
+    }
+
+    /**
+     * Get the legacy string form of a component replacement. The serialized string is cached
+     * and only created again if the component that is mapped to the placeholder changed.
+     * @param placeholder The placeholder of the replacement
+     * @param component   The component the placeholder is replaced with
+     * @return The component serialized to a legacy string
+     */
+    private String getSerialized(String placeholder, Component component) {
+        if (serializedComponentReplacements.size() > componentReplacements().size()) {
+            serializedComponentReplacements.keySet().retainAll(componentReplacements().keySet());
         }
-        return string;
+        Map.Entry<Component, String> serialized = serializedComponentReplacements.get(placeholder);
+        if (serialized == null || serialized.getKey() != component) {
+            serialized = new AbstractMap.SimpleImmutableEntry<>(component, LegacyComponentSerializer.legacySection().serialize(component));
+            serializedComponentReplacements.put(placeholder, serialized);
+        }
+        return serialized.getValue();
+    }
+
+    /**
+     * Remove all replacements, the resolver and the replacement set so that this Replacer can be reused.
+     * The placeholder configuration and formatter are kept.
+     * @return the instance of this Replacer
+     */
+    public Replacer clear() {
+        replacements().clear();
+        typedReplacements().clear();
+        componentReplacements().clear();
+        serializedComponentReplacements.clear();
+        lazyReplacements().clear();
+        render.remove();
+        placeholderResolver(null);
+        replace((ReplacementSet) null);
+        return this;
     }
 
     /**
@@ -403,8 +926,18 @@ public class Replacer {
         replacements().putAll(from.replacements());
         componentReplacements().clear();
         componentReplacements().putAll(from.componentReplacements());
+        serializedComponentReplacements.clear();
+        serializedComponentReplacements.putAll(from.serializedComponentReplacements);
+        typedReplacements().clear();
+        typedReplacements().putAll(from.typedReplacements());
+        lazyReplacements().clear();
+        lazyReplacements().putAll(from.lazyReplacements());
         placeholderPrefix(from.placeholderPrefix());
         placeholderSuffix(from.placeholderSuffix());
+        ignorePlaceholderCase(from.ignorePlaceholderCase());
+        placeholderResolver(from.placeholderResolver());
+        replace(from.replacementSet());
+        placeholderFormatter(from.placeholderFormatter());
         return this;
     }
 
@@ -424,6 +957,68 @@ public class Replacer {
         return this.componentReplacements;
     }
 
+    /**
+     * Get the map of placeholders with their typed values (numbers, durations and instants)
+     * @return the replacement map
+     */
+    public Map<String, Object> typedReplacements() {
+        return this.typedReplacements;
+    }
+
+    /**
+     * Get the formatter that writes typed placeholder values
+     * @return the placeholder formatter
+     */
+    public PlaceholderFormatter placeholderFormatter() {
+        return this.placeholderFormatter;
+    }
+
+    /**
+     * Set the formatter that writes typed placeholder values, e.g. {@link PlaceholderFormatter#of(Locale)}
+     * @param placeholderFormatter The placeholder formatter
+     * @return the instance of this Replacer
+     */
+    public Replacer placeholderFormatter(PlaceholderFormatter placeholderFormatter) {
+        Util.validate(placeholderFormatter != null, "The placeholder formatter can't be null");
+        this.placeholderFormatter = placeholderFormatter;
+        return this;
+    }
+
+    /**
+     * Get the map of placeholders with the suppliers of their lazily resolved values
+     * @return the replacement map
+     */
+    public Map<String, Supplier<?>> lazyReplacements() {
+        return this.lazyReplacements;
+    }
+
+    /**
+     * Get the resolver that is queried for the values of all placeholders without a replacement
+     * @return the placeholder resolver or <code>null</code> if none is set
+     */
+    public @Nullable PlaceholderResolver placeholderResolver() {
+        return this.placeholderResolver;
+    }
+
+    /**
+     * Set the resolver that is queried once per render for the values of all used placeholders which
+     * don't have a replacement. Its values are only used for that render.
+     * @param placeholderResolver The placeholder resolver or <code>null</code> to not resolve placeholders
+     * @return the instance of this Replacer
+     */
+    public Replacer placeholderResolver(@Nullable PlaceholderResolver placeholderResolver) {
+        this.placeholderResolver = placeholderResolver;
+        return this;
+    }
+
+    /**
+     * Get the immutable replacement set that is applied after this Replacer's own replacements
+     * @return the replacement set or <code>null</code> if none is used
+     */
+    public @Nullable ReplacementSet replacementSet() {
+        return this.replacementSet;
+    }
+
     /**
      * Get the placeholder indicator's prefix string
      * @return the prefix characters
@@ -477,4 +1072,24 @@ public class Replacer {
         this.ignorePlaceholderCase = ignorePlaceholderCase;
         return this;
     }
+
+    /**
+     * The values that were resolved for one render, they are only used by the thread that started it
+     */
+    private static final class Render {
+        /**
+         * How many replacement calls of the render are running, used to detect its end
+         */
+        private int depth = 0;
+
+        /**
+         * The lazy replacements that were already resolved
+         */
+        private final Map<String, String> resolvedReplacements = new HashMap<>();
+
+        /**
+         * The values provided by the placeholder resolver
+         */
+        private final Map<String, String> resolverReplacements = new LinkedHashMap<>();
+    }
 }
@@ -0,0 +1,385 @@
+package de.themoep.minedown.adventure;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.Style;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A flat representation of a message: the text split into runs which each have an interned style and event ID.
+ * Styles only contain the visual parts (color, decorations, font and shadow), events the click and hover events
+ * and the insertion. Adjacent runs with the same style and events are merged.
+ * <p>
+ * Runs are created from a finished component tree with {@link #of(Component)}, so creating them costs more than only
+ * building the tree. Once created, one instance can be rendered to several outputs, e.g. with {@link #toComponent()}.
+ * Components other than text components (like translatable or object components) are kept as runs without text,
+ * their children are flattened into the following runs. Hover texts are flattened the same way. Instances are immutable.
+ */
+public final class StyleRuns {
+
+    private static final StyleRuns EMPTY = new StyleRuns("", new int[0], new int[0], new int[0], new Style[]{Style.empty()}, new Style[]{Style.empty()}, new Component[0]);
+
+    private final String text;
+    private final int[] ends;
+    private final int[] styleIds;
+    private final int[] eventIds;
+    private final Style[] styles;
+    private final Style[] events;
+    private final Component[] components;
+    private int hash = 0;
+
+    private StyleRuns(String text, int[] ends, int[] styleIds, int[] eventIds, Style[] styles, Style[] events, Component[] components) {
+        this.text = text;
+        this.ends = ends;
+        this.styleIds = styleIds;
+        this.eventIds = eventIds;
+        this.styles = styles;
+        this.events = events;
+        this.components = components;
+    }
+
+    /**
+     * Get empty runs
+     * @return Runs without any text
+     */
+    public static StyleRuns empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Flatten a component tree into style runs
+     * @param component The component
+     * @return The runs with the effective styles of all the component's parts
+     */
+    public static StyleRuns of(Component component) {
+        Builder builder = new Builder();
+        builder.add(component, Style.empty());
+        return builder.build();
+    }
+
+    /**
+     * Get the amount of runs
+     * @return The amount of runs
+     */
+    public int size() {
+        return ends.length;
+    }
+
+    /**
+     * Get the text of all runs
+     * @return The text of all runs
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Get the index in the text at which a run starts
+     * @param run The index of the run
+     * @return The index in the text
+     */
+    public int start(int run) {
+        return run > 0 ? ends[run - 1] : 0;
+    }
+
+    /**
+     * Get the index in the text at which a run ends (exclusive)
+     * @param run The index of the run
+     * @return The index in the text
+     */
+    public int end(int run) {
+        return ends[run];
+    }
+
+    /**
+     * Get the text of a run
+     * @param run The index of the run
+     * @return The text of the run, empty if the run is a {@link #component(int)}
+     */
+    public String text(int run) {
+        return text.substring(start(run), end(run));
+    }
+
+    /**
+     * Get the ID of the visual style of a run
+     * @param run The index of the run
+     * @return The ID, <code>0</code> is always the empty style
+     */
+    public int styleId(int run) {
+        return styleIds[run];
+    }
+
+    /**
+     * Get the ID of the events of a run
+     * @param run The index of the run
+     * @return The ID, <code>0</code> is always the style without events
+     */
+    public int eventId(int run) {
+        return eventIds[run];
+    }
+
+    /**
+     * Get the visual style with a certain ID
+     * @param styleId The ID
+     * @return The style with color, decorations, font and shadow
+     */
+    public Style styleById(int styleId) {
+        return styles[styleId];
+    }
+
+    /**
+     * Get the events with a certain ID
+     * @param eventId The ID
+     * @return The style with click and hover event and insertion
+     */
+    public Style eventsById(int eventId) {
+        return events[eventId];
+    }
+
+    /**
+     * Get the amount of different visual styles
+     * @return The amount of styles
+     */
+    public int styleCount() {
+        return styles.length;
+    }
+
+    /**
+     * Get the amount of different events
+     * @return The amount of events
+     */
+    public int eventCount() {
+        return events.length;
+    }
+
+    /**
+     * Get the full effective style of a run
+     * @param run The index of the run
+     * @return The style with the visual style and the events of the run
+     */
+    public Style style(int run) {
+        if (eventIds[run] == 0) {
+            return styles[styleIds[run]];
+        }
+        return styles[styleIds[run]].merge(events[eventIds[run]]);
+    }
+
+    /**
+     * Get the component of a run which isn't text
+     * @param run The index of the run
+     * @return The component without style and children or <code>null</code> if the run is text
+     */
+    public @Nullable Component component(int run) {
+        return components[run];
+    }
+
+    /**
+     * Build a flat component with one child for each run
+     * @return The component
+     */
+    public Component toComponent() {
+        if (size() == 1) {
+            return toComponent(0);
+        }
+        TextComponent.Builder builder = Component.text();
+        for (int i = 0; i < size(); i++) {
+            builder.append(toComponent(i));
+        }
+        return builder.build();
+    }
+
+    private Component toComponent(int run) {
+        if (components[run] != null) {
+            return components[run].style(style(run));
+        }
+        return Component.text(text(run), style(run));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StyleRuns)) {
+            return false;
+        }
+        StyleRuns other = (StyleRuns) o;
+        if (size() != other.size() || !text.equals(other.text) || !Arrays.equals(ends, other.ends)) {
+            return false;
+        }
+        for (int i = 0; i < size(); i++) {
+            if (!styles[styleIds[i]].equals(other.styles[other.styleIds[i]])
+                    || !events[eventIds[i]].equals(other.events[other.eventIds[i]])
+                    || !Objects.equals(components[i], other.components[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = text.hashCode();
+            for (int i = 0; i < size(); i++) {
+                h = 31 * h + ends[i];
+                h = 31 * h + styles[styleIds[i]].hashCode();
+                h = 31 * h + events[eventIds[i]].hashCode();
+                h = 31 * h + Objects.hashCode(components[i]);
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StyleRuns{");
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(components[i] != null ? components[i] : '"' + text(i) + '"')
+                    .append('#').append(styleIds[i]).append('/').append(eventIds[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static class Builder {
+        private final StringBuilder text = new StringBuilder();
+        private final List<Integer> ends = new ArrayList<>();
+        private final List<Integer> styleIds = new ArrayList<>();
+        private final List<Integer> eventIds = new ArrayList<>();
+        private final List<Component> components = new ArrayList<>();
+        private final Map<Style, Integer> styles = new HashMap<>();
+        private final Map<Style, Integer> events = new HashMap<>();
+        private final Map<HoverEvent<?>, HoverEvent<?>> hoverEvents = new IdentityHashMap<>();
+
+        private Builder() {
+            styles.put(Style.empty(), 0);
+            events.put(Style.empty(), 0);
+        }
+
+        private void add(Component component, Style parent) {
+            Style style = component.style().merge(parent, Style.Merge.Strategy.IF_ABSENT_ON_TARGET);
+            if (component instanceof TextComponent) {
+                String content = ((TextComponent) component).content();
+                if (!content.isEmpty()) {
+                    add(content, style, null);
+                }
+            } else {
+                add("", style, component.style(Style.empty()).children(new ArrayList<>()));
+            }
+            for (Component child : component.children()) {
+                add(child, style);
+            }
+        }
+
+        private void add(String content, Style style, Component component) {
+            int styleId = intern(styles, Style.style()
+                    .color(style.color())
+                    .decorations(style.decorations())
+                    .font(style.font())
+                    .shadowColor(style.shadowColor())
+                    .build());
+            int eventId = intern(events, Style.style()
+                    .clickEvent(style.clickEvent())
+                    .hoverEvent(flatten(style.hoverEvent()))
+                    .insertion(style.insertion())
+                    .build());
+            int last = ends.size() - 1;
+            if (component == null && last >= 0 && components.get(last) == null
+                    && styleIds.get(last) == styleId && eventIds.get(last) == eventId) {
+                text.append(content);
+                ends.set(last, text.length());
+                return;
+            }
+            text.append(content);
+            ends.add(text.length());
+            styleIds.add(styleId);
+            eventIds.add(eventId);
+            components.add(component);
+        }
+
+        /**
+         * Flatten the text of a hover event so that events which display the same are equal
+         */
+        private HoverEvent<?> flatten(HoverEvent<?> hoverEvent) {
+            if (hoverEvent == null || hoverEvent.action() != HoverEvent.Action.SHOW_TEXT) {
+                return hoverEvent;
+            }
+            HoverEvent<?> flattened = hoverEvents.get(hoverEvent);
+            if (flattened == null) {
+                flattened = HoverEvent.showText(StyleRuns.of((Component) hoverEvent.value()).toComponent());
+                hoverEvents.put(hoverEvent, flattened);
+            }
+            return flattened;
+        }
+
+        private static int intern(Map<Style, Integer> ids, Style style) {
+            Integer id = ids.get(style);
+            if (id == null) {
+                id = ids.size();
+                ids.put(style, id);
+            }
+            return id;
+        }
+
+        private StyleRuns build() {
+            if (ends.isEmpty()) {
+                return EMPTY;
+            }
+            int[] endArray = new int[ends.size()];
+            int[] styleIdArray = new int[ends.size()];
+            int[] eventIdArray = new int[ends.size()];
+            for (int i = 0; i < endArray.length; i++) {
+                endArray[i] = ends.get(i);
+                styleIdArray[i] = styleIds.get(i);
+                eventIdArray[i] = eventIds.get(i);
+            }
+            return new StyleRuns(text.toString(), endArray, styleIdArray, eventIdArray,
+                    toArray(styles), toArray(events), components.toArray(new Component[0]));
+        }
+
+        private static Style[] toArray(Map<Style, Integer> ids) {
+            Style[] array = new Style[ids.size()];
+            for (Map.Entry<Style, Integer> entry : ids.entrySet()) {
+                array[entry.getValue()] = entry.getKey();
+            }
+            return array;
+        }
+    }
+}
@@ -25,6 +25,7 @@ package de.themoep.minedown.adventure;
 import net.kyori.adventure.text.BuildableComponent;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.ComponentBuilder;
+import net.kyori.adventure.text.TextComponent;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextColor;
@@ -40,6 +41,7 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -400,6 +402,80 @@ public class Util {
             return getLegacyFormatChar(NamedTextColor.nearestTo((TextColor) format));
         }
         throw new IllegalArgumentException(format + " is not supported!");
+    }
+
+    /**
+     * Parse a string with legacy color codes (e.g. from a placeholder value) into components.
+     * Unknown codes are kept as text. Color codes reset the decorations and the reset code
+     * clears the style so that the one of the parent applies again. Hex colors in the
+     * {@code §x§r§r§g§g§b§b} format are supported too.
+     * @param string    The string to parse
+     * @param colorChar The legacy color code character, e.g. '§'
+     * @return The parsed component, without any style if the string contained no valid codes
+     */
+    public static Component parseLegacy(String string, char colorChar) {
+        List<Component> parts = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        TextColor color = null;
+        Set<TextDecoration> decorations = EnumSet.noneOf(TextDecoration.class);
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c != colorChar || i + 1 >= string.length()) {
+                value.append(c);
+                continue;
+            }
+            char code = Character.toLowerCase(string.charAt(i + 1));
+            Object format = code == 'x' ? parseLegacyHex(string, i, colorChar) : getFormatFromLegacy(code);
+            if (format == null) {
+                value.append(c);
+                continue;
+            }
+            if (!(format instanceof TextDecoration) || !decorations.contains(format)) {
+                addLegacyPart(parts, value, color, decorations);
+            }
+            if (format instanceof TextColor) {
+                color = (TextColor) format;
+                decorations.clear();
+            } else if (format instanceof TextDecoration) {
+                decorations.add((TextDecoration) format);
+            } else if (format == TextControl.RESET) {
+                color = null;
+                decorations.clear();
+            }
+            i += code == 'x' ? 13 : 1;
+        }
+        addLegacyPart(parts, value, color, decorations);
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        return Component.text().append(parts).build();
+    }
+
+    static TextColor parseLegacyHex(String string, int index, char colorChar) {
+        if (index + 14 > string.length()) {
+            return null;
+        }
+        int rgb = 0;
+        for (int i = index + 2; i < index + 14; i += 2) {
+            int digit = Character.digit(string.charAt(i + 1), 16);
+            if (string.charAt(i) != colorChar || digit < 0) {
+                return null;
+            }
+            rgb = rgb << 4 | digit;
+        }
+        return TextColor.color(rgb);
+    }
+
+    private static void addLegacyPart(List<Component> parts, StringBuilder value, TextColor color, Set<TextDecoration> decorations) {
+        if (value.length() == 0) {
+            return;
+        }
+        TextComponent.Builder part = Component.text().content(value.toString()).color(color);
+        for (TextDecoration decoration : decorations) {
+            part.decoration(decoration, true);
+        }
+        parts.add(part.build());
+        value.setLength(0);
     }    /*
      * createRainbow is adapted from the net.kyori.adventure.text.minimessage.fancy.Rainbow class
      * in adventure-text-minimessage, licensed under the MIT License.
@@ -22,12 +22,45 @@ package de.themoep.minedown.adventure.tests;
  * SOFTWARE.
  */
 
+import de.themoep.minedown.adventure.ComponentOptimizer;
+import de.themoep.minedown.adventure.ImmutableMineDown;
+import de.themoep.minedown.adventure.LegacyTranscoder;
 import de.themoep.minedown.adventure.MineDown;
+import de.themoep.minedown.adventure.MineDownBundle;
+import de.themoep.minedown.adventure.MineDownParser;
+import de.themoep.minedown.adventure.MineDownSanitizer;
+import de.themoep.minedown.adventure.ParseLimits;
+import de.themoep.minedown.adventure.StyleRuns;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.TranslatableComponent;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.flattener.ComponentFlattener;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.Style;
+import net.kyori.adventure.text.format.TextDecoration;
 import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class ParserTest {
     
     private void parse(String mineDownString, String... replacements) {
@@ -211,4 +244,402 @@ public class ParserTest {
                 () -> parse("Object item test[](sprite=inventory atlas=gui)")
         );
     }
-}
+
+    @Test
+    public void testImmutable() throws Exception {
+        AtomicInteger supplied = new AtomicInteger();
+        MineDown mineDown = new MineDown("&6Hello [%player%](hover=%player%)")
+                .replace("player", () -> "Phoenix" + supplied.incrementAndGet())
+                .replaceFirst(true);
+        ImmutableMineDown immutable = mineDown.toImmutable();
+        mineDown.message("changed");
+        Assertions.assertFalse(immutable.isParsed());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Component>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(immutable::asComponent));
+            }
+            for (Future<Component> future : futures) {
+                Assertions.assertSame(immutable.asComponent(), future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(1, supplied.get());
+        Assertions.assertEquals("&gold&Hello [Phoenix1](hover=Phoenix1)", MineDown.stringify(immutable.asComponent()));
+        Assertions.assertTrue(immutable.toMineDown().replaceFirst());
+    }
+
+    @Test
+    public void testReusedParser() {
+        Component first = MineDown.parse("&6Hello %player% [click](/help)", "player", "Phoenix");
+        Assertions.assertEquals(first, MineDown.parse("&6Hello %player% [click](/help)", "player", "Phoenix"));
+        Assertions.assertEquals("Hello %player%", MineDown.stringify(MineDown.parse("Hello %player%")));
+
+        MineDown mineDown = new MineDown("**Hello** %player%").replace("player", "Phoenix");
+        Assertions.assertEquals("**Hello** Phoenix", MineDown.stringify(mineDown.toComponent()));
+        mineDown.replace("player", "Notch");
+        Assertions.assertEquals("**Hello** Notch", MineDown.stringify(mineDown.toComponent()));
+    }
+
+    @Test
+    public void testReplaceFirstCache() {
+        MineDown mineDown = new MineDown("Visit %site%").replaceFirst(true);
+        for (String site : new String[]{"**example.com**", "[home](https://example.com)", "**example.com**"}) {
+            Component expected = new MineDown("Visit " + site).toComponent();
+            Assertions.assertEquals(expected, mineDown.replace("site", site).toComponent());
+        }
+        Component detected = new MineDown("Visit %site%").replaceFirst(true).replace("site", "example.com").toComponent();
+        Component notDetected = new MineDown("Visit %site%").replaceFirst(true).urlDetection(false).replace("site", "example.com").toComponent();
+        Assertions.assertNotEquals(detected, notDetected);
+        Assertions.assertEquals(new MineDown("Visit example.com").urlDetection(false).toComponent(), notDetected);
+    }
+
+    @Test
+    public void testOptimize() {
+        String[] messages = {
+                "##&eTest## [&blue&b__this__](https://example.com **Hover ??text??**) ~~string~~!",
+                "&b[Test] [this](6 bold italic https://example.com) &as&bt&cr&di&en&5g&7!",
+                "&#ff0000-#0000ff&Gradient &rainbow&Rainbow&r and &lbold &oitalic &0black",
+                "&cRed &land bold! [Test insertion](insert={text to insert} color=red)"
+        };
+        for (String message : messages) {
+            Component parsed = new MineDown(message).toComponent();
+            Component optimized = new MineDown(message).optimize(true).toComponent();
+            Assertions.assertEquals(styledText(parsed), styledText(optimized), message);
+            Assertions.assertTrue(count(optimized) < count(parsed), message);
+            Assertions.assertEquals(optimized, ComponentOptimizer.optimize(optimized), message);
+        }
+
+        Component merged = ComponentOptimizer.optimize(Component.text()
+                .append(Component.text("a", NamedTextColor.RED))
+                .append(Component.text().append(Component.text("b", NamedTextColor.RED)))
+                .append(Component.empty())
+                .build());
+        Assertions.assertEquals(Component.text("ab", NamedTextColor.RED), merged);
+    }
+
+    @Test
+    public void testStyleRuns() {
+        StyleRuns runs = new MineDown("&cRed [&lbold link](https://example.com) &cand red [translated](translate=block.minecraft.stone)").toStyleRuns();
+        Assertions.assertEquals("Red bold link and red ", runs.text());
+        Assertions.assertEquals(4, runs.size());
+        Assertions.assertEquals("Red ", runs.text(0));
+        Assertions.assertEquals(NamedTextColor.RED, runs.styleById(runs.styleId(0)).color());
+        Assertions.assertEquals(0, runs.eventId(0));
+        Assertions.assertEquals(TextDecoration.State.TRUE, runs.style(1).decoration(TextDecoration.BOLD));
+        Assertions.assertNotNull(runs.style(1).clickEvent());
+        Assertions.assertEquals(runs.styleId(0), runs.styleId(2));
+        Assertions.assertTrue(runs.component(3) instanceof TranslatableComponent);
+        Assertions.assertEquals("", runs.text(3));
+
+        Assertions.assertEquals(styledText(new MineDown("&cRed [&lbold link](https://example.com) &cand red").toComponent()),
+                styledText(new MineDown("&cRed [&lbold link](https://example.com) &cand red").toStyleRuns().toComponent()));
+        Assertions.assertEquals(runs, StyleRuns.of(runs.toComponent()));
+        Assertions.assertEquals(runs, new MineDown("&cRed [&lbold link](https://example.com) &cand red [translated](translate=block.minecraft.stone)").optimize(true).toStyleRuns());
+        Assertions.assertEquals(StyleRuns.empty(), StyleRuns.of(Component.empty()));
+    }
+
+    @Test
+    public void testLegacyTranscoder() {
+        LegacyTranscoder transcoder = new LegacyTranscoder();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("§cRed §lbold§c text", transcoder.transcode("&cRed **bold** text")),
+                () -> Assertions.assertEquals("§1link", transcoder.transcode("[link](https://example.com hover=Open color=#0000ff)")),
+                () -> Assertions.assertEquals("§2Green", transcoder.transcode("&#00ff00&Green")),
+                () -> Assertions.assertEquals("§4a§5b§1c", transcoder.transcode("&#ff0000-#0000ff&abc")),
+                () -> Assertions.assertEquals("§6Hello Phoenix", new MineDown("&6Hello %name%").replace("name", "Phoenix").toLegacy())
+        );
+
+        LegacyComponentSerializer legacy = LegacyComponentSerializer.legacySection();
+        String[] messages = {
+                "&cRed [&lbold link](https://example.com) &cand red [translated](translate=block.minecraft.stone)",
+                "&#FF0000-#0000FF&Hello &rainbow&World &r&lBold&r plain",
+                "&6Gold [**link**](https://example.com hover=[nested](red)) [&lbold](/cmd) plain",
+                "[hover](hover=&6line1 color=blue format=bold,!italic) **b** ##u## ~~s~~ ??o?? example.com",
+                "&ltest[&cinner](gold) after&r [x](rainbow) [y](#ff0000-#00ff00 bold) \\&c not \\[x](y)"
+        };
+        for (String message : messages) {
+            Assertions.assertEquals(
+                    styledText(legacy.deserialize(legacy.serialize(MineDown.parse(message)))),
+                    styledText(legacy.deserialize(transcoder.transcode(message))),
+                    message
+            );
+        }
+    }
+
+    @Test
+    public void testPlainText() {
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("Red bold text", MineDown.plainText("&cRed **bold** text")),
+                () -> Assertions.assertEquals("link and [escaped](text)", MineDown.plainText("[link](https://example.com hover=Open) and \\[escaped](text)")),
+                () -> Assertions.assertEquals("Gradient 😀", MineDown.plainText("&#ff0000-#0000ff&Gradient 😀")),
+                () -> Assertions.assertEquals(10, MineDown.visibleLength("&#ff0000-#0000ff&Gradient 😀")),
+                () -> Assertions.assertEquals(0, MineDown.visibleLength("&c&l"))
+        );
+
+        String[] messages = {
+                "&cRed [&lbold link](https://example.com) &cand red [translated](translate=block.minecraft.stone)",
+                "&#FF0000-#0000FF&Hello &rainbow&World &r&lBold&r plain",
+                "[hover](hover=&6line1 color=blue format=bold,!italic) **b** ##u## ~~s~~ ??o?? example.com",
+                "&7Raw §acodes§r in [text](#ff0000-#00ff00 translate=some.key) \\&c"
+        };
+        for (String message : messages) {
+            StringBuilder expected = new StringBuilder();
+            ComponentFlattener.basic().flatten(MineDown.parse(message), expected::append);
+            Assertions.assertEquals(expected.toString(), MineDown.plainText(message), message);
+            Assertions.assertEquals(expected.codePointCount(0, expected.length()), MineDown.visibleLength(message), message);
+        }
+    }
+
+    @Test
+    public void testMaxLength() {
+        String message = "&cHello [**world**](/cmd hover=A long hover text) and more";
+        Component cut = new MineDown(message).maxLength(8, "…").toComponent();
+        List<String> full = styledText(MineDown.parse(message));
+        List<String> cutText = styledText(cut);
+        Assertions.assertEquals(8, cutText.size());
+        Assertions.assertEquals(full.subList(0, 7), cutText.subList(0, 7));
+        // the ellipsis has the style and events of the text it follows
+        Assertions.assertEquals(full.get(6).substring(1), cutText.get(7).substring(1));
+        Assertions.assertEquals('…', cutText.get(7).charAt(0));
+
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(full, styledText(new MineDown(message).maxLength(full.size(), "…").toComponent())),
+                () -> Assertions.assertEquals(6, styledText(new MineDown(message).maxLength(6).toComponent()).size()),
+                () -> Assertions.assertEquals("…", MineDown.plainText(MineDown.stringify(new MineDown(message).maxLength(1, "…").toComponent()))),
+                () -> Assertions.assertTrue(new LegacyTranscoder().visibleLength(message, 8) > 8)
+        );
+
+        // the length is limited after the placeholders were replaced, they are never cut in half
+        String placeholders = "Hi %name% there";
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("Hi P..", plainText(new MineDown(placeholders).replace("name", "Phoenix").maxLength(6, "..").toComponent())),
+                () -> Assertions.assertEquals("Hi Al there", plainText(new MineDown(placeholders).replace("name", "Al").maxLength(11, "..").toComponent())),
+                () -> Assertions.assertEquals("Phoe…", plainText(new MineDown("&c%name%").replace("name", "Phoenix").maxLength(5, "…").toComponent())),
+                () -> Assertions.assertEquals("Hi Ph", plainText(new MineDown(placeholders).replace("name", Component.text("Phoenix")).maxLength(5).toComponent())),
+                () -> Assertions.assertEquals("..", plainText(new MineDown(placeholders).replace("name", "Al").maxLength(2, "..").toComponent()))
+        );
+        Assertions.assertEquals(styledText(MineDown.parse("&cPhoe…")),
+                styledText(new MineDown("&c%name%").replace("name", "Phoenix").maxLength(5, "…").toComponent()));
+    }
+
+    @Test
+    public void testParseLimits() {
+        ParseLimits limits = ParseLimits.untrusted().action(ParseLimits.Action.FAIL);
+        String message = "&cHello [world](hover=&bhi) **bold**";
+        Assertions.assertEquals(MineDown.parse(message), new MineDown(message).parseLimits(limits).toComponent());
+
+        String nested = "[a](hover=[b](hover=[c](hover=[d](hover=[e](hover=[f](hover=[g](hover=[h](hover=i))))))))";
+        ParseLimits.ExceededException exception = Assertions.assertThrows(ParseLimits.ExceededException.class,
+                () -> new MineDown(nested).parseLimits(limits).toComponent());
+        Assertions.assertEquals(ParseLimits.Limit.DEPTH, exception.limit());
+        Assertions.assertAll(
+                () -> Assertions.assertThrows(ParseLimits.ExceededException.class,
+                        () -> new MineDown("&#f00-#00f&" + new String(new char[300]).replace('\0', 'g')).parseLimits(limits).toComponent()),
+                () -> Assertions.assertThrows(ParseLimits.ExceededException.class,
+                        () -> new MineDown(new String(new char[20]).replace("\0", "[a](b) ")).parseLimits(limits.max(ParseLimits.Limit.EVENTS, 10)).toComponent()),
+                () -> Assertions.assertThrows(ParseLimits.ExceededException.class,
+                        () -> new MineDown(new String(new char[20]).replace("\0", "**a** ")).parseLimits(limits.max(ParseLimits.Limit.COMPONENTS, 10)).toComponent())
+        );
+        Assertions.assertEquals(1, limits.triggered(ParseLimits.Limit.DEPTH));
+        Assertions.assertEquals(1, limits.triggered(ParseLimits.Limit.GRADIENT_LENGTH));
+
+        ParseLimits plain = limits.action(ParseLimits.Action.PLAIN_TEXT);
+        StringBuilder shown = new StringBuilder();
+        ComponentFlattener.basic().flatten(new MineDown(nested).parseLimits(plain).toComponent(), shown::append);
+        Assertions.assertEquals(nested, shown.toString());
+        shown.setLength(0);
+        ComponentFlattener.basic().flatten(new MineDown(nested).parseLimits(plain.max(ParseLimits.Limit.INPUT_LENGTH, 20)).toComponent(), shown::append);
+        Assertions.assertEquals(nested.substring(0, 20), shown.toString());
+        Assertions.assertEquals(1, plain.triggered(ParseLimits.Limit.DEPTH));
+
+        String escapes = "C:\\path \\[x] " + new String(new char[40]).replace("\0", "[a](b) ");
+        shown.setLength(0);
+        ComponentFlattener.basic().flatten(new MineDown(escapes).parseLimits(plain).toComponent(), shown::append);
+        Assertions.assertEquals(escapes, shown.toString());
+        shown.setLength(0);
+        ComponentFlattener.basic().flatten(new MineDown(escapes).parseLimits(plain.max(ParseLimits.Limit.INPUT_LENGTH, 20)).maxLength(4, "…").toComponent(), shown::append);
+        Assertions.assertEquals("C:\\…", shown.toString());
+
+        // every parse counts, also when the parsed messages could be cached
+        ParseLimits first = ParseLimits.untrusted();
+        ParseLimits second = ParseLimits.untrusted();
+        for (ParseLimits counted : Arrays.asList(first, first, second)) {
+            new MineDown(nested).replaceFirst(true).parseLimits(counted).toComponent();
+        }
+        Assertions.assertEquals(2, first.triggered(ParseLimits.Limit.DEPTH));
+        Assertions.assertEquals(1, second.triggered(ParseLimits.Limit.DEPTH));
+        Assertions.assertEquals(
+                new MineDown("Hi %name%").replaceFirst(true).replace("name", "**bold**").toComponent(),
+                new MineDown("Hi %name%").replaceFirst(true).replace("name", "**bold**").parseLimits(ParseLimits.untrusted()).toComponent());
+    }
+
+    @Test
+    public void testSanitizer() {
+        MineDownSanitizer sanitizer = new MineDownSanitizer();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("&cHello **bold** [link](hover=hover text) visit example\\.com",
+                        sanitizer.sanitize("&cHello **bold** [link](https://example.com hover text) visit example.com")),
+                () -> Assertions.assertEquals("[x](hover=hi)", sanitizer.sanitize("[x](run_command=/op me hover=hi)")),
+                () -> Assertions.assertEquals("[x](red,bold)", sanitizer.sanitize("[x](translate=foo.bar font=uniform red bold)")),
+                () -> Assertions.assertEquals("\\[x\\] \\& y", sanitizer.sanitize("\\[x] & y"))
+        );
+
+        MineDownSanitizer clicks = new MineDownSanitizer().clickActions(EnumSet.of(ClickEvent.Action.RUN_COMMAND));
+        Assertions.assertEquals("[x](run_command=/spawn hover=hi)", clicks.sanitize("[x](run_command=/spawn hover=hi)"));
+
+        MineDownSanitizer colors = new MineDownSanitizer().colors(Arrays.asList(NamedTextColor.RED, NamedTextColor.WHITE));
+        Assertions.assertEquals("&cx &fy z [w](red)", colors.sanitize("&#dd1111&x &#eeeeee-#000000&y &rainbow&z [w](color=#f00 shadow=black)"));
+
+        String message = "**bold &cred** __[link](hover=**hi**)__ after";
+        MineDownSanitizer noFormatting = new MineDownSanitizer().options(EnumSet.of(MineDownParser.Option.LEGACY_COLORS, MineDownParser.Option.ADVANCED_FORMATTING));
+        String sanitized = noFormatting.sanitize(message);
+        Assertions.assertEquals(
+                styledText(new MineDown(message).filter(MineDownParser.Option.SIMPLE_FORMATTING).toComponent()),
+                styledText(MineDown.parse(sanitized)));
+        Assertions.assertEquals(sanitized, noFormatting.sanitize(sanitized));
+
+        // escapes don't stop the parser from detecting urls, the dots in front of them have to be escaped too
+        for (String bypass : Arrays.asList("evil.\\com/x", "www.\\example.com", "x.c\\om", "evil\\.com")) {
+            Assertions.assertFalse(hasClickEvent(MineDown.parse(sanitizer.sanitize(bypass))), bypass);
+        }
+        Assertions.assertEquals("evil\\.\\com/x", sanitizer.sanitize("evil.\\com/x"));
+
+        String[] parts = {".", "\\", "com", "www", "/", " ", "[", "]", "(", ")", "&c", "**", "http://", "hover=", "run_command=", "x"};
+        Random random = new Random(47);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int j = random.nextInt(12); j >= 0; j--) {
+                input.append(parts[random.nextInt(parts.length)]);
+            }
+            Assertions.assertFalse(hasClickEvent(MineDown.parse(sanitizer.sanitize(input.toString()))), input.toString());
+        }
+    }
+
+    private static boolean hasClickEvent(Component component) {
+        if (component.clickEvent() != null) {
+            return true;
+        }
+        if (component.hoverEvent() != null && component.hoverEvent().value() instanceof Component
+                && hasClickEvent((Component) component.hoverEvent().value())) {
+            return true;
+        }
+        for (Component child : component.children()) {
+            if (hasClickEvent(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testTextRuns() {
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(
+                        styledText(Component.text().append(Component.text("&cHi ")).append(Component.text("bold", Style.style(TextDecoration.BOLD))).append(Component.text(" [x](red)")).build()),
+                        styledText(new MineDown("&cHi **bold** [x](red)").disable(MineDownParser.Option.LEGACY_COLORS).disable(MineDownParser.Option.ADVANCED_FORMATTING).toComponent())),
+                () -> Assertions.assertTrue(GsonComponentSerializer.gson().serialize(new MineDown("visit my_site.com/a**b now").toComponent())
+                        .contains("\"url\":\"http://my_site.com/a**b\"")),
+                () -> Assertions.assertTrue(GsonComponentSerializer.gson().serialize(new MineDown("\\x.com").toComponent())
+                        .contains("\"url\":\"http://x.com\""))
+        );
+    }
+
+    @Test
+    public void testBundle() throws IOException {
+        MineDownBundle bundle = new MineDownBundle(new MineDown("").placeholderIndicator("%"))
+                .loadProperties(Locale.ROOT, new StringReader("greeting=&6Hello %name%!\nbye=Bye\n"))
+                .loadYaml(Locale.GERMAN, new StringReader("# comment\ngreeting: '&6Hallo %name%!'\nmenu:\n  title: \"**Menü**\"\n  lore:\n    - eins\n    - zwei\nbye: Bye\n"))
+                .put(Locale.GERMANY, "menu.title", "**Menü**");
+
+        Path directory = Files.createTempDirectory("minedown-bundle");
+        Files.write(directory.resolve("messages_fr.yml"), "greeting: |-\n  Salut\n  %name%\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("messages.properties"), "extra=[Click](/help)".getBytes(StandardCharsets.UTF_8));
+        bundle.loadDirectory(directory, "messages");
+
+        Assertions.assertAll(
+                () -> Assertions.assertSame(bundle.get("bye", Locale.ROOT), bundle.get("bye", Locale.GERMAN)),
+                () -> Assertions.assertSame(bundle.get("menu.title", Locale.GERMAN), bundle.get("menu.title", Locale.GERMANY)),
+                () -> Assertions.assertEquals("&6Hallo %name%!", bundle.get("greeting", Locale.GERMANY).message()),
+                () -> Assertions.assertEquals("&6Hello %name%!", bundle.get("greeting", Locale.US).message()),
+                () -> Assertions.assertEquals("eins\nzwei", bundle.get("menu.lore", new Locale("de", "AT")).message()),
+                () -> Assertions.assertEquals("Salut\n%name%", bundle.get("greeting", Locale.FRANCE).message()),
+                () -> Assertions.assertEquals("[Click](/help)", bundle.get("extra", Locale.FRENCH).message()),
+                () -> Assertions.assertNull(bundle.get("menu.title", Locale.US)),
+                () -> Assertions.assertEquals("&6Hallo %name%!", bundle.defaultLocale(Locale.GERMAN).get("greeting", Locale.ITALIAN).message()),
+                () -> Assertions.assertEquals(Arrays.asList("greeting", "menu.title", "menu.lore", "bye"), new ArrayList<>(bundle.keys(Locale.GERMAN))),
+                () -> Assertions.assertThrows(IllegalArgumentException.class, () -> bundle.loadYaml(Locale.ROOT, new StringReader("a: [b]"))),
+                () -> Assertions.assertEquals(9, bundle.size()),
+                () -> Assertions.assertEquals(7, bundle.templateCount()),
+                () -> Assertions.assertEquals(0, bundle.compiledCount())
+        );
+
+        long memory = bundle.estimatedMemory();
+        bundle.compile();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(7, bundle.compiledCount()),
+                () -> Assertions.assertTrue(bundle.estimatedMemory() > memory),
+                () -> Assertions.assertSame(bundle.get("greeting", Locale.GERMANY).asComponent(), bundle.component("greeting", Locale.GERMANY)),
+                () -> Assertions.assertEquals(
+                        GsonComponentSerializer.gson().serialize(new MineDown("&6Hallo Phoebe!").toComponent()),
+                        GsonComponentSerializer.gson().serialize(bundle.get("greeting", Locale.GERMANY).toMineDown().replace("name", "Phoebe").toComponent()))
+        );
+
+        IllegalArgumentException exception = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> bundle.loadYaml(Locale.ROOT, new StringReader("a: b\nc: &6Gold\n")));
+        Assertions.assertTrue(exception.getMessage().contains("'&'") && exception.getMessage().contains("line 2"), exception.getMessage());
+
+        MineDownBundle reloaded = new MineDownBundle();
+        for (int i = 0; i < 5; i++) {
+            reloaded.put(Locale.ROOT, "k", "msg " + i);
+        }
+        reloaded.put(Locale.GERMAN, "k", "msg 4").put(Locale.GERMAN, "other", "msg 4");
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(3, reloaded.size()),
+                () -> Assertions.assertEquals(1, reloaded.templateCount()),
+                () -> Assertions.assertEquals(1, reloaded.unload(Locale.GERMAN).templateCount()),
+                () -> Assertions.assertEquals(0, reloaded.unload(Locale.ROOT).templateCount()),
+                () -> Assertions.assertEquals(0, bundle.clear().size() + bundle.templateCount())
+        );
+    }
+
+    private static String plainText(Component component) {
+        StringBuilder plainText = new StringBuilder();
+        ComponentFlattener.basic().flatten(component, plainText::append);
+        return plainText.toString();
+    }
+
+    private static List<String> styledText(Component component) {
+        List<String> styledText = new ArrayList<>();
+        styledText(component, Style.empty(), styledText);
+        return styledText;
+    }
+
+    private static void styledText(Component component, Style parent, List<String> styledText) {
+        Style style = component.style().merge(parent, Style.Merge.Strategy.IF_ABSENT_ON_TARGET);
+        if (component instanceof TextComponent) {
+            String content = ((TextComponent) component).content();
+            for (int i = 0; i < content.length(); i++) {
+                // hover texts have to look the same, not have the same structure
+                Style charStyle = style.hoverEvent() != null && style.hoverEvent().action() == HoverEvent.Action.SHOW_TEXT
+                        ? style.hoverEvent(HoverEvent.showText(Component.text(styledText((Component) style.hoverEvent().value()).toString())))
+                        : style;
+                styledText.add(content.charAt(i) + " " + charStyle);
+            }
+        }
+        for (Component child : component.children()) {
+            styledText(child, style, styledText);
+        }
+    }
+
+    private static int count(Component component) {
+        int count = 1;
+        for (Component child : component.children()) {
+            count += count(child);
+        }
+        return count;
+    }
+}
\ No newline at end of file
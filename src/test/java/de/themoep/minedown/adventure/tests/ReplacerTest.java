@@ -0,0 +1,266 @@
+package de.themoep.minedown.adventure.tests;
+
+/*
+ * Copyright (c) 2020 Max Lee (https://github.com/Phoenix616)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.themoep.minedown.adventure.MineDown;
+import de.themoep.minedown.adventure.PlaceholderFormatter;
+import de.themoep.minedown.adventure.ReplacementSet;
+import de.themoep.minedown.adventure.Replacer;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+public class ReplacerTest {
+
+    @Test
+    public void testComponentReplacementInString() {
+        Replacer replacer = new Replacer()
+                .replace("placeholder", Component.text("value", NamedTextColor.RED));
+        Assertions.assertEquals("Test §cvalue", replacer.replaceIn("Test %placeholder%"));
+        Assertions.assertEquals("Again §cvalue", replacer.replaceIn("Again %placeholder%"));
+
+        replacer.replace("placeholder", Component.text("changed", NamedTextColor.BLUE));
+        Assertions.assertEquals("Test §9changed", replacer.replaceIn("Test %placeholder%"));
+
+        replacer.replace("placeholder", "string");
+        Assertions.assertEquals("Test string", replacer.replaceIn("Test %placeholder%"));
+
+        Replacer caseSensitive = new Replacer()
+                .ignorePlaceholderCase(false)
+                .replace("Placeholder", Component.text("value"));
+        Assertions.assertEquals("%placeholder% value", caseSensitive.copy().replaceIn("%placeholder% %Placeholder%"));
+    }
+
+    @Test
+    public void testLazyReplacement() {
+        AtomicInteger used = new AtomicInteger();
+        AtomicInteger unused = new AtomicInteger();
+        Map<String, Object> replacements = new HashMap<>();
+        replacements.put("used", (Supplier<String>) () -> "value" + used.incrementAndGet());
+        replacements.put("unused", (Supplier<String>) () -> "value" + unused.incrementAndGet());
+
+        MineDown mineDown = new MineDown("%used% [and %used%](hover=%USED%)").replace(replacements);
+        Component component = mineDown.toComponent();
+        Assertions.assertEquals(1, used.get());
+        Assertions.assertEquals(0, unused.get());
+        Assertions.assertEquals(component, mineDown.toComponent());
+
+        new MineDown("%used% %key%").replace(replacements).replace("key", key -> key + used.get()).toComponent();
+        Assertions.assertEquals(2, used.get());
+        Assertions.assertEquals(0, unused.get());
+        Assertions.assertEquals("value3 key3", new Replacer().replace(replacements)
+                .replace("key", key -> key + used.get())
+                .replaceIn("%used% %key%"));
+
+        // a newer value of another kind replaces the lazy one
+        Assertions.assertEquals("a b", new Replacer().replace(replacements)
+                .replace("used", "a")
+                .replace(Collections.singletonMap("unused", "b"))
+                .replaceIn("%used% %unused%"));
+        Assertions.assertEquals(3, used.get());
+        Assertions.assertEquals(0, unused.get());
+    }
+
+    @Test
+    public void testPlaceholders() {
+        Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("player", "balance", "rank")),
+                new MineDown("%player% has 100% of %balance% [%rank%](hover=%player%)").placeholders());
+        Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("player")),
+                new MineDown("{player} and {not a placeholder}").placeholderPrefix("{").placeholderSuffix("}").placeholders());
+        Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("player", "rank")),
+                new Replacer().placeholders(new MineDown("%player% [text](hover=%rank%)").toComponent()));
+    }
+
+    @Test
+    public void testPlaceholderResolver() {
+        AtomicInteger calls = new AtomicInteger();
+        Set<Set<String>> queried = new LinkedHashSet<>();
+        MineDown mineDown = new MineDown("%player%: %balance% %Rank%")
+                .replace("player", "Phoenix")
+                .placeholderResolver(placeholders -> {
+                    calls.incrementAndGet();
+                    queried.add(placeholders);
+                    return placeholders.stream().collect(Collectors.toMap(p -> p, p -> p.toLowerCase() + "-value"));
+                });
+        Assertions.assertEquals("Phoenix: balance-value rank-value", MineDown.stringify(mineDown.toComponent()));
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("balance", "Rank")), queried.iterator().next());
+    }
+
+    @Test
+    public void testSharedReplacer() throws Exception {
+        Replacer replacer = new Replacer()
+                .replace("name", Component.text("Phoenix", NamedTextColor.RED))
+                .replace("lazy", (Supplier<String>) () -> Thread.currentThread().getName())
+                .placeholderResolver(placeholders -> Collections.singletonMap("thread", Thread.currentThread().getName()));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    String thread = Thread.currentThread().getName();
+                    for (int j = 0; j < 2000; j++) {
+                        Assertions.assertEquals("§cPhoenix " + thread + " " + thread, replacer.replaceIn("%name% %thread% %lazy%"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReplaceValue() {
+        Assertions.assertEquals("null 1 §cc", new Replacer()
+                .replaceValue("a", null)
+                .replaceValue("b", 1)
+                .replaceValue("c", Component.text("c", NamedTextColor.RED))
+                .replaceIn("%a% %b% %c%"));
+    }
+
+    @Test
+    public void testReplacementSet() {
+        ReplacementSet global = ReplacementSet.builder()
+                .replace("server", "Lobby", "player", "nobody")
+                .replace("prefix", Component.text("[Admin]", NamedTextColor.RED))
+                .build();
+        ReplacementSet player = global.layer()
+                .replace("Player", "Phoenix")
+                .build();
+        Assertions.assertEquals("Phoenix on Lobby %unknown% %player", player.replaceIn("%player% on %server% %unknown% %player"));
+        Assertions.assertEquals("nobody on Lobby", global.replaceIn("%player% on %server%"));
+        Assertions.assertEquals("§c[Admin] Phoenix", player.replaceIn("%prefix% %player%"));
+        Assertions.assertEquals("%server% Lobby", global.layer().replace("a", "%server%").build().replaceIn("%a% %server%"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> player.layer().placeholderIndicator("$"));
+
+        Component component = new MineDown("%prefix% %player% [%server%](hover=%player%)")
+                .replace("server", "Hub")
+                .replace(player)
+                .toComponent();
+        Assertions.assertEquals("&red&[Admin] Phoenix [Hub](hover=Phoenix)", MineDown.stringify(component));
+    }
+
+    @Test
+    public void testReplacementSetComponentShadowsParentString() {
+        ReplacementSet parent = ReplacementSet.builder().replace("rank", "Parent").build();
+        ReplacementSet child = parent.layer().replace("rank", Component.text("Child", NamedTextColor.RED)).build();
+        Assertions.assertEquals("§cChild", child.replaceIn("%rank%"));
+        Assertions.assertEquals("&red&Child", MineDown.stringify(child.replaceIn(Component.text("%rank%"))));
+        Assertions.assertEquals("&red&Child", MineDown.stringify(new MineDown("%rank%").replace(child).toComponent()));
+    }
+
+    @Test
+    public void testReplacementSetPrecedence() {
+        ReplacementSet set = ReplacementSet.builder().replace("a", "%b%", "b", "X", "name", "SET").build();
+        Assertions.assertEquals("%b% X", new Replacer().replace(set).replaceIn("%a% %b%"));
+
+        Replacer replacer = new Replacer().replace("name", Component.text("OWN")).replace(set);
+        Assertions.assertEquals("OWN %b%", replacer.replaceIn("%name% %a%"));
+        Assertions.assertEquals("OWN", MineDown.stringify(replacer.replaceIn(Component.text("%name%"))));
+        for (boolean replaceFirst : new boolean[]{false, true}) {
+            Assertions.assertEquals("OWN X", MineDown.stringify(new MineDown("%name% %b%")
+                    .replace("name", Component.text("OWN"))
+                    .replace(set)
+                    .replaceFirst(replaceFirst)
+                    .toComponent()));
+        }
+    }
+
+    @Test
+    public void testLiteralReplacement() {
+        Assertions.assertEquals("İstanbul: Phoenix, Phoenix $1 \\",
+                new Replacer().replace("name", "Phoenix", "regex", "$1 \\").replaceIn("İstanbul: %NAME%, %name% %Regex%"));
+        Assertions.assertEquals("Phoenix %Name% $1",
+                new Replacer().ignorePlaceholderCase(false).replace("name", "Phoenix", "Regex", "$1").replaceIn("%name% %Name% %Regex%"));
+    }
+
+    @Test
+    public void testLegacyCodesInReplacement() {
+        Component component = new MineDown("&6%rank% text")
+                .replace("rank", "§cAdmin §lX§r §x§f§f§0§0§0§0hex §zno")
+                .toComponent();
+        Assertions.assertEquals("&gold&&red&Admin **X** &#FF0000&hex §zno text", MineDown.stringify(component));
+        Assertions.assertEquals(component, new MineDown("&6%rank% text")
+                .replace("rank", "§cAdmin §lX§r §x§f§f§0§0§0§0hex §zno")
+                .toComponent());
+    }
+
+    @Test
+    public void testTypedReplacements() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("int", 42);
+        values.put("float", 1.1f);
+        values.put("double", -0.5);
+        values.put("duration", Duration.ofSeconds(3725));
+        values.put("instant", Instant.EPOCH);
+        Assertions.assertEquals("42 1.1 -0.5 PT1H2M5S 1970-01-01T00:00:00Z",
+                new Replacer().replace(values).replaceIn("%int% %float% %double% %duration% %instant%"));
+
+        PlaceholderFormatter german = PlaceholderFormatter.builder()
+                .locale(Locale.GERMANY)
+                .dateTimeFormatter(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"))
+                .zone(ZoneOffset.UTC)
+                .build();
+        Assertions.assertEquals("1.234.567 -1.234,57 0,00 1:02:05 2:05 01.01.1970 00:00",
+                new Replacer()
+                        .placeholderFormatter(german)
+                        .replace("long", 1234567L)
+                        .replace("double", -1234.567)
+                        .replace("zero", -0.001)
+                        .replace("hours", Duration.ofSeconds(3725))
+                        .replace("minutes", Duration.ofSeconds(125))
+                        .replace("instant", Instant.EPOCH)
+                        .replaceIn("%long% %double% %zero% %hours% %minutes% %instant%"));
+        Assertions.assertEquals("-9,223,372,036,854,775,808 12,345,678,901,234,567,000.00",
+                PlaceholderFormatter.of(Locale.US).format(Long.MIN_VALUE) + " " + PlaceholderFormatter.of(Locale.US).format(1.2345678901234567890E19));
+
+        Assertions.assertEquals("Balance: 1,000.50", MineDown.stringify(new MineDown("Balance: %balance%")
+                .placeholderFormatter(PlaceholderFormatter.of(Locale.US))
+                .replace("balance", 1000.5)
+                .toComponent()));
+    }
+}
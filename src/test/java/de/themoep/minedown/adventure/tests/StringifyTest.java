@@ -22,10 +22,19 @@ package de.themoep.minedown.adventure.tests;
  * SOFTWARE.
  */
 
+import de.themoep.minedown.adventure.CompiledTemplates;
+import de.themoep.minedown.adventure.ComponentJsonWriter;
+import de.themoep.minedown.adventure.ComponentOptimizer;
 import de.themoep.minedown.adventure.MineDown;
+import de.themoep.minedown.adventure.MineDownParser;
+import de.themoep.minedown.adventure.MineDownStringifier;
+import de.themoep.minedown.adventure.PacketBudget;
+import de.themoep.minedown.adventure.Replacer;
+import de.themoep.minedown.adventure.StyleRuns;
 import net.kyori.adventure.key.Key;
 import net.kyori.adventure.nbt.api.BinaryTagHolder;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TranslatableComponent;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.event.HoverEvent;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -38,6 +47,16 @@ import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.UUID;
 
 public class StringifyTest {
@@ -127,4 +146,211 @@ public class StringifyTest {
                 () -> stringify(Component.text("Object item test").append(Component.object().contents(ObjectContents.sprite(Key.key("gui"), Key.key("inventory")))))
         );
     }
+
+    @Test
+    public void testStringifyToBuffer() throws IOException {
+        Component component = new MineDown("&6Gold [**link**](https://example.com hover=[nested](red)) [&lbold](/cmd) plain").toComponent();
+        String expected = MineDown.stringify(component);
+
+        StringBuilder sb = new StringBuilder("> ");
+        Assertions.assertSame(sb, new MineDownStringifier().stringify(component, sb));
+        Assertions.assertEquals("> " + expected, sb.toString());
+
+        StringWriter writer = new StringWriter();
+        new MineDownStringifier().stringify(component, writer);
+        Assertions.assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void testShortestOutput() {
+        MineDownStringifier stringifier = new MineDownStringifier().shortestOutput(true);
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("&lbold&r &nunder", stringifier.stringify(MineDown.parse("**bold** __under__"))),
+                () -> Assertions.assertEquals("&#f00&hex &#123456&hex", stringifier.stringify(MineDown.parse("&#ff0000&hex &#123456&hex"))),
+                () -> Assertions.assertEquals("\\&\\[text", stringifier.stringify(MineDown.parse("\\&[text"))),
+                () -> Assertions.assertEquals("&cA[B](hover=/b)C", stringifier.stringify(MineDown.parse("&cA[B](/b)C")))
+        );
+
+        String[] messages = {
+                "&6Gold [**link**](https://example.com hover=[nested](red)) [&lbold](/cmd) plain",
+                "&b[Click me](/help hover=&aHelp) and &7more",
+                "&c&lred bold&r &ctext ~~strike~~ ??obf??"
+        };
+        for (String message : messages) {
+            Component component = MineDown.parse(message);
+            String shortest = stringifier.stringify(component);
+            Assertions.assertTrue(shortest.length() <= MineDown.stringify(component).length(), shortest);
+            Assertions.assertEquals(shortest, stringifier.stringify(MineDown.parse(shortest)));
+        }
+
+        // not supported in this mode, written normally
+        Component translatable = Component.translatable("item.minecraft.stone", NamedTextColor.RED);
+        Assertions.assertEquals(MineDown.stringify(translatable), stringifier.stringify(translatable));
+    }
+
+    @Test
+    public void testGradientDetection() {
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("[Hello](#FF0000-#0000FF)", MineDown.stringify(MineDown.parse("&#ff0000-#0000ff&Hello"))),
+                () -> Assertions.assertEquals("[Three colors](#123456-#ABCDEF-#FF0000)", MineDown.stringify(MineDown.parse("&#123456-#abcdef-#ff0000&Three colors"))),
+                () -> Assertions.assertEquals("[Rainbow](rainbow)", MineDown.stringify(MineDown.parse("&rainbow&Rainbow"))),
+                () -> Assertions.assertEquals("[Rainbow!](rainbow:20)", MineDown.stringify(MineDown.parse("&rainbow:20&Rainbow!"))),
+                () -> Assertions.assertEquals("[Hello](#FF0000-#0000FF) world", MineDown.stringify(MineDown.parse("&#ff0000-#0000ff&Hello&r world"))),
+                () -> Assertions.assertEquals("&red&a&blue&b", MineDown.stringify(MineDown.parse("&ca&9b")))
+        );
+
+        String[] followedByText = {
+                "&#ff0000-#0000ff&Hello&r world",
+                "[Gradient text](#fff-#000) tail",
+                "&rainbow&Rainbow&r plain",
+                "&rainbow:42&Rainbow&c red",
+                "**&red-blue&bold** x"
+        };
+        for (String message : followedByText) {
+            Component parsed = MineDown.parse(message);
+            Assertions.assertEquals(StyleRuns.of(parsed), StyleRuns.of(MineDown.parse(MineDown.stringify(parsed))), message);
+        }
+
+        Component gradient = MineDown.parse("&#ff0000-#0000ff&abc");
+        String written = new MineDownStringifier().detectGradients(false).stringify(gradient);
+        Assertions.assertEquals("&#FF0000&a&#800080&b&#0000FF&c", written);
+    }
+
+    @Test
+    public void testJsonWriter() {
+        GsonComponentSerializer gson = GsonComponentSerializer.gson();
+        UUID uuid = UUID.fromString("83688181-ce68-4136-918b-15e88ec2c705");
+        Component[] components = {
+                Component.text("Escapes &<>='\"\\\n\t\u0001\u2028 é😀"),
+                Component.text("hex", TextColor.color(0x12ab34)).shadowColor(ShadowColor.shadowColor(0x44112233)),
+                Component.text("decorations").decoration(TextDecoration.BOLD, false).decoration(TextDecoration.OBFUSCATED, true).font(Key.key("uniform")),
+                Component.text("url").clickEvent(ClickEvent.openUrl("example.com")).insertion("insert"),
+                Component.text("page").clickEvent(ClickEvent.changePage(3)),
+                Component.text("custom").clickEvent(ClickEvent.custom(Key.key("my:key"), BinaryTagHolder.binaryTagHolder("{a:1}"))),
+                Component.text("entity").hoverEvent(HoverEvent.showEntity(Key.key("pig"), uuid, Component.text("Name"))),
+                Component.text("item").hoverEvent(HoverEvent.showItem(Key.key("stone"), 2)),
+                Component.translatable("key", "fallback", Component.text("a"), Component.text("b", NamedTextColor.RED)),
+                Component.keybind("key.jump").append(Component.score("name", "objective")),
+                Component.selector("@p", Component.text(",")),
+                Component.object(ObjectContents.sprite(Key.key("items"), Key.key("item/stone"))),
+                Component.object(ObjectContents.playerHead().name("TestName").id(uuid).profileProperty(PlayerHeadObjectContents.property("textures", "abc", "sig")).build()),
+                Component.text().append(Component.text("a")).append(Component.empty()).build()
+        };
+        for (Component component : components) {
+            Assertions.assertEquals(gson.serialize(component), ComponentJsonWriter.toJson(component));
+        }
+
+        String[] messages = {
+                "&cRed [&lbold link](https://example.com) &cand red [translated](translate=block.minecraft.stone)",
+                "&#FF0000-#0000FF&Hello &rainbow&World",
+                "[hover](hover=&6line1\nline2 color=blue format=bold,!italic) **b** ##u## ~~s~~ ??o??"
+        };
+        for (String message : messages) {
+            Component component = MineDown.parse(message);
+            Assertions.assertEquals(gson.serialize(component), new MineDown(message).toJson());
+            StyleRuns runs = StyleRuns.of(component);
+            Assertions.assertEquals(gson.serialize(runs.toComponent()), ComponentJsonWriter.toJson(runs));
+        }
+    }
+
+    @Test
+    public void testPacketBudget() {
+        String message = "&#ff0000-#0000ff&" + String.join("", Collections.nCopies(300, "gradient text "))
+                + "&r " + String.join(" ", Collections.nCopies(50, "[hover me](hover=" + String.join(" ", Collections.nCopies(20, "long")) + ")"));
+        Component full = MineDown.parse(message);
+        Assertions.assertEquals(GsonComponentSerializer.gson().serialize(full).length(), PacketBudget.size(full));
+
+        Component fits = new MineDown(message).packetBudget(PacketBudget.of(PacketBudget.size(full))).toComponent();
+        Assertions.assertEquals(full, fits);
+
+        // the optimized message looks the same so it is used before degrading anything
+        int optimized = PacketBudget.size(ComponentOptimizer.optimize(full));
+        Assertions.assertEquals(optimized, PacketBudget.size(new MineDown(message).packetBudget(PacketBudget.of(optimized)).toComponent()));
+        Assertions.assertThrows(PacketBudget.ExceededException.class, () -> new MineDown(message).packetBudget(PacketBudget.of(optimized - 1)).toComponent());
+
+        Component collapsed = new MineDown(message).packetBudget(PacketBudget.of(optimized - 1, PacketBudget.Degradation.COLLAPSE_GRADIENTS)).toComponent();
+        Assertions.assertTrue(PacketBudget.size(collapsed) <= optimized - 1);
+
+        Component dropped = PacketBudget.of(6000, PacketBudget.Degradation.COLLAPSE_GRADIENTS, PacketBudget.Degradation.DROP_HOVERS).apply(full);
+        Assertions.assertTrue(PacketBudget.size(dropped) <= 6000);
+        Assertions.assertFalse(ComponentJsonWriter.toJson(dropped).contains("hover_event"));
+
+        // only the parts with the colors of a gradient or rainbow get collapsed, other colored text stays the same
+        Component mixed = MineDown.parse("&ca&9b&ac &#ff0000-#0000ff&gradient&r &rainbow&rainbow");
+        PacketBudget collapse = PacketBudget.of(PacketBudget.size(ComponentOptimizer.optimize(mixed)) - 1, PacketBudget.Degradation.COLLAPSE_GRADIENTS);
+        Assertions.assertEquals("&red&a&blue&b&green&c &#FF0000&gradient &#F3801F&rainbow", MineDown.stringify(collapse.apply(mixed)));
+        Assertions.assertEquals("&red&a&blue&b&green&c &#FF0000&gradient &#F3801F&rainbow", MineDown.stringify(collapse.apply(ComponentOptimizer.optimize(mixed))));
+        Component colored = MineDown.parse("&ca&9b&ac&ed");
+        Assertions.assertThrows(PacketBudget.ExceededException.class,
+                () -> PacketBudget.of(PacketBudget.size(ComponentOptimizer.optimize(colored)) - 1, PacketBudget.Degradation.COLLAPSE_GRADIENTS).apply(colored));
+
+        // messages whose text alone doesn't fit are rejected while they are parsed
+        Assertions.assertThrows(PacketBudget.ExceededException.class,
+                () -> new MineDownParser().packetBudget(PacketBudget.of(100, PacketBudget.Degradation.values())).parse(String.join("", Collections.nCopies(101, "a"))));
+    }
+
+    @Test
+    public void testCompiledTemplates() throws IOException {
+        Map<String, String> messages = new LinkedHashMap<>();
+        messages.put("greeting", "&6Hello &l%player%&r, [click here](/spawn hover=&bTeleport to %world%)!");
+        messages.put("gradient", "&#f00-#00f&Gradient **text** with ~~formats~~");
+        messages.put("translate", "[](translate=block.minecraft.diamond_block with=[one](red),two) and [](sprite=diamond)");
+        messages.put("head", "[](player_head=83688181-ce68-4136-918b-15e88ec2c705) [entity](show_entity=83688181-ce68-4136-918b-15e88ec2c705:zombie &cZed)");
+        messages.put("item", "[item](show_item=diamond*3 insert=hi) [url](https://example.com font=uniform shadow=#11223344)");
+        messages.put("copy", "&6Hello &l%player%&r, [click here](/spawn hover=&bTeleport to %world%)!");
+        messages.put("empty", "");
+
+        CompiledTemplates.Writer writer = new CompiledTemplates.Writer();
+        for (Map.Entry<String, String> entry : messages.entrySet()) {
+            writer.add(entry.getKey(), entry.getValue());
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> writer.add("empty", "again"));
+        byte[] bytes = writer.toByteArray();
+
+        Path file = Files.createTempFile("minedown", ".mdt");
+        try {
+            writer.write(file);
+            CompiledTemplates templates = CompiledTemplates.load(file);
+            Assertions.assertEquals(messages.size(), templates.size());
+            Assertions.assertEquals(messages.keySet(), templates.keys());
+            Assertions.assertEquals(bytes.length, templates.byteSize());
+            for (Map.Entry<String, String> entry : messages.entrySet()) {
+                if (!entry.getKey().equals("translate") && !entry.getKey().equals("head")) {
+                    Assertions.assertEquals(new MineDown(entry.getValue()).toStyleRuns().toComponent(), templates.component(entry.getKey()), entry.getKey());
+                }
+            }
+            // translation arguments are stored as runs too
+            TranslatableComponent translatable = (TranslatableComponent) templates.component("translate").children().get(0);
+            Assertions.assertEquals("block.minecraft.diamond_block", translatable.key());
+            Assertions.assertEquals(Component.text("one", NamedTextColor.RED), translatable.arguments().get(0).asComponent());
+            Assertions.assertEquals(Component.text("two"), translatable.arguments().get(1).asComponent());
+            Assertions.assertEquals(
+                    new MineDown(messages.get("translate")).toStyleRuns().toComponent().children().subList(1, 3),
+                    templates.component("translate").children().subList(1, 3));
+            // so are entity names
+            Component head = new MineDown(messages.get("head")).toStyleRuns().toComponent();
+            Component loadedHead = templates.component("head");
+            Assertions.assertEquals(head.children().subList(0, 2), loadedHead.children().subList(0, 2));
+            HoverEvent.ShowEntity entity = (HoverEvent.ShowEntity) head.children().get(2).hoverEvent().value();
+            HoverEvent.ShowEntity loadedEntity = (HoverEvent.ShowEntity) loadedHead.children().get(2).hoverEvent().value();
+            Assertions.assertEquals(entity.id(), loadedEntity.id());
+            Assertions.assertEquals(entity.type(), loadedEntity.type());
+            Assertions.assertEquals(StyleRuns.of(entity.name()), StyleRuns.of(loadedEntity.name()));
+            Assertions.assertSame(templates.component("greeting"), templates.component("copy"));
+            Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("player", "world")), templates.placeholders("greeting"));
+            Assertions.assertEquals(Collections.emptySet(), templates.placeholders("gradient"));
+            Assertions.assertNull(templates.component("missing"));
+            Assertions.assertNull(templates.placeholders("missing"));
+            Assertions.assertEquals(
+                    StyleRuns.of(new MineDown(messages.get("greeting")).replace("player", "Phoenix616", "world", "Nether").toComponent()),
+                    StyleRuns.of(templates.component("greeting", new Replacer().replace("player", "Phoenix616", "world", "Nether"))));
+        } finally {
+            Files.delete(file);
+        }
+
+        CompiledTemplates fromBuffer = CompiledTemplates.load(ByteBuffer.wrap(bytes));
+        Assertions.assertEquals(new MineDown(messages.get("item")).toStyleRuns().toComponent(), fromBuffer.component("item"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CompiledTemplates.load(ByteBuffer.wrap(new byte[64])));
+        Assertions.assertEquals(0, CompiledTemplates.load(ByteBuffer.wrap(new CompiledTemplates.Writer().toByteArray())).size());
+    }
 }